@@ -0,0 +1,287 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import java.nio.FloatBuffer;
+
+/**
+ * CPU evaluation of Bezier curves and tensor product patches of any degree
+ * up to MAX_DEGREE. Control points are given as consecutive groups of dim
+ * floats starting at offset, patch control points in rows along v each
+ * holding columns along u. Scratch space is held by the instance so none of
+ * the methods allocate, instances are not thread safe.
+ */
+public final class EffectsBezier {
+
+	// Largest supported degree and point dimension.
+	public static final int MAX_DEGREE = 7;
+	public static final int MAX_DIM = 4;
+	// Points written by forward differencing before differences are
+	// started again from exact values, bounds accumulated rounding error.
+	// Curves above degree 4 restart four times as often.
+	private static final int RESTART = 64;
+
+	private final double[] mDiffs = new double[(MAX_DEGREE + 1) * MAX_DIM];
+	private final double[] mPower = new double[(MAX_DEGREE + 1) * MAX_DIM];
+	private final float[] mRows = new float[(MAX_DEGREE + 1) * MAX_DIM];
+	private final float[] mRowsDu = new float[(MAX_DEGREE + 1) * MAX_DIM];
+	private final float[] mWork = new float[(MAX_DEGREE + 1) * MAX_DIM];
+
+	/**
+	 * Writes axis aligned bounds of curve into min and max, dim floats each.
+	 * Quadratic and cubic curves get exact bounds from roots of their
+	 * derivative, other degrees the bounds of their control points, which
+	 * are exact for points and lines.
+	 */
+	public void bounds(float[] ctrl, int offset, int degree, int dim,
+			float[] min, float[] max) {
+		if (degree < 2 || degree > 3) {
+			hullBounds(ctrl, offset, degree + 1, dim, min, max);
+			return;
+		}
+		for (int k = 0; k < dim; ++k) {
+			min[k] = Math.min(ctrl[offset + k],
+					ctrl[offset + degree * dim + k]);
+			max[k] = Math.max(ctrl[offset + k],
+					ctrl[offset + degree * dim + k]);
+			float a = ctrl[offset + dim + k] - ctrl[offset + k];
+			if (degree == 2) {
+				float b = ctrl[offset + 2 * dim + k] - ctrl[offset + dim + k];
+				if (a != b) {
+					boundsExtend(ctrl, offset, degree, dim, k, a / (a - b),
+							min, max);
+				}
+			} else if (degree == 3) {
+				float b = ctrl[offset + 2 * dim + k] - ctrl[offset + dim + k];
+				float c = ctrl[offset + 3 * dim + k]
+						- ctrl[offset + 2 * dim + k];
+				// Derivative is quadratic A * t^2 + B * t + C.
+				float qa = a - 2 * b + c, qb = 2 * (b - a), qc = a;
+				if (Math.abs(qa) < 1e-12f) {
+					if (qb != 0f) {
+						boundsExtend(ctrl, offset, degree, dim, k, -qc / qb,
+								min, max);
+					}
+				} else {
+					float disc = qb * qb - 4 * qa * qc;
+					if (disc >= 0f) {
+						float sq = (float) Math.sqrt(disc);
+						boundsExtend(ctrl, offset, degree, dim, k, (-qb + sq)
+								/ (2 * qa), min, max);
+						boundsExtend(ctrl, offset, degree, dim, k, (-qb - sq)
+								/ (2 * qa), min, max);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Extends bounds of component k with curve value at t if t lies within
+	 * (0, 1).
+	 */
+	private void boundsExtend(float[] ctrl, int offset, int degree, int dim,
+			int k, float t, float[] min, float[] max) {
+		if (t <= 0f || t >= 1f) {
+			return;
+		}
+		final float[] work = mWork;
+		for (int i = 0; i <= degree; ++i) {
+			work[i] = ctrl[offset + i * dim + k];
+		}
+		for (int level = degree; level > 0; --level) {
+			for (int i = 0; i < level; ++i) {
+				work[i] += (work[i + 1] - work[i]) * t;
+			}
+		}
+		min[k] = Math.min(min[k], work[0]);
+		max[k] = Math.max(max[k], work[0]);
+	}
+
+	/**
+	 * Runs de Casteljau on work array until given number of points is left.
+	 */
+	private static void casteljau(float[] work, int degree, int dim, float t,
+			int points) {
+		for (int level = degree; level >= points; --level) {
+			for (int i = 0; i < level * dim; ++i) {
+				work[i] += (work[i + dim] - work[i]) * t;
+			}
+		}
+	}
+
+	/**
+	 * Writes first derivative of curve at t into out.
+	 */
+	public void derivative(float[] ctrl, int offset, int degree, int dim,
+			float t, float[] out, int outOffset) {
+		final float[] work = mWork;
+		System.arraycopy(ctrl, offset, work, 0, (degree + 1) * dim);
+		casteljau(work, degree, dim, t, 2);
+		for (int k = 0; k < dim; ++k) {
+			out[outOffset + k] = degree * (work[dim + k] - work[k]);
+		}
+	}
+
+	/**
+	 * Writes curve point at t into out using de Casteljau algorithm.
+	 */
+	public void evaluate(float[] ctrl, int offset, int degree, int dim,
+			float t, float[] out, int outOffset) {
+		final float[] work = mWork;
+		System.arraycopy(ctrl, offset, work, 0, (degree + 1) * dim);
+		casteljau(work, degree, dim, t, 1);
+		System.arraycopy(work, 0, out, outOffset, dim);
+	}
+
+	/**
+	 * Writes patch point at (u, v) followed by its partial derivatives along
+	 * u and v into out, 3 * dim floats in total.
+	 */
+	public void evaluatePatch(float[] ctrl, int offset, int degreeU,
+			int degreeV, int dim, float u, float v, float[] out,
+			int outOffset) {
+		final float[] work = mWork;
+		final float[] rows = mRows;
+		final float[] rowsDu = mRowsDu;
+		final int rowSize = (degreeU + 1) * dim;
+		for (int r = 0; r <= degreeV; ++r) {
+			System.arraycopy(ctrl, offset + r * rowSize, work, 0, rowSize);
+			casteljau(work, degreeU, dim, u, 2);
+			for (int k = 0; k < dim; ++k) {
+				float a = work[k], b = degreeU > 0 ? work[dim + k] : a;
+				rows[r * dim + k] = a + (b - a) * u;
+				rowsDu[r * dim + k] = degreeU * (b - a);
+			}
+		}
+		evaluate(rows, 0, degreeV, dim, v, out, outOffset);
+		evaluate(rowsDu, 0, degreeV, dim, v, out, outOffset + dim);
+		if (degreeV > 0) {
+			derivative(rows, 0, degreeV, dim, v, out, outOffset + 2 * dim);
+		} else {
+			for (int k = 0; k < dim; ++k) {
+				out[outOffset + 2 * dim + k] = 0f;
+			}
+		}
+	}
+
+	/**
+	 * Evaluates curve at segments + 1 uniformly spaced parameters using
+	 * forward differences and writes points into buffer starting at its
+	 * position, stride floats apart. Buffer position is moved past the last
+	 * point. Differences are computed in double precision from power basis
+	 * form of the curve and started again every RESTART points, as their
+	 * rounding error grows with the number of steps to the power of degree.
+	 */
+	public void forwardDifference(float[] ctrl, int offset, int degree,
+			int dim, int segments, FloatBuffer buffer, int stride) {
+		final double[] diffs = mDiffs;
+		final double[] power = mPower;
+		// Coefficient of t^j is C(n, j) * sum (-1)^(j - i) * C(j, i) * P_i.
+		long binomialN = 1;
+		for (int j = 0; j <= degree; ++j) {
+			for (int k = 0; k < dim; ++k) {
+				double sum = 0;
+				long binomialJ = 1;
+				for (int i = 0; i <= j; ++i) {
+					double value = binomialJ
+							* (double) ctrl[offset + i * dim + k];
+					sum += ((j - i) & 1) == 0 ? value : -value;
+					binomialJ = binomialJ * (j - i) / (i + 1);
+				}
+				power[j * dim + k] = binomialN * sum;
+			}
+			binomialN = binomialN * (degree - j) / (j + 1);
+		}
+
+		final double step = 1.0 / segments;
+		final int restart = degree <= 4 ? RESTART : RESTART / 4;
+		int position = buffer.position();
+		for (int i = 0; i <= segments; ++i, position += stride) {
+			if (i % restart == 0) {
+				for (int m = 0; m <= degree; ++m) {
+					double t = (i + m) * step;
+					for (int k = 0; k < dim; ++k) {
+						double value = power[degree * dim + k];
+						for (int j = degree - 1; j >= 0; --j) {
+							value = value * t + power[j * dim + k];
+						}
+						diffs[m * dim + k] = value;
+					}
+				}
+				// Turn values into differences of increasing order.
+				for (int order = 1; order <= degree; ++order) {
+					for (int m = degree; m >= order; --m) {
+						for (int k = 0; k < dim; ++k) {
+							diffs[m * dim + k] -= diffs[(m - 1) * dim + k];
+						}
+					}
+				}
+			}
+			for (int k = 0; k < dim; ++k) {
+				buffer.put(position + k, (float) diffs[k]);
+			}
+			for (int j = 0; j < degree * dim; ++j) {
+				diffs[j] += diffs[j + dim];
+			}
+		}
+		buffer.position(position);
+	}
+
+	/**
+	 * Writes axis aligned bounds of given count of points into min and max,
+	 * which by convex hull property also bound any curve or patch they
+	 * control.
+	 */
+	public static void hullBounds(float[] points, int offset, int count,
+			int dim, float[] min, float[] max) {
+		for (int k = 0; k < dim; ++k) {
+			min[k] = max[k] = points[offset + k];
+		}
+		for (int i = 1; i < count; ++i) {
+			for (int k = 0; k < dim; ++k) {
+				float value = points[offset + i * dim + k];
+				min[k] = Math.min(min[k], value);
+				max[k] = Math.max(max[k], value);
+			}
+		}
+	}
+
+	/**
+	 * Splits curve at t into two curves of same degree covering [0, t] and
+	 * [t, 1]. Either output may share its array with input.
+	 */
+	public void subdivide(float[] ctrl, int offset, int degree, int dim,
+			float t, float[] left, int leftOffset, float[] right,
+			int rightOffset) {
+		final float[] work = mWork;
+		System.arraycopy(ctrl, offset, work, 0, (degree + 1) * dim);
+		// Left curve is formed by first and right curve by last points of
+		// each de Casteljau level.
+		for (int level = degree; level >= 0; --level) {
+			int i = degree - level;
+			System.arraycopy(work, 0, mRows, i * dim, dim);
+			System.arraycopy(work, level * dim, mRowsDu, level * dim, dim);
+			for (int j = 0; j < level * dim; ++j) {
+				work[j] += (work[j + dim] - work[j]) * t;
+			}
+		}
+		System.arraycopy(mRows, 0, left, leftOffset, (degree + 1) * dim);
+		System.arraycopy(mRowsDu, 0, right, rightOffset, (degree + 1) * dim);
+	}
+
+}
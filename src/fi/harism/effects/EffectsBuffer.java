@@ -0,0 +1,193 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import android.opengl.GLES20;
+
+/**
+ * GL buffer object holding a copy of a direct buffer. Data is uploaded
+ * once per GL context, views call create() from onSurfaceCreated() which
+ * also covers context loss as buffer objects of old context are gone by
+ * then. If buffer object can not be created or data does not fit into GPU
+ * memory, buffer falls back to passing client side pointers to the same
+ * data. Attribute pointer and element draw calls are recorded, calls reading
+ * client memory additionally as CALL_CLIENT_POINTER.
+ */
+public final class EffectsBuffer {
+
+	// Each GL error flag is reported once, a lost context may keep reporting
+	// errors though. Error drain stops after this many errors.
+	private static final int MAX_ERRORS = 8;
+
+	private final Buffer mData;
+	private final int mElementSize;
+	private final int[] mId = new int[1];
+	private EffectsRecorder mRecorder;
+	private final int mTarget;
+	private final int mUsage;
+
+	/**
+	 * Creates new buffer for given target, GL_ARRAY_BUFFER or
+	 * GL_ELEMENT_ARRAY_BUFFER, holding whole capacity of given direct
+	 * buffer. Usage is passed to glBufferData.
+	 */
+	public EffectsBuffer(int target, Buffer data, int usage) {
+		mTarget = target;
+		mData = data;
+		mUsage = usage;
+		if (data instanceof ByteBuffer) {
+			mElementSize = 1;
+		} else if (data instanceof ShortBuffer) {
+			mElementSize = 2;
+		} else {
+			mElementSize = 4;
+		}
+	}
+
+	/**
+	 * Binds buffer to its target. Falling back to client side data binds
+	 * zero instead, so that pointers given later refer to client memory.
+	 */
+	public void bind() {
+		GLES20.glBindBuffer(mTarget, mId[0]);
+		record(EffectsRecorder.CALL_BIND_BUFFER);
+	}
+
+	/**
+	 * Creates buffer object and uploads data into it. Must be called from
+	 * onSurfaceCreated, previous buffer object belongs to a lost context and
+	 * is not deleted.
+	 */
+	public void create() {
+		mId[0] = 0;
+		GLES20.glGenBuffers(1, mId, 0);
+		if (mId[0] != 0) {
+			// Clear errors of earlier calls, only upload error is checked.
+			for (int i = 0; i < MAX_ERRORS; ++i) {
+				if (GLES20.glGetError() == GLES20.GL_NO_ERROR) {
+					break;
+				}
+			}
+			upload();
+			if (GLES20.glGetError() == GLES20.GL_OUT_OF_MEMORY) {
+				GLES20.glDeleteBuffers(1, mId, 0);
+				mId[0] = 0;
+			}
+			GLES20.glBindBuffer(mTarget, 0);
+		}
+	}
+
+	/**
+	 * Draws given count of elements starting from given byte offset. Buffer
+	 * has to be bound first.
+	 */
+	public void drawElements(int mode, int count, int type, int offset) {
+		if (mId[0] != 0) {
+			GLES20.glDrawElements(mode, count, type, offset);
+		} else {
+			mData.position(offset / mElementSize);
+			GLES20.glDrawElements(mode, count, type, mData);
+			mData.position(0);
+			record(EffectsRecorder.CALL_CLIENT_POINTER);
+		}
+		record(EffectsRecorder.CALL_DRAW);
+	}
+
+	/**
+	 * Returns true if data is held in a buffer object, false if client side
+	 * data is used instead.
+	 */
+	public boolean isBufferObject() {
+		return mId[0] != 0;
+	}
+
+	/**
+	 * Records given call if recorder is set.
+	 */
+	private void record(int call) {
+		if (mRecorder != null) {
+			mRecorder.record(call);
+		}
+	}
+
+	/**
+	 * Sets recorder GL calls made through this buffer are recorded into.
+	 */
+	public void setRecorder(EffectsRecorder recorder) {
+		mRecorder = recorder;
+	}
+
+	/**
+	 * Uploads whole data again, e.g. after it has been modified. Leaves
+	 * buffer bound. Does nothing if client side data is used.
+	 */
+	public void upload() {
+		upload(mData.capacity());
+	}
+
+	/**
+	 * Uploads given count of elements from start of data, buffer object is
+	 * resized to hold only them. Meant for streamed data which changes size
+	 * every frame.
+	 */
+	public void upload(int count) {
+		if (mId[0] != 0) {
+			bind();
+			GLES20.glBufferData(mTarget, count * mElementSize,
+					mData.position(0), mUsage);
+		}
+	}
+
+	/**
+	 * Replaces given range of elements in buffer object with same range of
+	 * data, buffer object keeps its size. Leaves buffer bound. Does nothing
+	 * if client side data is used.
+	 */
+	public void upload(int offset, int count) {
+		if (mId[0] != 0) {
+			bind();
+			mData.position(offset);
+			GLES20.glBufferSubData(mTarget, offset * mElementSize, count
+					* mElementSize, mData);
+			mData.position(0);
+		}
+	}
+
+	/**
+	 * Sets vertex attribute to read from given byte offset of buffer. Buffer
+	 * has to be bound first.
+	 */
+	public void vertexAttribPointer(int handle, int size, int type,
+			boolean normalized, int stride, int offset) {
+		if (mId[0] != 0) {
+			GLES20.glVertexAttribPointer(handle, size, type, normalized,
+					stride, offset);
+		} else {
+			mData.position(offset / mElementSize);
+			GLES20.glVertexAttribPointer(handle, size, type, normalized,
+					stride, mData);
+			mData.position(0);
+			record(EffectsRecorder.CALL_CLIENT_POINTER);
+		}
+		record(EffectsRecorder.CALL_ATTRIB_POINTER);
+	}
+
+}
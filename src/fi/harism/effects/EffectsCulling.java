@@ -0,0 +1,176 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+/**
+ * CPU side culling for objects defined by control points, e.g. Bezier
+ * curves and patches, which always stay within convex hull of their control
+ * points. Objects are tested against view frustum using hull bounding box,
+ * patches can also be rejected as back facing using their normal cone.
+ * Culled and visible objects are counted per frame.
+ */
+public final class EffectsCulling {
+
+	private int mCulledCount;
+	// Control point differences of patches, at most 64 per direction.
+	private final float[] mDu = new float[3 * 64];
+	private final float[] mDv = new float[3 * 64];
+	private final float[] mMax = new float[3];
+	private final float[] mMin = new float[3];
+	private final float[] mPlanes = new float[6 * 4];
+	private int mVisibleCount;
+
+	/**
+	 * Starts new frame with given model view projection matrix. Side planes
+	 * of frustum are moved outwards by margin given in normalized device
+	 * coordinates, e.g. for geometry expanded in screen space. Counters are
+	 * reset.
+	 */
+	public void begin(float[] mvp, float margin) {
+		final float[] planes = mPlanes;
+		for (int i = 0; i < 4; ++i) {
+			float row0 = mvp[i * 4];
+			float row1 = mvp[i * 4 + 1];
+			float row2 = mvp[i * 4 + 2];
+			float row3 = mvp[i * 4 + 3];
+			// Left, right, bottom, top, near and far.
+			planes[i] = row3 * (1f + margin) + row0;
+			planes[4 + i] = row3 * (1f + margin) - row0;
+			planes[8 + i] = row3 * (1f + margin) + row1;
+			planes[12 + i] = row3 * (1f + margin) - row1;
+			planes[16 + i] = row3 + row2;
+			planes[20 + i] = row3 - row2;
+		}
+		mCulledCount = mVisibleCount = 0;
+	}
+
+	/**
+	 * Returns number of objects culled since begin().
+	 */
+	public int getCulledCount() {
+		return mCulledCount;
+	}
+
+	/**
+	 * Returns number of objects found visible since begin().
+	 */
+	public int getVisibleCount() {
+		return mVisibleCount;
+	}
+
+	/**
+	 * Returns true if bounding box of given points intersects frustum.
+	 */
+	private boolean intersects(float[] points, int count) {
+		final float[] min = mMin, max = mMax;
+		EffectsBezier.hullBounds(points, 0, count, 3, min, max);
+		float minX = min[0], minY = min[1], minZ = min[2];
+		float maxX = max[0], maxY = max[1], maxZ = max[2];
+
+		// Box is outside if its corner furthest along plane normal is.
+		final float[] planes = mPlanes;
+		for (int i = 0; i < 24; i += 4) {
+			float a = planes[i], b = planes[i + 1], c = planes[i + 2];
+			float x = a > 0f ? maxX : minX;
+			float y = b > 0f ? maxY : minY;
+			float z = c > 0f ? maxZ : minZ;
+			if (a * x + b * y + c * z + planes[i + 3] < 0f) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if patch with given grid of control points faces away
+	 * from eye everywhere. Patch derivatives are non-negative combinations of
+	 * control point differences along each parameter, so every normal
+	 * Pv x Pu lies within the cone spanned by cross products of those
+	 * differences. If none of them faces eye from any control point, no
+	 * point of the patch does.
+	 */
+	private boolean isBackFacing(float[] ctrl, int rows, int cols,
+			float[] eye) {
+		final float[] du = mDu;
+		final float[] dv = mDv;
+		int countU = 0, countV = 0;
+		for (int r = 0; r < rows; ++r) {
+			for (int c = 0; c < cols; ++c) {
+				int i = (r * cols + c) * 3;
+				for (int j = 0; j < 3; ++j) {
+					if (c + 1 < cols) {
+						du[countU * 3 + j] = ctrl[i + 3 + j] - ctrl[i + j];
+					}
+					if (r + 1 < rows) {
+						dv[countV * 3 + j] = ctrl[i + cols * 3 + j]
+								- ctrl[i + j];
+					}
+				}
+				countU += c + 1 < cols ? 1 : 0;
+				countV += r + 1 < rows ? 1 : 0;
+			}
+		}
+
+		for (int k = 0; k < countV; ++k) {
+			float vx = dv[k * 3], vy = dv[k * 3 + 1], vz = dv[k * 3 + 2];
+			for (int l = 0; l < countU; ++l) {
+				float ux = du[l * 3], uy = du[l * 3 + 1], uz = du[l * 3 + 2];
+				float nx = vy * uz - vz * uy;
+				float ny = vz * ux - vx * uz;
+				float nz = vx * uy - vy * ux;
+				for (int i = 0; i < rows * cols * 3; i += 3) {
+					if (nx * (eye[0] - ctrl[i]) + ny * (eye[1] - ctrl[i + 1])
+							+ nz * (eye[2] - ctrl[i + 2]) > 0f) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tests object with given control points against frustum and counts it
+	 * either as culled or visible. Returns true if object may be visible.
+	 */
+	public boolean isHullVisible(float[] points, int count) {
+		if (intersects(points, count)) {
+			++mVisibleCount;
+			return true;
+		}
+		++mCulledCount;
+		return false;
+	}
+
+	/**
+	 * Tests patch with given grid of control points, rows along v and
+	 * columns along u, against frustum and for facing away from eye. Eye is
+	 * given in same coordinates as control points. Returns true if patch may
+	 * be visible.
+	 */
+	public boolean isPatchVisible(float[] ctrl, int rows, int cols,
+			float[] eye) {
+		if (intersects(ctrl, rows * cols)
+				&& !isBackFacing(ctrl, rows, cols, eye)) {
+			++mVisibleCount;
+			return true;
+		}
+		++mCulledCount;
+		return false;
+	}
+
+}
@@ -0,0 +1,210 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+/**
+ * Back to front ordering of objects by float depth key. Order is kept as an
+ * index array between frames; as objects move only a little per frame it is
+ * nearly sorted already and an insertion pass fixes it in close to linear
+ * time. If the order has changed too much for that, insertion pass gives up
+ * and a radix sort over the keys is used instead, also for a number of
+ * following calls before insertion is tried again. Sorting is stable and
+ * does not allocate.
+ */
+public final class EffectsDepthOrder {
+
+	private static final int RADIX_BITS = 11;
+	private static final int RADIX_SIZE = 1 << RADIX_BITS;
+	// Number of sorts done with radix sort after insertion pass gave up.
+	private static final int RADIX_RETRY = 16;
+	// Insertion pass gives up after this many element moves per element.
+	private static final int SHIFT_BUDGET = 2;
+
+	private final int[] mCounts = new int[RADIX_SIZE];
+	private final float[] mDepth;
+	private final int[] mKeys;
+	private final int[] mKeysTmp;
+	private final boolean[] mMoved;
+	private final int[] mOrder;
+	private final int[] mOrderTmp;
+	private int mRadixCount;
+
+	/**
+	 * Creates new order for given number of objects, initially in index
+	 * order.
+	 */
+	public EffectsDepthOrder(int count) {
+		mDepth = new float[count];
+		mKeys = new int[count];
+		mKeysTmp = new int[count];
+		mMoved = new boolean[count];
+		mOrder = new int[count];
+		mOrderTmp = new int[count];
+		for (int i = 0; i < count; ++i) {
+			mOrder[i] = i;
+		}
+	}
+
+	/**
+	 * Returns index of object at given position in order, position 0 being
+	 * the one with smallest key.
+	 */
+	public int get(int position) {
+		return mOrder[position];
+	}
+
+	/**
+	 * Returns number of objects ordered.
+	 */
+	public int getCount() {
+		return mOrder.length;
+	}
+
+	/**
+	 * Moves given objects to the front of the order keeping relative order of
+	 * the rest intact. Use for objects which were reset to smallest key, e.g.
+	 * respawned far away.
+	 */
+	public void moveToFront(int[] indices, int count) {
+		if (count == 0) {
+			return;
+		}
+		final int[] order = mOrder;
+		final boolean[] moved = mMoved;
+		for (int i = 0; i < count; ++i) {
+			moved[indices[i]] = true;
+		}
+		int dst = order.length;
+		for (int src = order.length - 1; src >= 0; --src) {
+			if (!moved[order[src]]) {
+				order[--dst] = order[src];
+			}
+		}
+		for (int i = 0; i < count; ++i) {
+			if (moved[indices[i]]) {
+				moved[indices[i]] = false;
+				order[--dst] = indices[i];
+			}
+		}
+	}
+
+	/**
+	 * Sorts order by radix sort over given keys, regardless of previous
+	 * order.
+	 */
+	public void radixSort(float[] keys) {
+		for (int i = 0; i < mOrder.length; ++i) {
+			mDepth[i] = keys[mOrder[i]];
+		}
+		radixSort();
+	}
+
+	/**
+	 * Radix sorts order by keys gathered into mDepth.
+	 */
+	private void radixSort() {
+		int[] order = mOrder;
+		int[] orderTmp = mOrderTmp;
+		int[] sortKeys = mKeys;
+		int[] sortKeysTmp = mKeysTmp;
+		final float[] depth = mDepth;
+		final int[] counts = mCounts;
+		final int count = order.length;
+
+		// Map float bits into unsigned integers with same ordering.
+		for (int i = 0; i < count; ++i) {
+			int bits = Float.floatToRawIntBits(depth[i]);
+			sortKeys[i] = bits ^ ((bits >> 31) | 0x80000000);
+		}
+
+		for (int shift = 0; shift < 32; shift += RADIX_BITS) {
+			for (int i = 0; i < RADIX_SIZE; ++i) {
+				counts[i] = 0;
+			}
+			for (int i = 0; i < count; ++i) {
+				++counts[(sortKeys[i] >>> shift) & (RADIX_SIZE - 1)];
+			}
+			for (int i = 0, sum = 0; i < RADIX_SIZE; ++i) {
+				int c = counts[i];
+				counts[i] = sum;
+				sum += c;
+			}
+			for (int i = 0; i < count; ++i) {
+				int j = counts[(sortKeys[i] >>> shift) & (RADIX_SIZE - 1)]++;
+				sortKeysTmp[j] = sortKeys[i];
+				orderTmp[j] = order[i];
+			}
+			int[] tmp = sortKeys;
+			sortKeys = sortKeysTmp;
+			sortKeysTmp = tmp;
+			tmp = order;
+			order = orderTmp;
+			orderTmp = tmp;
+		}
+
+		// Three passes leave result in temporary array.
+		if (order != mOrder) {
+			System.arraycopy(order, 0, mOrder, 0, count);
+		}
+	}
+
+	/**
+	 * Sorts order by given keys, indexed by object index, into ascending
+	 * order. Runs in close to linear time if order from previous call is
+	 * still nearly correct.
+	 */
+	public void sort(float[] keys) {
+		final int[] order = mOrder;
+		final float[] depth = mDepth;
+
+		// Gather keys into order so that insertion pass reads memory
+		// sequentially.
+		for (int i = 0; i < order.length; ++i) {
+			depth[i] = keys[order[i]];
+		}
+		if (mRadixCount > 0) {
+			--mRadixCount;
+			radixSort();
+			return;
+		}
+
+		int budget = SHIFT_BUDGET * order.length;
+		for (int i = 1; i < order.length; ++i) {
+			float key = depth[i];
+			int j = i - 1;
+			if (depth[j] <= key) {
+				continue;
+			}
+			int index = order[i];
+			do {
+				depth[j + 1] = depth[j];
+				order[j + 1] = order[j];
+				--j;
+			} while (j >= 0 && depth[j] > key);
+			depth[j + 1] = key;
+			order[j + 1] = index;
+
+			budget -= i - 1 - j;
+			if (budget < 0) {
+				mRadixCount = RADIX_RETRY;
+				radixSort();
+				return;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,179 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Helper class for running index range based tasks in parallel chunks.
+ * Ranges are always split at the same positions for given count and thread
+ * count which keeps results deterministic as long as chunks do not depend on
+ * each other. Chunk runnables are allocated once so running a task does not
+ * allocate anything. Worker threads are shared by all instances within the
+ * process, so recreating views does not add any threads.
+ */
+public final class EffectsParallel {
+
+	// Ranges smaller than this are not split any further.
+	private static final int MIN_CHUNK_SIZE = 1024;
+
+	// Executor shared by all instances, created on first use.
+	private static ExecutorService sExecutor;
+
+	private final Chunk[] mChunks;
+	private Throwable mFailure;
+	private final Object mLock = new Object();
+	private int mPending;
+
+	/**
+	 * Creates new instance using one thread per available processor.
+	 */
+	public EffectsParallel() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates new instance splitting tasks into at most given amount of
+	 * chunks. Thread count of one runs all tasks serially on calling thread.
+	 */
+	public EffectsParallel(int threadCount) {
+		if (threadCount <= 0) {
+			throw new IllegalArgumentException("Invalid thread count "
+					+ threadCount);
+		}
+		mChunks = new Chunk[threadCount];
+		for (int i = 0; i < threadCount; ++i) {
+			mChunks[i] = new Chunk();
+		}
+	}
+
+	/**
+	 * Returns process wide executor with one thread per available processor.
+	 */
+	private static synchronized ExecutorService getExecutor() {
+		if (sExecutor == null) {
+			sExecutor = Executors.newFixedThreadPool(Runtime.getRuntime()
+					.availableProcessors(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "EffectsParallel");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sExecutor;
+	}
+
+	/**
+	 * Runs given task over range [0, count) and blocks until all chunks have
+	 * finished. Calling thread only waits for completion.
+	 */
+	public void forRange(int count, Task task) {
+		int chunkCount = Math.min(mChunks.length, (count + MIN_CHUNK_SIZE - 1)
+				/ MIN_CHUNK_SIZE);
+		if (chunkCount <= 1) {
+			task.run(0, count);
+			return;
+		}
+
+		synchronized (mLock) {
+			mFailure = null;
+			mPending = chunkCount;
+		}
+		final ExecutorService executor = getExecutor();
+		for (int i = 0; i < chunkCount; ++i) {
+			Chunk chunk = mChunks[i];
+			chunk.mTask = task;
+			chunk.mStart = (int) ((long) count * i / chunkCount);
+			chunk.mEnd = (int) ((long) count * (i + 1) / chunkCount);
+			executor.execute(chunk);
+		}
+
+		boolean interrupted = false;
+		synchronized (mLock) {
+			while (mPending > 0) {
+				try {
+					mLock.wait();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		for (int i = 0; i < chunkCount; ++i) {
+			mChunks[i].mTask = null;
+		}
+		if (mFailure != null) {
+			throw new RuntimeException(mFailure);
+		}
+	}
+
+	/**
+	 * Returns maximum number of chunks tasks are split into.
+	 */
+	public int getThreadCount() {
+		return mChunks.length;
+	}
+
+	/**
+	 * Range task interface.
+	 */
+	public interface Task {
+
+		/**
+		 * Processes indices [start, end). Called concurrently for disjoint
+		 * ranges.
+		 */
+		public void run(int start, int end);
+
+	}
+
+	/**
+	 * Runnable for executing one chunk of a task.
+	 */
+	private class Chunk implements Runnable {
+
+		private int mEnd;
+		private int mStart;
+		private Task mTask;
+
+		@Override
+		public void run() {
+			Throwable failure = null;
+			try {
+				mTask.run(mStart, mEnd);
+			} catch (Throwable ex) {
+				failure = ex;
+			}
+			synchronized (mLock) {
+				if (failure != null && mFailure == null) {
+					mFailure = failure;
+				}
+				if (--mPending == 0) {
+					mLock.notifyAll();
+				}
+			}
+		}
+
+	}
+
+}
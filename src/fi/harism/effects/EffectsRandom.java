@@ -0,0 +1,142 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+/**
+ * Fast xorshift64* based pseudo random number generator. Instances are not
+ * thread safe, get() returns a separate instance for every thread so there
+ * is no contention between threads. Same seed always produces the same
+ * sequence.
+ */
+public final class EffectsRandom {
+
+	private static final float FLOAT_UNIT = 1f / (1 << 24);
+
+	private static final ThreadLocal<EffectsRandom> sInstance = new ThreadLocal<EffectsRandom>() {
+		@Override
+		protected EffectsRandom initialValue() {
+			return new EffectsRandom(nextThreadSeed());
+		}
+	};
+	private static long sSeed = System.nanoTime();
+
+	private long mState;
+
+	/**
+	 * Creates new generator with given seed.
+	 */
+	public EffectsRandom(long seed) {
+		setSeed(seed);
+	}
+
+	/**
+	 * Returns generator instance for calling thread.
+	 */
+	public static EffectsRandom get() {
+		return sInstance.get();
+	}
+
+	/**
+	 * Mixes given value into a well distributed 64 bit hash, this is the
+	 * SplitMix64 finalizer.
+	 */
+	public static long mix(long value) {
+		value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+		value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+		return value ^ (value >>> 31);
+	}
+
+	/**
+	 * Returns seed for next thread local generator.
+	 */
+	private static synchronized long nextThreadSeed() {
+		sSeed += 0x9E3779B97F4A7C15L;
+		return sSeed;
+	}
+
+	/**
+	 * Sets base seed for thread local generators created afterwards. Use
+	 * setSeed() for reseeding already existing generators.
+	 */
+	public static synchronized void setDefaultSeed(long seed) {
+		sSeed = seed;
+	}
+
+	/**
+	 * Fills given range of array with random values within [min, max).
+	 */
+	public void fill(float[] array, int offset, int length, float min,
+			float max) {
+		final float scale = (max - min) * FLOAT_UNIT;
+		final float last = Math.nextAfter(max, min);
+		long state = mState;
+		for (int i = offset, end = offset + length; i < end; ++i) {
+			state ^= state >>> 12;
+			state ^= state << 25;
+			state ^= state >>> 27;
+			float value = min + ((state * 0x2545F4914F6CDD1DL) >>> 40) * scale;
+			array[i] = value != max ? value : last;
+		}
+		mState = state;
+	}
+
+	/**
+	 * Returns random float within [0, 1).
+	 */
+	public float nextFloat() {
+		return (nextLong() >>> 40) * FLOAT_UNIT;
+	}
+
+	/**
+	 * Returns random float within [min, max).
+	 */
+	public float nextFloat(float min, float max) {
+		// Rounding may end up exactly at max, never beyond it.
+		float value = min + (nextLong() >>> 40) * FLOAT_UNIT * (max - min);
+		return value != max ? value : Math.nextAfter(max, min);
+	}
+
+	/**
+	 * Returns random int within [0, bound).
+	 */
+	public int nextInt(int bound) {
+		return (int) (((nextLong() >>> 32) * bound) >>> 32);
+	}
+
+	/**
+	 * Returns random 64 bit value.
+	 */
+	public long nextLong() {
+		long state = mState;
+		state ^= state >>> 12;
+		state ^= state << 25;
+		state ^= state >>> 27;
+		mState = state;
+		return state * 0x2545F4914F6CDD1DL;
+	}
+
+	/**
+	 * Reseeds this generator.
+	 */
+	public void setSeed(long seed) {
+		mState = mix(seed);
+		if (mState == 0) {
+			mState = 0x9E3779B97F4A7C15L;
+		}
+	}
+
+}
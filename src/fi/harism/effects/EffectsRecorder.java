@@ -0,0 +1,137 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+/**
+ * Helper class for recording GL calls made during one frame. Renderers call
+ * record() next to GL calls they want to be accounted for and begin() once
+ * a new frame starts. Recorded calls are kept both as per type counters and
+ * as an ordered log which can be used for verifying pass structure.
+ */
+public final class EffectsRecorder {
+
+	// GL call types.
+	public static final int CALL_ATTRIB_POINTER = 0;
+	public static final int CALL_BIND_BUFFER = 1;
+	public static final int CALL_BIND_FRAMEBUFFER = 2;
+	public static final int CALL_BIND_TEXTURE = 3;
+	public static final int CALL_CLEAR = 4;
+	// Attribute pointer or element draw reading client side memory, recorded
+	// in addition to the call itself.
+	public static final int CALL_CLIENT_POINTER = 5;
+	public static final int CALL_DRAW = 6;
+	// Capability, vertex attribute array, blending, texture unit, clear
+	// color or line width state change.
+	public static final int CALL_STATE = 7;
+	public static final int CALL_UNIFORM = 8;
+	public static final int CALL_USE_PROGRAM = 9;
+	public static final int CALL_VIEWPORT = 10;
+	public static final int CALL_COUNT = 11;
+
+	private final int[] mCounts = new int[CALL_COUNT];
+	private boolean mEnabled;
+	private final int[] mLog;
+	private int mLogSize;
+	private int mTotal;
+
+	/**
+	 * Creates new recorder which keeps at most logCapacity first calls of a
+	 * frame in its call log. Counters are updated regardless of log size.
+	 */
+	public EffectsRecorder(int logCapacity) {
+		mLog = new int[logCapacity];
+	}
+
+	/**
+	 * Starts a new frame, previous frame counters are reset.
+	 */
+	public void begin() {
+		for (int i = 0; i < CALL_COUNT; ++i) {
+			mCounts[i] = 0;
+		}
+		mLogSize = mTotal = 0;
+	}
+
+	/**
+	 * Returns number of given type calls recorded during current frame.
+	 */
+	public int getCount(int call) {
+		return mCounts[call];
+	}
+
+	/**
+	 * Returns call type at given position of call log.
+	 */
+	public int getLog(int index) {
+		return mLog[index];
+	}
+
+	/**
+	 * Returns number of calls stored in call log.
+	 */
+	public int getLogSize() {
+		return mLogSize;
+	}
+
+	/**
+	 * Returns number of all calls recorded during current frame.
+	 */
+	public int getTotal() {
+		return mTotal;
+	}
+
+	/**
+	 * Returns true if recording is enabled.
+	 */
+	public boolean isEnabled() {
+		return mEnabled;
+	}
+
+	/**
+	 * Records given type call, does nothing if recording is disabled.
+	 */
+	public void record(int call) {
+		if (mEnabled) {
+			++mCounts[call];
+			++mTotal;
+			if (mLogSize < mLog.length) {
+				mLog[mLogSize++] = call;
+			}
+		}
+	}
+
+	/**
+	 * Records given amount of same type calls at once.
+	 */
+	public void record(int call, int count) {
+		if (mEnabled) {
+			mCounts[call] += count;
+			mTotal += count;
+			while (count-- > 0 && mLogSize < mLog.length) {
+				mLog[mLogSize++] = call;
+			}
+		}
+	}
+
+	/**
+	 * Enables or disables recording.
+	 */
+	public void setEnabled(boolean enabled) {
+		mEnabled = enabled;
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Helper class for storing simulation state snapshots into memory mapped
+ * files. Snapshot is a small header followed by state written by the
+ * Snapshot implementation, in native byte order.
+ */
+public final class EffectsSnapshot {
+
+	private static final int HEADER_SIZE = 8;
+	private static final int MAGIC = 0x45464653;
+
+	/**
+	 * Reads given amount of floats from buffer into array in one bulk
+	 * operation.
+	 */
+	public static void getFloats(ByteBuffer buffer, float[] array,
+			int length) {
+		FloatBuffer floats = buffer.asFloatBuffer();
+		floats.get(array, 0, length);
+		buffer.position(buffer.position() + 4 * length);
+	}
+
+	/**
+	 * Writes given amount of floats from array into buffer in one bulk
+	 * operation.
+	 */
+	public static void putFloats(ByteBuffer buffer, float[] array,
+			int length) {
+		FloatBuffer floats = buffer.asFloatBuffer();
+		floats.put(array, 0, length);
+		buffer.position(buffer.position() + 4 * length);
+	}
+
+	/**
+	 * Restores snapshot from given file. Returns false if file does not exist
+	 * or does not contain a snapshot of matching size.
+	 */
+	public static boolean restore(File file, Snapshot snapshot)
+			throws IOException {
+		if (!file.exists()) {
+			return false;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			int size = snapshot.getStateSize();
+			if (channel.size() != HEADER_SIZE + size) {
+				return false;
+			}
+			MappedByteBuffer buffer = channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE + size);
+			buffer.order(ByteOrder.nativeOrder());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != size) {
+				return false;
+			}
+			snapshot.restoreState(buffer);
+			return true;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes snapshot into given file, existing file is overwritten.
+	 */
+	public static void save(File file, Snapshot snapshot) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			int size = snapshot.getStateSize();
+			raf.setLength(HEADER_SIZE + size);
+			MappedByteBuffer buffer = channel.map(
+					FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + size);
+			buffer.order(ByteOrder.nativeOrder());
+			buffer.putInt(MAGIC).putInt(size);
+			snapshot.saveState(buffer);
+			buffer.force();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Interface for objects storing their state into snapshots.
+	 */
+	public interface Snapshot {
+
+		/**
+		 * Returns size of state in bytes.
+		 */
+		public int getStateSize();
+
+		/**
+		 * Reads state from given buffer.
+		 */
+		public void restoreState(ByteBuffer buffer);
+
+		/**
+		 * Writes state into given buffer, exactly getStateSize() bytes.
+		 */
+		public void saveState(ByteBuffer buffer);
+
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+/**
+ * Fixed time step scheduler. Real time is accumulated and consumed in fixed
+ * size simulation steps, remaining fraction of a step is given as
+ * interpolation factor for rendering between previous and current simulation
+ * state. At most given number of steps is run per frame and time beyond that
+ * budget is dropped instead of being caught up later.
+ */
+public final class EffectsStepper {
+
+	private float mAccumulator;
+	private long mLastTime = -1;
+	private final int mMaxSteps;
+	private long mStepCount;
+	private final float mStepMillis;
+	private final int mStepsPerSecond;
+
+	/**
+	 * Creates new stepper with given simulation rate and maximum number of
+	 * steps run per frame.
+	 */
+	public EffectsStepper(int stepsPerSecond, int maxSteps) {
+		mStepsPerSecond = stepsPerSecond;
+		mStepMillis = 1000f / stepsPerSecond;
+		mMaxSteps = maxSteps;
+	}
+
+	/**
+	 * Advances real time to given value in milliseconds and returns number of
+	 * simulation steps to run. Caller should call nextStep() for each of
+	 * them. First call only initializes time and returns zero.
+	 */
+	public int advance(long timeMillis) {
+		if (mLastTime == -1) {
+			mLastTime = timeMillis;
+			return 0;
+		}
+		mAccumulator += timeMillis - mLastTime;
+		mLastTime = timeMillis;
+
+		int steps = (int) (mAccumulator / mStepMillis);
+		if (steps > mMaxSteps) {
+			steps = mMaxSteps;
+			mAccumulator = mStepMillis * steps + mAccumulator % mStepMillis;
+		}
+		mAccumulator -= steps * mStepMillis;
+		return steps;
+	}
+
+	/**
+	 * Returns interpolation factor [0, 1) between previous and current
+	 * simulation state.
+	 */
+	public float getAlpha() {
+		return mAccumulator / mStepMillis;
+	}
+
+	/**
+	 * Returns number of simulation steps run so far.
+	 */
+	public long getStepCount() {
+		return mStepCount;
+	}
+
+	/**
+	 * Returns length of a simulation step in seconds.
+	 */
+	public float getStepSeconds() {
+		return 1f / mStepsPerSecond;
+	}
+
+	/**
+	 * Returns current simulation time in milliseconds.
+	 */
+	public long getTime() {
+		return mStepCount * 1000 / mStepsPerSecond;
+	}
+
+	/**
+	 * Moves simulation time one step forward and returns new simulation time
+	 * in milliseconds.
+	 */
+	public long nextStep() {
+		++mStepCount;
+		return getTime();
+	}
+
+	/**
+	 * Restores simulation time as a number of steps run and resets real time
+	 * tracking.
+	 */
+	public void setStepCount(long stepCount) {
+		mStepCount = stepCount;
+		reset();
+	}
+
+	/**
+	 * Resets real time tracking, next call to advance() is handled as the
+	 * first one. Simulation time is kept intact.
+	 */
+	public void reset() {
+		mLastTime = -1;
+		mAccumulator = 0;
+	}
+
+}
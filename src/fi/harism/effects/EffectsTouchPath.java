@@ -0,0 +1,181 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import android.graphics.PointF;
+
+/**
+ * Timestamped touch path. Samples, including MotionEvent historical ones, are
+ * stored into a preallocated ring buffer and the path can be evaluated at any
+ * time. Times past the latest sample are predicted by extrapolating a
+ * quadratic through the three latest samples, prediction is limited to a
+ * short horizon and faded out if no new samples arrive. Methods are
+ * synchronized, samples are usually added on UI thread and read on renderer
+ * thread.
+ */
+public final class EffectsTouchPath {
+
+	private int mCount;
+	private int mHead;
+	private final long[] mTime;
+	private final float[] mX;
+	private final float[] mY;
+
+	/**
+	 * Creates new touch path holding at most given number of latest samples.
+	 */
+	public EffectsTouchPath(int capacity) {
+		mTime = new long[capacity];
+		mX = new float[capacity];
+		mY = new float[capacity];
+	}
+
+	/**
+	 * Adds new sample, time is in milliseconds using the same time base as
+	 * MotionEvent.getEventTime(). Samples older than latest one are ignored.
+	 */
+	public synchronized void add(long time, float x, float y) {
+		if (mCount > 0) {
+			int last = index(mCount - 1);
+			if (time < mTime[last]) {
+				return;
+			}
+			// Keep only latest position for equal timestamps.
+			if (time == mTime[last]) {
+				mX[last] = x;
+				mY[last] = y;
+				return;
+			}
+		}
+		int i;
+		if (mCount < mTime.length) {
+			i = index(mCount++);
+		} else {
+			i = mHead;
+			mHead = (mHead + 1) % mTime.length;
+		}
+		mTime[i] = time;
+		mX[i] = x;
+		mY[i] = y;
+	}
+
+	/**
+	 * Removes all samples.
+	 */
+	public synchronized void clear() {
+		mCount = mHead = 0;
+	}
+
+	/**
+	 * Returns number of samples stored.
+	 */
+	public synchronized int getCount() {
+		return mCount;
+	}
+
+	/**
+	 * Stores latest sample position into given point. Returns false if path
+	 * is empty.
+	 */
+	public synchronized boolean getLast(PointF out) {
+		if (mCount == 0) {
+			return false;
+		}
+		int last = index(mCount - 1);
+		out.set(mX[last], mY[last]);
+		return true;
+	}
+
+	/**
+	 * Returns ring buffer index for given sample, 0 being the oldest.
+	 */
+	private int index(int order) {
+		return (mHead + order) % mTime.length;
+	}
+
+	/**
+	 * Evaluates path position at given time into given point. Position is
+	 * interpolated linearly between samples and extrapolated at most
+	 * predictMillis past the latest sample, after which prediction fades
+	 * back to latest sample over the same period. Returns false if path is
+	 * empty.
+	 */
+	public synchronized boolean sample(long time, long predictMillis,
+			PointF out) {
+		if (mCount == 0) {
+			return false;
+		}
+		int last = index(mCount - 1);
+		if (time >= mTime[last]) {
+			long dt = time - mTime[last];
+			if (dt > predictMillis) {
+				dt = Math.max(0, 2 * predictMillis - dt);
+			}
+			out.set(mX[last], mY[last]);
+			if (dt > 0 && mCount >= 2) {
+				predict(dt, out);
+			}
+			return true;
+		}
+
+		// Binary search for the first sample later than given time.
+		int lo = 0, hi = mCount - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (mTime[index(mid)] > time) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+		int i1 = index(lo);
+		if (lo == 0) {
+			out.set(mX[i1], mY[i1]);
+			return true;
+		}
+		int i0 = index(lo - 1);
+		float t = (float) (time - mTime[i0]) / (mTime[i1] - mTime[i0]);
+		out.set(mX[i0] + (mX[i1] - mX[i0]) * t, mY[i0] + (mY[i1] - mY[i0])
+				* t);
+		return true;
+	}
+
+	/**
+	 * Adds extrapolated offset dt milliseconds past the latest sample into
+	 * given point. Uses Newton form of the quadratic through the three latest
+	 * samples, or a line if there are only two.
+	 */
+	private void predict(long dt, PointF out) {
+		int i2 = index(mCount - 1);
+		int i1 = index(mCount - 2);
+		float t21 = mTime[i2] - mTime[i1];
+		float vx = (mX[i2] - mX[i1]) / t21;
+		float vy = (mY[i2] - mY[i1]) / t21;
+		float ax = 0f, ay = 0f;
+		if (mCount >= 3) {
+			int i0 = index(mCount - 3);
+			float t10 = mTime[i1] - mTime[i0];
+			float t20 = mTime[i2] - mTime[i0];
+			ax = (vx - (mX[i1] - mX[i0]) / t10) / t20;
+			ay = (vy - (mY[i1] - mY[i0]) / t10) / t20;
+		}
+		// p(t) = p2 + v * (t - t2) + a * (t - t2) * (t - t1)
+		out.x += vx * dt + ax * dt * (dt + t21);
+		out.y += vy * dt + ay * dt * (dt + t21);
+	}
+
+}
@@ -0,0 +1,32 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+/**
+ * Particle affector interface. Affectors are kernels run over a contiguous
+ * range of particle arrays at once, they may be called concurrently for
+ * disjoint ranges and must not allocate.
+ */
+public interface ParticleAffector {
+
+	/**
+	 * Applies this affector to particles with physical indices [start, end)
+	 * for given time step in seconds.
+	 */
+	public void apply(ParticleBuffer particles, int start, int end, float t);
+
+}
@@ -0,0 +1,293 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import android.util.FloatMath;
+
+/**
+ * Collection of particle affectors. Particle velocity is stored as unit-less
+ * direction multiplied by speed, affectors altering velocity modify
+ * direction and leave speed for drag.
+ */
+public final class ParticleAffectors {
+
+	// Speeds below this are considered stopped.
+	private static final float MIN_SPEED = 1e-6f;
+
+	/**
+	 * Attracts particles towards attractors closer than attractor radius.
+	 * Each particle tests only attractors within its own and neighboring
+	 * grid cells.
+	 */
+	public static final class Attractor implements ParticleAffector {
+
+		private final ParticleAttractors mAttractors;
+
+		public Attractor(ParticleAttractors attractors) {
+			mAttractors = attractors;
+		}
+
+		@Override
+		public void apply(ParticleBuffer particles, int start, int end,
+				float t) {
+			final float[] posX = particles.mPosX;
+			final float[] posY = particles.mPosY;
+			final float[] dirX = particles.mDirX;
+			final float[] dirY = particles.mDirY;
+			final float[] speed = particles.mSpeed;
+			final ParticleAttractors attractors = mAttractors;
+			final int[] head = attractors.mHead;
+			final int[] next = attractors.mNext;
+			final int[] cellX = attractors.mCellX;
+			final int[] cellY = attractors.mCellY;
+			final float[] attractorX = attractors.mPosX;
+			final float[] attractorY = attractors.mPosY;
+			final float radius = attractors.getRadius();
+
+			for (int k = start; k < end; ++k) {
+				int cx = attractors.cell(posX[k]);
+				int cy = attractors.cell(posY[k]);
+				for (int y = cy - 1; y <= cy + 1; ++y) {
+					for (int x = cx - 1; x <= cx + 1; ++x) {
+						int a = head[ParticleAttractors.bucket(x, y)];
+						for (; a != -1; a = next[a]) {
+							// Different cells may share same bucket.
+							if (cellX[a] != x || cellY[a] != y) {
+								continue;
+							}
+							float dx = posX[k] - attractorX[a];
+							float dy = posY[k] - attractorY[a];
+							float len = FloatMath.sqrt(dx * dx + dy * dy);
+							if (len > 0.0f && len < radius) {
+								dirX[k] = speed[k] * dirX[k]
+										+ (1.0f - speed[k]) * dx / len;
+								dirY[k] = speed[k] * dirY[k]
+										+ (1.0f - speed[k]) * dy / len;
+								speed[k] += radius - len;
+								if (speed[k] > 0.8f) {
+									speed[k] = 0.8f;
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Kills particles outside given bounds. Killed particles are stopped and
+	 * made transparent, their slots are reused once overwritten by emitter.
+	 */
+	public static final class BoundsKill implements ParticleAffector {
+
+		private final float mMaxX, mMaxY, mMinX, mMinY;
+
+		public BoundsKill(float minX, float minY, float maxX, float maxY) {
+			mMinX = minX;
+			mMinY = minY;
+			mMaxX = maxX;
+			mMaxY = maxY;
+		}
+
+		@Override
+		public void apply(ParticleBuffer particles, int start, int end,
+				float t) {
+			final float[] posX = particles.mPosX;
+			final float[] posY = particles.mPosY;
+			final float[] speed = particles.mSpeed;
+			final float[] color = particles.mColor;
+			for (int k = start; k < end; ++k) {
+				if (posX[k] < mMinX || posX[k] > mMaxX || posY[k] < mMinY
+						|| posY[k] > mMaxY) {
+					speed[k] = 0f;
+					color[k] = 0f;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fades particle color out during the last tenth of given lifetime.
+	 * Particles already killed stay transparent.
+	 */
+	public static final class ColorOverLife implements ParticleAffector {
+
+		private final float mLifetime;
+
+		public ColorOverLife(float lifetime) {
+			mLifetime = lifetime;
+		}
+
+		@Override
+		public void apply(ParticleBuffer particles, int start, int end,
+				float t) {
+			final float[] age = particles.mAge;
+			final float[] color = particles.mColor;
+			final float scale = 1f / (0.1f * mLifetime);
+			for (int k = start; k < end; ++k) {
+				float c = (mLifetime - age[k]) * scale;
+				c = c < 0f ? 0f : c > 1f ? 1f : c;
+				color[k] = color[k] < c ? color[k] : c;
+			}
+		}
+	}
+
+	/**
+	 * Ramps color up from zero over given amount of oldest live particles,
+	 * younger particles are fully lit. Color depends on age order only and
+	 * is rewritten on every call.
+	 */
+	public static final class ColorOverOrder implements ParticleAffector {
+
+		private final int mCount;
+
+		public ColorOverOrder(int count) {
+			mCount = count;
+		}
+
+		@Override
+		public void apply(ParticleBuffer particles, int start, int end,
+				float t) {
+			final float[] color = particles.mColor;
+			final int capacity = particles.getCapacity();
+			final int count = mCount;
+			int order = particles.order(start);
+			for (int k = start; k < end; ++k) {
+				color[k] = order < count ? (float) order / count : 1f;
+				if (++order == capacity) {
+					order = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Linear speed decay, speed *= 1 - t.
+	 */
+	public static final class Drag implements ParticleAffector {
+
+		@Override
+		public void apply(ParticleBuffer particles, int start, int end,
+				float t) {
+			final float[] speed = particles.mSpeed;
+			for (int k = start; k < end; ++k) {
+				speed[k] *= 1.0 - t;
+			}
+		}
+	}
+
+	/**
+	 * Constant acceleration.
+	 */
+	public static final class Gravity implements ParticleAffector {
+
+		private final float mGravityX, mGravityY;
+
+		public Gravity(float gravityX, float gravityY) {
+			mGravityX = gravityX;
+			mGravityY = gravityY;
+		}
+
+		@Override
+		public void apply(ParticleBuffer particles, int start, int end,
+				float t) {
+			final float[] dirX = particles.mDirX;
+			final float[] dirY = particles.mDirY;
+			final float[] speed = particles.mSpeed;
+			final float gx = mGravityX * t;
+			final float gy = mGravityY * t;
+			for (int k = start; k < end; ++k) {
+				if (speed[k] > MIN_SPEED) {
+					float invSpeed = 1f / speed[k];
+					dirX[k] += gx * invSpeed;
+					dirY[k] += gy * invSpeed;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves particles along their velocity, previous positions are stored
+	 * for render interpolation and particle age is increased.
+	 */
+	public static final class Integrate implements ParticleAffector {
+
+		@Override
+		public void apply(ParticleBuffer particles, int start, int end,
+				float t) {
+			final float[] posX = particles.mPosX;
+			final float[] posY = particles.mPosY;
+			final float[] prevX = particles.mPrevX;
+			final float[] prevY = particles.mPrevY;
+			final float[] dirX = particles.mDirX;
+			final float[] dirY = particles.mDirY;
+			final float[] speed = particles.mSpeed;
+			final float[] age = particles.mAge;
+			for (int k = start; k < end; ++k) {
+				prevX[k] = posX[k];
+				prevY[k] = posY[k];
+				posX[k] += dirX[k] * speed[k] * t;
+				posY[k] += dirY[k] * speed[k] * t;
+				age[k] += t;
+			}
+		}
+	}
+
+	/**
+	 * Swirls particles around given center within given radius. Strength is
+	 * tangential acceleration at the center, fading linearly to zero at
+	 * radius.
+	 */
+	public static final class Vortex implements ParticleAffector {
+
+		private final float mCenterX, mCenterY, mRadius, mStrength;
+
+		public Vortex(float centerX, float centerY, float radius,
+				float strength) {
+			mCenterX = centerX;
+			mCenterY = centerY;
+			mRadius = radius;
+			mStrength = strength;
+		}
+
+		@Override
+		public void apply(ParticleBuffer particles, int start, int end,
+				float t) {
+			final float[] posX = particles.mPosX;
+			final float[] posY = particles.mPosY;
+			final float[] dirX = particles.mDirX;
+			final float[] dirY = particles.mDirY;
+			final float[] speed = particles.mSpeed;
+			final float radiusSq = mRadius * mRadius;
+			final float strength = mStrength * t;
+			for (int k = start; k < end; ++k) {
+				float dx = posX[k] - mCenterX;
+				float dy = posY[k] - mCenterY;
+				float lenSq = dx * dx + dy * dy;
+				if (lenSq > 0f && lenSq < radiusSq && speed[k] > MIN_SPEED) {
+					float len = FloatMath.sqrt(lenSq);
+					float f = strength * (1f - len / mRadius)
+							/ (len * speed[k]);
+					dirX[k] -= dy * f;
+					dirY[k] += dx * f;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import android.util.FloatMath;
+
+/**
+ * Particle attractors stored in a uniform spatial hash grid. Grid cell size
+ * equals attractor radius, meaning a particle needs to test attractors within
+ * its own and eight neighboring cells only. Moving an attractor relinks it
+ * only if its cell changes, grid is never rebuilt from scratch.
+ */
+public final class ParticleAttractors {
+
+	// Number of hash buckets, must be a power of two.
+	private static final int BUCKETS = 256;
+
+	public final int[] mCellX;
+	public final int[] mCellY;
+	public final int[] mHead = new int[BUCKETS];
+	public final int[] mNext;
+	public final float[] mPosX;
+	public final float[] mPosY;
+
+	private int mCount;
+	private final float mInvRadius;
+	private final int[] mPrev;
+	private final float mRadius;
+
+	/**
+	 * Creates new attractor grid with given capacity and attraction radius.
+	 */
+	public ParticleAttractors(int capacity, float radius) {
+		mCellX = new int[capacity];
+		mCellY = new int[capacity];
+		mNext = new int[capacity];
+		mPrev = new int[capacity];
+		mPosX = new float[capacity];
+		mPosY = new float[capacity];
+		mRadius = radius;
+		mInvRadius = 1f / radius;
+		clear();
+	}
+
+	/**
+	 * Returns hash bucket for given cell.
+	 */
+	public static int bucket(int cellX, int cellY) {
+		return ((cellX * 73856093) ^ (cellY * 19349663)) & (BUCKETS - 1);
+	}
+
+	/**
+	 * Adds new attractor at given position and returns its id.
+	 */
+	public int add(float x, float y) {
+		if (mCount == mPosX.length) {
+			throw new IllegalStateException("Too many attractors");
+		}
+		int id = mCount++;
+		mPosX[id] = x;
+		mPosY[id] = y;
+		mCellX[id] = cell(x);
+		mCellY[id] = cell(y);
+		link(id);
+		return id;
+	}
+
+	/**
+	 * Maps coordinate into grid cell coordinate.
+	 */
+	public int cell(float value) {
+		return (int) FloatMath.floor(value * mInvRadius);
+	}
+
+	/**
+	 * Removes all attractors.
+	 */
+	public void clear() {
+		for (int i = 0; i < BUCKETS; ++i) {
+			mHead[i] = -1;
+		}
+		mCount = 0;
+	}
+
+	/**
+	 * Returns number of attractors.
+	 */
+	public int getCount() {
+		return mCount;
+	}
+
+	/**
+	 * Returns attraction radius, which is also grid cell size.
+	 */
+	public float getRadius() {
+		return mRadius;
+	}
+
+	/**
+	 * Adds attractor into its cell bucket list.
+	 */
+	private void link(int id) {
+		int bucket = bucket(mCellX[id], mCellY[id]);
+		mPrev[id] = -1;
+		mNext[id] = mHead[bucket];
+		if (mHead[bucket] != -1) {
+			mPrev[mHead[bucket]] = id;
+		}
+		mHead[bucket] = id;
+	}
+
+	/**
+	 * Moves attractor with given id into new position.
+	 */
+	public void set(int id, float x, float y) {
+		mPosX[id] = x;
+		mPosY[id] = y;
+		int cellX = cell(x);
+		int cellY = cell(y);
+		if (cellX != mCellX[id] || cellY != mCellY[id]) {
+			unlink(id);
+			mCellX[id] = cellX;
+			mCellY[id] = cellY;
+			link(id);
+		}
+	}
+
+	/**
+	 * Removes attractor from its cell bucket list.
+	 */
+	private void unlink(int id) {
+		int prev = mPrev[id];
+		int next = mNext[id];
+		if (prev != -1) {
+			mNext[prev] = next;
+		} else {
+			mHead[bucket(mCellX[id], mCellY[id])] = next;
+		}
+		if (next != -1) {
+			mPrev[next] = prev;
+		}
+	}
+
+}
@@ -0,0 +1,171 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed capacity particle store. Particle attributes are kept in parallel
+ * primitive arrays which are used as a ring buffer; once capacity is reached
+ * emitting a new particle overwrites the oldest one. Both emitting and
+ * expiring particles are O(1) operations.
+ */
+public final class ParticleBuffer implements EffectsSnapshot.Snapshot {
+
+	// Particle attributes, indexed with physical index.
+	public final float[] mAge;
+	public final float[] mColor;
+	public final float[] mDirX;
+	public final float[] mDirY;
+	public final float[] mPosX;
+	public final float[] mPosY;
+	// Positions before latest simulation step.
+	public final float[] mPrevX;
+	public final float[] mPrevY;
+	public final float[] mSpeed;
+
+	private final int mCapacity;
+	private int mCount;
+	private int mHead;
+
+	/**
+	 * Creates new particle buffer with given capacity.
+	 */
+	public ParticleBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Invalid capacity " + capacity);
+		}
+		mCapacity = capacity;
+		mAge = new float[capacity];
+		mColor = new float[capacity];
+		mDirX = new float[capacity];
+		mDirY = new float[capacity];
+		mPosX = new float[capacity];
+		mPosY = new float[capacity];
+		mPrevX = new float[capacity];
+		mPrevY = new float[capacity];
+		mSpeed = new float[capacity];
+	}
+
+	/**
+	 * Removes all particles.
+	 */
+	public void clear() {
+		mCount = mHead = 0;
+	}
+
+	/**
+	 * Reserves a slot for new particle and returns its physical index. If
+	 * buffer is full the oldest particle is overwritten. Caller is expected
+	 * to initialize all attributes for returned index.
+	 */
+	public int emit() {
+		int index = mHead;
+		if (++mHead == mCapacity) {
+			mHead = 0;
+		}
+		if (mCount < mCapacity) {
+			++mCount;
+		}
+		mAge[index] = 0f;
+		mColor[index] = 1f;
+		return index;
+	}
+
+	/**
+	 * Removes given amount of oldest particles.
+	 */
+	public void expire(int count) {
+		mCount = count >= mCount ? 0 : mCount - count;
+	}
+
+	/**
+	 * Returns maximum number of particles.
+	 */
+	public int getCapacity() {
+		return mCapacity;
+	}
+
+	/**
+	 * Returns number of live particles.
+	 */
+	public int getCount() {
+		return mCount;
+	}
+
+	@Override
+	public int getStateSize() {
+		return 8 + 4 * 9 * mCapacity;
+	}
+
+	/**
+	 * Maps age order into physical array index. Order 0 is the oldest live
+	 * particle and getCount() - 1 the most recently emitted one.
+	 */
+	public int index(int order) {
+		int index = mHead - mCount + order;
+		if (index < 0) {
+			index += mCapacity;
+		} else if (index >= mCapacity) {
+			index -= mCapacity;
+		}
+		return index;
+	}
+
+	/**
+	 * Maps physical array index into age order, inverse of index().
+	 */
+	public int order(int index) {
+		int order = index - mHead + mCount;
+		if (order < 0) {
+			order += mCapacity;
+		} else if (order >= mCapacity) {
+			order -= mCapacity;
+		}
+		return order;
+	}
+
+	@Override
+	public void restoreState(ByteBuffer buffer) {
+		mCount = buffer.getInt();
+		mHead = buffer.getInt();
+		EffectsSnapshot.getFloats(buffer, mAge, mCapacity);
+		EffectsSnapshot.getFloats(buffer, mColor, mCapacity);
+		EffectsSnapshot.getFloats(buffer, mDirX, mCapacity);
+		EffectsSnapshot.getFloats(buffer, mDirY, mCapacity);
+		EffectsSnapshot.getFloats(buffer, mPosX, mCapacity);
+		EffectsSnapshot.getFloats(buffer, mPosY, mCapacity);
+		EffectsSnapshot.getFloats(buffer, mPrevX, mCapacity);
+		EffectsSnapshot.getFloats(buffer, mPrevY, mCapacity);
+		EffectsSnapshot.getFloats(buffer, mSpeed, mCapacity);
+	}
+
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.putInt(mCount).putInt(mHead);
+		EffectsSnapshot.putFloats(buffer, mAge, mCapacity);
+		EffectsSnapshot.putFloats(buffer, mColor, mCapacity);
+		EffectsSnapshot.putFloats(buffer, mDirX, mCapacity);
+		EffectsSnapshot.putFloats(buffer, mDirY, mCapacity);
+		EffectsSnapshot.putFloats(buffer, mPosX, mCapacity);
+		EffectsSnapshot.putFloats(buffer, mPosY, mCapacity);
+		EffectsSnapshot.putFloats(buffer, mPrevX, mCapacity);
+		EffectsSnapshot.putFloats(buffer, mPrevY, mCapacity);
+		EffectsSnapshot.putFloats(buffer, mSpeed, mCapacity);
+	}
+
+}
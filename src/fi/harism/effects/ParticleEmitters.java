@@ -0,0 +1,134 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import android.util.FloatMath;
+
+/**
+ * Particle emitters. Every emitter has a position, an emit direction in
+ * degrees and optionally an attractor which follows emitter position.
+ * Particles are spread evenly along the line from the position emitted from
+ * previously to current position, fast moving emitters leave a continuous
+ * trail instead of separate bursts.
+ */
+public final class ParticleEmitters {
+
+	private final int[] mAttractor;
+	private final ParticleAttractors mAttractors;
+	private int mCount;
+	private final float[] mDir;
+	private final float[] mPosX;
+	private final float[] mPosY;
+	private final float[] mPrevX;
+	private final float[] mPrevY;
+	// Random direction offsets and lengths for emitted particles.
+	private float[] mRandomDir = new float[0];
+	private float[] mRandomLen = new float[0];
+
+	/**
+	 * Creates new emitter container with given capacity. Emitter attractors
+	 * are added into given attractor grid.
+	 */
+	public ParticleEmitters(int capacity, ParticleAttractors attractors) {
+		mAttractor = new int[capacity];
+		mAttractors = attractors;
+		mDir = new float[capacity];
+		mPosX = new float[capacity];
+		mPosY = new float[capacity];
+		mPrevX = new float[capacity];
+		mPrevY = new float[capacity];
+	}
+
+	/**
+	 * Adds new emitter and returns its id. If attract is true, emitter will
+	 * also attract particles closer than attractor radius.
+	 */
+	public int add(float x, float y, float dir, boolean attract) {
+		if (mCount == mPosX.length) {
+			throw new IllegalStateException("Too many emitters");
+		}
+		int id = mCount++;
+		mAttractor[id] = attract ? mAttractors.add(x, y) : -1;
+		set(id, x, y, dir);
+		reset(id);
+		return id;
+	}
+
+	/**
+	 * Emits given amount of particles from each emitter.
+	 */
+	public void emit(ParticleBuffer particles, int countPerEmitter) {
+		if (mRandomDir.length < countPerEmitter) {
+			mRandomDir = new float[countPerEmitter];
+			mRandomLen = new float[countPerEmitter];
+		}
+		final EffectsRandom random = EffectsRandom.get();
+		for (int i = 0; i < mCount; ++i) {
+			random.fill(mRandomDir, 0, countPerEmitter, -20f, 20f);
+			random.fill(mRandomLen, 0, countPerEmitter, 0.2f, 1.0f);
+			final float stepX = (mPosX[i] - mPrevX[i]) / countPerEmitter;
+			final float stepY = (mPosY[i] - mPrevY[i]) / countPerEmitter;
+			for (int j = 0; j < countPerEmitter; ++j) {
+				int k = particles.emit();
+
+				float x = mPrevX[i] + stepX * (j + 1);
+				float y = mPrevY[i] + stepY * (j + 1);
+				particles.mPosX[k] = particles.mPrevX[k] = x;
+				particles.mPosY[k] = particles.mPrevY[k] = y;
+
+				float dir = (float) (Math.PI * 2 * (mDir[i] + mRandomDir[j])
+						/ 360);
+				float len = mRandomLen[j];
+				particles.mDirX[k] = FloatMath.sin(dir) * len;
+				particles.mDirY[k] = FloatMath.cos(dir) * len;
+				particles.mSpeed[k] = 0.8f;
+			}
+			mPrevX[i] = mPosX[i];
+			mPrevY[i] = mPosY[i];
+		}
+	}
+
+	/**
+	 * Returns number of emitters.
+	 */
+	public int getCount() {
+		return mCount;
+	}
+
+	/**
+	 * Makes next emission start from current emitter position instead of
+	 * the previous one, use after moving emitter discontinuously.
+	 */
+	public void reset(int id) {
+		mPrevX[id] = mPosX[id];
+		mPrevY[id] = mPosY[id];
+	}
+
+	/**
+	 * Updates emitter position and direction. Next emission is spread along
+	 * the line from previous position, see reset().
+	 */
+	public void set(int id, float x, float y, float dir) {
+		mPosX[id] = x;
+		mPosY[id] = y;
+		mDir[id] = dir;
+		if (mAttractor[id] != -1) {
+			mAttractors.set(mAttractor[id], x, y);
+		}
+	}
+
+}
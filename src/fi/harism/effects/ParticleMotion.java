@@ -0,0 +1,52 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+/**
+ * Closed form free flight particle motion. Integrating position with
+ * pos += dir * speed * h and decaying speed with speed *= 1 - h gives, after
+ * n steps, pos = pos0 + dir * speed0 * (1 - (1 - h)^n). Writing n as age / h
+ * gives position as a function of particle age only, which is what
+ * particle_stateless_vs.txt evaluates. Methods here are the CPU reference
+ * for the same formula.
+ */
+public final class ParticleMotion {
+
+	/**
+	 * Returns decay constant ln(1 - h) / h for given integration step h in
+	 * seconds, (1 - h)^(age / h) equals exp(decay * age).
+	 */
+	public static float decay(float stepSeconds) {
+		return (float) (Math.log(1.0 - stepSeconds) / stepSeconds);
+	}
+
+	/**
+	 * Returns position of particle with given age in seconds.
+	 */
+	public static float position(float origin, float velocity, float decay,
+			float age) {
+		return origin + velocity * (1f - (float) Math.exp(decay * age));
+	}
+
+	/**
+	 * Returns speed of particle with given age in seconds.
+	 */
+	public static float speed(float speed, float decay, float age) {
+		return speed * (float) Math.exp(decay * age);
+	}
+
+}
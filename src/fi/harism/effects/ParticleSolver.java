@@ -0,0 +1,100 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+/**
+ * Particle update solver. Runs a pipeline of affectors over all live
+ * particles, each affector is applied to a whole contiguous range at once.
+ * Particles are independent of each other so update is split into parallel
+ * chunks, results are identical to a serial update.
+ */
+public final class ParticleSolver implements EffectsParallel.Task {
+
+	private ParticleAffector[] mAffectors = new ParticleAffector[0];
+	private final EffectsParallel mParallel;
+	private final ParticleBuffer mParticles;
+	private float mTime;
+
+	/**
+	 * Creates new solver for given particles and parallel executor.
+	 */
+	public ParticleSolver(ParticleBuffer particles, EffectsParallel parallel) {
+		mParticles = particles;
+		mParallel = parallel;
+	}
+
+	/**
+	 * Appends affector at the end of affector pipeline.
+	 */
+	public void addAffector(ParticleAffector affector) {
+		ParticleAffector[] affectors = new ParticleAffector[mAffectors.length
+				+ 1];
+		System.arraycopy(mAffectors, 0, affectors, 0, mAffectors.length);
+		affectors[mAffectors.length] = affector;
+		mAffectors = affectors;
+	}
+
+	/**
+	 * Runs affector pipeline over given range of physical indices.
+	 */
+	private void apply(int start, int end) {
+		final ParticleAffector[] affectors = mAffectors;
+		for (int i = 0; i < affectors.length; ++i) {
+			affectors[i].apply(mParticles, start, end, mTime);
+		}
+	}
+
+	/**
+	 * Returns affector at given pipeline position.
+	 */
+	public ParticleAffector getAffector(int index) {
+		return mAffectors[index];
+	}
+
+	/**
+	 * Returns number of affectors in pipeline.
+	 */
+	public int getAffectorCount() {
+		return mAffectors.length;
+	}
+
+	@Override
+	public void run(int start, int end) {
+		if (start == end) {
+			return;
+		}
+		// Map age ordered range into at most two physical ranges.
+		int first = mParticles.index(start);
+		int last = mParticles.index(end - 1);
+		if (first <= last) {
+			apply(first, last + 1);
+		} else {
+			apply(first, mParticles.getCapacity());
+			apply(0, last + 1);
+		}
+	}
+
+	/**
+	 * Advances all live particles given amount of seconds. Blocks until
+	 * update has finished.
+	 */
+	public void solve(float t) {
+		mTime = t;
+		mParallel.forRange(mParticles.getCount(), this);
+	}
+
+}
@@ -0,0 +1,183 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Biquadratic Bezier patch evaluated over a fixed grid of (u, v) parameters
+ * using precomputed Bernstein weights. Each grid vertex stores the three
+ * weights of u and v and of their derivatives. Control points are held as
+ * one 3x3 matrix per coordinate, row i holding points along u at v index i,
+ * so a patch point coordinate is Bv . (C * Bu) and partial derivatives
+ * replace either weight vector with its derivative. Same matrices are given
+ * to rubber_vs.txt as uCtrlX, uCtrlY and uCtrlZ, which makes the CPU and
+ * shader paths evaluate identical products.
+ */
+public final class PatchBasis {
+
+	// Floats per grid vertex, weights u, v, du and dv.
+	public static final int VERTEX_FLOATS = 12;
+
+	private final float[] mBasis;
+	private final int mEdge;
+	// Column major 3x3 matrices for x, y and z coordinates.
+	private final float[] mMatrices = new float[27];
+	private final float[] mScratch = new float[VERTEX_FLOATS];
+
+	/**
+	 * Creates basis for grid of edge * edge vertices, u changing fastest.
+	 */
+	public PatchBasis(int edge) {
+		mEdge = edge;
+		mBasis = new float[edge * edge * VERTEX_FLOATS];
+		for (int i = 0; i < edge; ++i) {
+			float v = (float) i / (edge - 1);
+			for (int j = 0; j < edge; ++j) {
+				float u = (float) j / (edge - 1);
+				weights(u, v, mBasis, (i * edge + j) * VERTEX_FLOATS);
+			}
+		}
+	}
+
+	/**
+	 * Writes weights of quadratic Bernstein polynomials and their
+	 * derivatives at u and v into array, u, v, du and dv in this order.
+	 */
+	private static void weights(float u, float v, float[] out, int offset) {
+		float su = 1f - u, sv = 1f - v;
+		out[offset] = su * su;
+		out[offset + 1] = 2 * su * u;
+		out[offset + 2] = u * u;
+		out[offset + 3] = sv * sv;
+		out[offset + 4] = 2 * sv * v;
+		out[offset + 5] = v * v;
+		out[offset + 6] = -2 * su;
+		out[offset + 7] = 2 * (su - u);
+		out[offset + 8] = 2 * u;
+		out[offset + 9] = -2 * sv;
+		out[offset + 10] = 2 * (sv - v);
+		out[offset + 11] = 2 * v;
+	}
+
+	/**
+	 * Evaluates patch point and unnormalized normal Pv x Pu at given grid
+	 * vertex, writing six floats into out.
+	 */
+	public void evaluate(int vertex, float[] out, int offset) {
+		evaluate(mBasis, vertex * VERTEX_FLOATS, out, offset);
+	}
+
+	/**
+	 * Evaluates patch point and normal from weights at given offset.
+	 */
+	private void evaluate(float[] basis, int b, float[] out, int offset) {
+		final float[] m = mMatrices;
+		float px = 0, py = 0, pz = 0;
+		float ux = 0, uy = 0, uz = 0;
+		float vx = 0, vy = 0, vz = 0;
+		for (int i = 0; i < 3; ++i) {
+			// Row i of each matrix weighted along u and along du.
+			float rowX = 0, rowY = 0, rowZ = 0;
+			float rowDx = 0, rowDy = 0, rowDz = 0;
+			for (int j = 0; j < 3; ++j) {
+				float wu = basis[b + j], wdu = basis[b + 6 + j];
+				float x = m[j * 3 + i], y = m[9 + j * 3 + i];
+				float z = m[18 + j * 3 + i];
+				rowX += x * wu;
+				rowY += y * wu;
+				rowZ += z * wu;
+				rowDx += x * wdu;
+				rowDy += y * wdu;
+				rowDz += z * wdu;
+			}
+			float wv = basis[b + 3 + i], wdv = basis[b + 9 + i];
+			px += rowX * wv;
+			py += rowY * wv;
+			pz += rowZ * wv;
+			ux += rowDx * wv;
+			uy += rowDy * wv;
+			uz += rowDz * wv;
+			vx += rowX * wdv;
+			vy += rowY * wdv;
+			vz += rowZ * wdv;
+		}
+		out[offset] = px;
+		out[offset + 1] = py;
+		out[offset + 2] = pz;
+		out[offset + 3] = vy * uz - vz * uy;
+		out[offset + 4] = vz * ux - vx * uz;
+		out[offset + 5] = vx * uy - vy * ux;
+	}
+
+	/**
+	 * Evaluates patch point and normal at arbitrary (u, v), e.g. for picking.
+	 */
+	public void evaluate(float u, float v, float[] out, int offset) {
+		weights(u, v, mScratch, 0);
+		evaluate(mScratch, 0, out, offset);
+	}
+
+	/**
+	 * Returns control point matrices of x, y and z in column major order,
+	 * ready for glUniformMatrix3fv at offsets 0, 9 and 18.
+	 */
+	public float[] getMatrices() {
+		return mMatrices;
+	}
+
+	/**
+	 * Copies weights of given grid vertex into array, u, v, du and dv in
+	 * this order.
+	 */
+	public void getWeights(int vertex, float[] out, int offset) {
+		System.arraycopy(mBasis, vertex * VERTEX_FLOATS, out, offset,
+				VERTEX_FLOATS);
+	}
+
+	/**
+	 * Returns number of grid vertices.
+	 */
+	public int getVertexCount() {
+		return mEdge * mEdge;
+	}
+
+	/**
+	 * Sets 9 control points, rows along v each holding points along u, as
+	 * found at given offset of array.
+	 */
+	public void setControlPoints(float[] ctrl, int offset) {
+		final float[] m = mMatrices;
+		for (int i = 0; i < 3; ++i) {
+			for (int j = 0; j < 3; ++j) {
+				int c = offset + (i * 3 + j) * 3;
+				m[j * 3 + i] = ctrl[c];
+				m[9 + j * 3 + i] = ctrl[c + 1];
+				m[18 + j * 3 + i] = ctrl[c + 2];
+			}
+		}
+	}
+
+	/**
+	 * Writes weights of all grid vertices into buffer starting from its
+	 * position.
+	 */
+	public void writeBasis(FloatBuffer buffer) {
+		buffer.put(mBasis);
+	}
+
+}
@@ -0,0 +1,259 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Closed mesh of biquadratic patches sharing their edge control points, e.g.
+ * rubber cube. Every patch is sampled over the same edge * edge grid, and
+ * grid vertices on patch edges are merged so that seams are shared instead
+ * of evaluated once per patch. Two patches using same three control points
+ * along an edge evaluate same curve, possibly in reverse, so merging is done
+ * by control point indices only. Each vertex stores Bernstein weights of
+ * PatchBasis followed by index of patch owning it; rubber_mesh_vs.txt looks
+ * up control points of that patch from a uniform table. Seam vertices also
+ * store the other patches sharing them, at most two, whose normals are
+ * averaged in. Rest position of every vertex lets rubber_mesh_fs.txt color
+ * fragments by face without splitting seams.
+ */
+public final class RubberMesh {
+
+	// Floats per vertex, weights u, v, du and dv, patch index, two (patch,
+	// u, v) seam triplets and rest position.
+	public static final int VERTEX_FLOATS = PatchBasis.VERTEX_FLOATS + 10;
+
+	private final PatchBasis mBasis;
+	private final int mEdge;
+	private final int[][] mFaces;
+	// Mesh vertex of every grid vertex of every patch.
+	private final int[] mFaceVertices;
+	private final int[] mIndices;
+	private final float[] mScratch = new float[27];
+	private final float[] mScratchOut = new float[6];
+	private int mVertexCount;
+	// Owning patch and its grid vertex of every mesh vertex.
+	private final int[] mVertexFaces;
+	private final int[] mVertexGrid;
+	// Two other patches sharing every mesh vertex, as patch times grid
+	// vertex count plus grid vertex, or -1.
+	private final int[] mVertexSeams;
+
+	/**
+	 * Creates mesh of given patches, each given as 9 control point indices,
+	 * rows along v each holding points along u. Patches have to be wound
+	 * consistently, triangles are wound as in MeshIndices.grid().
+	 */
+	public RubberMesh(int edge, int[][] faces) {
+		mEdge = edge;
+		mFaces = faces;
+		mBasis = new PatchBasis(edge);
+
+		final int gridCount = edge * edge;
+		mFaceVertices = new int[faces.length * gridCount];
+		mVertexFaces = new int[faces.length * gridCount];
+		mVertexGrid = new int[faces.length * gridCount];
+		mVertexSeams = new int[2 * faces.length * gridCount];
+		Arrays.fill(mVertexSeams, -1);
+		HashMap<Long, Integer> shared = new HashMap<Long, Integer>();
+		for (int f = 0; f < faces.length; ++f) {
+			for (int i = 0; i < edge; ++i) {
+				for (int j = 0; j < edge; ++j) {
+					long key = getKey(f, i, j);
+					Integer vertex = shared.get(key);
+					if (vertex == null) {
+						vertex = mVertexCount++;
+						shared.put(key, vertex);
+						mVertexFaces[vertex] = f;
+						mVertexGrid[vertex] = i * edge + j;
+					} else {
+						int seam = vertex * 2;
+						seam += mVertexSeams[seam] == -1 ? 0 : 1;
+						mVertexSeams[seam] = f * gridCount + i * edge + j;
+					}
+					mFaceVertices[f * gridCount + i * edge + j] = vertex;
+				}
+			}
+		}
+
+		final int[] grid = MeshIndices.grid(edge);
+		final int[] indices = new int[faces.length * grid.length];
+		for (int f = 0; f < faces.length; ++f) {
+			for (int k = 0; k < grid.length; ++k) {
+				indices[f * grid.length + k] = mFaceVertices[f * gridCount
+						+ grid[k]];
+			}
+		}
+		mIndices = indices;
+	}
+
+	/**
+	 * Evaluates point and normal of given mesh vertex with control points
+	 * given as x, y and z triplets, writing six floats into out. Normal is
+	 * sum of unit normals of all patches sharing the vertex, same as in
+	 * rubber_mesh_vs.txt.
+	 */
+	public void evaluate(int vertex, float[] ctrl, float[] out, int offset) {
+		final float[] scratch = mScratchOut;
+		evaluate(mVertexFaces[vertex], mVertexGrid[vertex], ctrl, out,
+				offset);
+		normalize(out, offset + 3);
+		final int gridCount = mEdge * mEdge;
+		for (int s = vertex * 2; s < vertex * 2 + 2; ++s) {
+			int seam = mVertexSeams[s];
+			if (seam != -1) {
+				evaluate(seam / gridCount, seam % gridCount, ctrl, scratch,
+						0);
+				normalize(scratch, 3);
+				out[offset + 3] += scratch[3];
+				out[offset + 4] += scratch[4];
+				out[offset + 5] += scratch[5];
+			}
+		}
+	}
+
+	/**
+	 * Evaluates point and unnormalized normal of given patch at given grid
+	 * vertex.
+	 */
+	private void evaluate(int patch, int grid, float[] ctrl, float[] out,
+			int offset) {
+		final int[] face = mFaces[patch];
+		final float[] scratch = mScratch;
+		for (int i = 0; i < 9; ++i) {
+			scratch[i * 3] = ctrl[face[i] * 3];
+			scratch[i * 3 + 1] = ctrl[face[i] * 3 + 1];
+			scratch[i * 3 + 2] = ctrl[face[i] * 3 + 2];
+		}
+		mBasis.setControlPoints(scratch, 0);
+		mBasis.evaluate(grid, out, offset);
+	}
+
+	/**
+	 * Returns control point indices of every patch as 3 vectors per patch,
+	 * one per row, ready for glUniform3fv.
+	 */
+	public float[] getFaceTable() {
+		final float[] table = new float[mFaces.length * 9];
+		for (int f = 0; f < mFaces.length; ++f) {
+			for (int i = 0; i < 9; ++i) {
+				table[f * 9 + i] = mFaces[f][i];
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Returns triangle list of whole mesh.
+	 */
+	public int[] getIndices() {
+		return mIndices;
+	}
+
+	/**
+	 * Returns merge key of grid vertex at row i and column j of given patch.
+	 * Corners are keyed by their control point, other edge vertices by
+	 * control points at the ends of their edge and distance from the lower
+	 * one, and interior vertices by patch and position.
+	 */
+	private long getKey(int face, int i, int j) {
+		final int[] ctrl = mFaces[face];
+		final int last = mEdge - 1;
+		boolean rowEdge = i == 0 || i == last;
+		boolean colEdge = j == 0 || j == last;
+		if (rowEdge && colEdge) {
+			return ctrl[(i == 0 ? 0 : 6) + (j == 0 ? 0 : 2)];
+		}
+		int a, b, k;
+		if (rowEdge) {
+			a = ctrl[i == 0 ? 0 : 6];
+			b = ctrl[i == 0 ? 2 : 8];
+			k = j;
+		} else if (colEdge) {
+			a = ctrl[j == 0 ? 0 : 2];
+			b = ctrl[j == 0 ? 6 : 8];
+			k = i;
+		} else {
+			return (2L << 48) | ((long) face << 32) | (i << 16) | j;
+		}
+		if (a > b) {
+			int tmp = a;
+			a = b;
+			b = tmp;
+			k = last - k;
+		}
+		return (1L << 48) | ((long) a << 32) | (b << 16) | k;
+	}
+
+	/**
+	 * Returns mesh vertex of grid vertex at row i and column j of given
+	 * patch.
+	 */
+	public int getVertex(int face, int i, int j) {
+		return mFaceVertices[(face * mEdge + i) * mEdge + j];
+	}
+
+	/**
+	 * Returns number of mesh vertices.
+	 */
+	public int getVertexCount() {
+		return mVertexCount;
+	}
+
+	/**
+	 * Scales vector of three floats at given offset to unit length.
+	 */
+	private static void normalize(float[] v, int offset) {
+		float x = v[offset], y = v[offset + 1], z = v[offset + 2];
+		float length = (float) Math.sqrt(x * x + y * y + z * z);
+		if (length > 0f) {
+			v[offset] = x / length;
+			v[offset + 1] = y / length;
+			v[offset + 2] = z / length;
+		}
+	}
+
+	/**
+	 * Writes all vertices into buffer starting from its position. Rest
+	 * positions are evaluated from given undeformed control points.
+	 */
+	public void writeVertices(FloatBuffer buffer, float[] restCtrl) {
+		final float[] weights = new float[PatchBasis.VERTEX_FLOATS];
+		final float[] rest = new float[6];
+		final int gridCount = mEdge * mEdge;
+		for (int v = 0; v < mVertexCount; ++v) {
+			mBasis.getWeights(mVertexGrid[v], weights, 0);
+			buffer.put(weights).put(mVertexFaces[v]);
+			for (int s = v * 2; s < v * 2 + 2; ++s) {
+				int seam = mVertexSeams[s];
+				if (seam == -1) {
+					buffer.put(-1f).put(0f).put(0f);
+				} else {
+					int grid = seam % gridCount;
+					buffer.put(seam / gridCount);
+					buffer.put((float) (grid % mEdge) / (mEdge - 1));
+					buffer.put((float) (grid / mEdge) / (mEdge - 1));
+				}
+			}
+			evaluate(mVertexFaces[v], mVertexGrid[v], restCtrl, rest, 0);
+			buffer.put(rest, 0, 3);
+		}
+	}
+
+}
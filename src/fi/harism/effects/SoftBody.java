@@ -0,0 +1,303 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Mass-spring lattice of size * size * size unit mass nodes spanning cube
+ * [-1, 1], integrated with Verlet. Every node is connected to all of its up
+ * to 26 neighbours, axis, face diagonal and body diagonal springs together
+ * keeping the lattice from shearing or collapsing. Springs are stored per
+ * node in compressed row arrays so each node gathers its own forces, which
+ * lets steps run in parallel chunks without write conflicts and gives same
+ * results for any thread count. Nodes can additionally be anchored to
+ * target positions with springs of their own.
+ */
+public final class SoftBody implements EffectsParallel.Task {
+
+	private float mAnchorStiffness;
+	private final float[] mAnchors;
+	private final float[] mAnchorWeights;
+	private final float mDamping;
+	private float mDt;
+	// Neighbours and rest lengths of node i at [mOffsets[i], mOffsets[i+1]).
+	private final int[] mNeighbors;
+	private float[] mNext;
+	private final int mNodeCount;
+	private final int[] mOffsets;
+	private final EffectsParallel mParallel;
+	private float[] mPositions;
+	private float[] mPrevious;
+	private final float[] mRestLengths;
+	private final int mSize;
+	private final float mStiffness;
+
+	/**
+	 * Creates lattice at rest with given nodes per axis, spring stiffness
+	 * and fraction of velocity lost per step.
+	 */
+	public SoftBody(int size, float stiffness, float damping,
+			EffectsParallel parallel) {
+		if (size < 2) {
+			throw new IllegalArgumentException("Invalid lattice size " + size);
+		}
+		mSize = size;
+		mStiffness = stiffness;
+		mDamping = damping;
+		mParallel = parallel;
+		mNodeCount = size * size * size;
+		mPositions = new float[3 * mNodeCount];
+		mPrevious = new float[3 * mNodeCount];
+		mNext = new float[3 * mNodeCount];
+		mAnchors = new float[3 * mNodeCount];
+		mAnchorWeights = new float[mNodeCount];
+
+		for (int z = 0; z < size; ++z) {
+			for (int y = 0; y < size; ++y) {
+				for (int x = 0; x < size; ++x) {
+					int i = getNode(x, y, z) * 3;
+					mPositions[i] = 2f * x / (size - 1) - 1f;
+					mPositions[i + 1] = 2f * y / (size - 1) - 1f;
+					mPositions[i + 2] = 2f * z / (size - 1) - 1f;
+				}
+			}
+		}
+		System.arraycopy(mPositions, 0, mPrevious, 0, mPositions.length);
+
+		// Count neighbours first, then fill compressed rows.
+		mOffsets = new int[mNodeCount + 1];
+		for (int i = 0; i < mNodeCount; ++i) {
+			mOffsets[i + 1] = mOffsets[i] + connect(i, null, 0);
+		}
+		mNeighbors = new int[mOffsets[mNodeCount]];
+		for (int i = 0; i < mNodeCount; ++i) {
+			connect(i, mNeighbors, mOffsets[i]);
+		}
+		mRestLengths = new float[mNeighbors.length];
+		for (int i = 0; i < mNodeCount; ++i) {
+			for (int k = mOffsets[i]; k < mOffsets[i + 1]; ++k) {
+				mRestLengths[k] = distance(mPositions, i, mNeighbors[k]);
+			}
+		}
+	}
+
+	/**
+	 * Writes neighbours of given node into array starting from offset, or
+	 * only counts them if array is null. Returns number of neighbours.
+	 */
+	private int connect(int node, int[] neighbors, int offset) {
+		final int size = mSize;
+		int x = node % size, y = node / size % size, z = node / size / size;
+		int count = 0;
+		for (int dz = -1; dz <= 1; ++dz) {
+			for (int dy = -1; dy <= 1; ++dy) {
+				for (int dx = -1; dx <= 1; ++dx) {
+					int nx = x + dx, ny = y + dy, nz = z + dz;
+					if ((dx | dy | dz) == 0 || nx < 0 || ny < 0 || nz < 0
+							|| nx >= size || ny >= size || nz >= size) {
+						continue;
+					}
+					if (neighbors != null) {
+						neighbors[offset + count] = getNode(nx, ny, nz);
+					}
+					++count;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns distance between two nodes in given position array.
+	 */
+	private static float distance(float[] positions, int a, int b) {
+		float dx = positions[b * 3] - positions[a * 3];
+		float dy = positions[b * 3 + 1] - positions[a * 3 + 1];
+		float dz = positions[b * 3 + 2] - positions[a * 3 + 2];
+		return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+
+	/**
+	 * Returns total energy of lattice, kinetic energy estimated from last
+	 * step of given length plus potential energy of springs and anchors.
+	 */
+	public double getEnergy(float dt) {
+		final float[] positions = mPositions;
+		final float[] previous = mPrevious;
+		double energy = 0;
+		for (int i = 0; i < mNodeCount; ++i) {
+			for (int j = i * 3; j < i * 3 + 3; ++j) {
+				double v = (positions[j] - previous[j]) / dt;
+				double a = mAnchors[j] - positions[j];
+				energy += 0.5 * v * v;
+				energy += 0.5 * mAnchorStiffness * mAnchorWeights[i] * a * a;
+			}
+			// Springs are stored twice, count each from lower node only.
+			for (int k = mOffsets[i]; k < mOffsets[i + 1]; ++k) {
+				if (mNeighbors[k] > i) {
+					double d = distance(positions, i, mNeighbors[k])
+							- mRestLengths[k];
+					energy += 0.5 * mStiffness * d * d;
+				}
+			}
+		}
+		return energy;
+	}
+
+	/**
+	 * Returns index of node at given lattice coordinates.
+	 */
+	public int getNode(int x, int y, int z) {
+		return (z * mSize + y) * mSize + x;
+	}
+
+	/**
+	 * Returns number of nodes.
+	 */
+	public int getNodeCount() {
+		return mNodeCount;
+	}
+
+	/**
+	 * Writes position of given node interpolated between previous and
+	 * current step into out.
+	 */
+	public void getPosition(int node, float alpha, float[] out, int offset) {
+		for (int j = 0; j < 3; ++j) {
+			float previous = mPrevious[node * 3 + j];
+			out[offset + j] = previous + (mPositions[node * 3 + j] - previous)
+					* alpha;
+		}
+	}
+
+	/**
+	 * Returns nodes per axis.
+	 */
+	public int getSize() {
+		return mSize;
+	}
+
+	/**
+	 * Returns number of springs between nodes.
+	 */
+	public int getSpringCount() {
+		return mNeighbors.length / 2;
+	}
+
+	/**
+	 * Returns size of state written by saveState() in bytes.
+	 */
+	public int getStateSize() {
+		return 4 * 3 * 2 * mNodeCount;
+	}
+
+	/**
+	 * Restores positions written by saveState().
+	 */
+	public void restoreState(ByteBuffer buffer) {
+		EffectsSnapshot.getFloats(buffer, mPositions, mPositions.length);
+		EffectsSnapshot.getFloats(buffer, mPrevious, mPrevious.length);
+	}
+
+	@Override
+	public void run(int start, int end) {
+		final float[] positions = mPositions;
+		final float[] previous = mPrevious;
+		final float[] next = mNext;
+		final float dt2 = mDt * mDt;
+		final float keep = 1f - mDamping;
+		for (int i = start; i < end; ++i) {
+			final int p = i * 3;
+			float px = positions[p], py = positions[p + 1];
+			float pz = positions[p + 2];
+
+			float anchor = mAnchorStiffness * mAnchorWeights[i];
+			float fx = (mAnchors[p] - px) * anchor;
+			float fy = (mAnchors[p + 1] - py) * anchor;
+			float fz = (mAnchors[p + 2] - pz) * anchor;
+			for (int k = mOffsets[i]; k < mOffsets[i + 1]; ++k) {
+				int n = mNeighbors[k] * 3;
+				float dx = positions[n] - px;
+				float dy = positions[n + 1] - py;
+				float dz = positions[n + 2] - pz;
+				float len = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+				if (len > 0f) {
+					float f = mStiffness * (len - mRestLengths[k]) / len;
+					fx += dx * f;
+					fy += dy * f;
+					fz += dz * f;
+				}
+			}
+
+			next[p] = px + (px - previous[p]) * keep + fx * dt2;
+			next[p + 1] = py + (py - previous[p + 1]) * keep + fy * dt2;
+			next[p + 2] = pz + (pz - previous[p + 2]) * keep + fz * dt2;
+		}
+	}
+
+	/**
+	 * Writes current and previous positions into buffer.
+	 */
+	public void saveState(ByteBuffer buffer) {
+		EffectsSnapshot.putFloats(buffer, mPositions, mPositions.length);
+		EffectsSnapshot.putFloats(buffer, mPrevious, mPrevious.length);
+	}
+
+	/**
+	 * Anchors given node to target position with given weight, zero weight
+	 * frees it.
+	 */
+	public void setAnchor(int node, float x, float y, float z, float weight) {
+		mAnchors[node * 3] = x;
+		mAnchors[node * 3 + 1] = y;
+		mAnchors[node * 3 + 2] = z;
+		mAnchorWeights[node] = weight;
+	}
+
+	/**
+	 * Sets stiffness of anchor springs, multiplied by weight of each anchor.
+	 */
+	public void setAnchorStiffness(float stiffness) {
+		mAnchorStiffness = stiffness;
+	}
+
+	/**
+	 * Moves node to given position at rest, i.e. with zero velocity.
+	 */
+	public void setPosition(int node, float x, float y, float z) {
+		mPositions[node * 3] = mPrevious[node * 3] = x;
+		mPositions[node * 3 + 1] = mPrevious[node * 3 + 1] = y;
+		mPositions[node * 3 + 2] = mPrevious[node * 3 + 2] = z;
+	}
+
+	/**
+	 * Advances lattice given amount of seconds. Blocks until all nodes have
+	 * been updated.
+	 */
+	public void step(float dt) {
+		mDt = dt;
+		mParallel.forRange(mNodeCount, this);
+
+		// Rotate buffers, current becomes previous.
+		float[] previous = mPrevious;
+		mPrevious = mPositions;
+		mPositions = mNext;
+		mNext = previous;
+	}
+
+}
@@ -0,0 +1,210 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Large set of cubic splines morphing between random control point targets.
+ * Every spline moves from source to target control points with smoothstep
+ * over PERIOD milliseconds, periods of splines are phase shifted so that
+ * targets are not all changed at once. Targets are hashed from seed, spline
+ * index and period count, which makes state at given time independent of
+ * update history and lets splines be updated in parallel chunks.
+ * 
+ * Splines are evaluated into vertices laid out like baked splines in
+ * spline_baked_vs.txt, curve point, tangent and (t, side) per vertex, and
+ * joined with degenerate triangles into a single strip.
+ */
+public final class SplineMorph implements EffectsParallel.Task {
+
+	private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+	private static final float HASH_UNIT = 1f / (1 << 21);
+	// Length of one morph in milliseconds.
+	public static final int PERIOD = 4000;
+	// Floats per vertex.
+	public static final int VERTEX_FLOATS = 8;
+
+	private final int mCount;
+	private final float[] mCurrent;
+	private final long[] mCycle;
+	private final EffectsParallel mParallel;
+	private final long mSeed;
+	private final float[] mSource;
+	private final int mSplits;
+	private final float[] mTarget;
+	private long mTime;
+	private final float[] mVertices;
+	// Bernstein weights of curve point and derivative per split.
+	private final float[] mWeights;
+	private final float[] mWeightsDt;
+
+	/**
+	 * Creates given count of splines evaluated at given number of points
+	 * each.
+	 */
+	public SplineMorph(int count, int splits, EffectsParallel parallel,
+			long seed) {
+		mCount = count;
+		mSplits = splits;
+		mParallel = parallel;
+		mSeed = seed;
+		mCurrent = new float[count * 12];
+		mCycle = new long[count];
+		mSource = new float[count * 12];
+		mTarget = new float[count * 12];
+		mVertices = new float[getVertexCount() * VERTEX_FLOATS];
+		Arrays.fill(mCycle, Long.MIN_VALUE);
+
+		mWeights = new float[splits * 4];
+		mWeightsDt = new float[splits * 4];
+		for (int j = 0; j < splits; ++j) {
+			float t = (float) j / (splits - 1), s = 1f - t;
+			mWeights[j * 4] = s * s * s;
+			mWeights[j * 4 + 1] = 3 * s * s * t;
+			mWeights[j * 4 + 2] = 3 * s * t * t;
+			mWeights[j * 4 + 3] = t * t * t;
+			mWeightsDt[j * 4] = -3 * s * s;
+			mWeightsDt[j * 4 + 1] = 3 * s * s - 6 * s * t;
+			mWeightsDt[j * 4 + 2] = 6 * s * t - 3 * t * t;
+			mWeightsDt[j * 4 + 3] = 3 * t * t;
+		}
+	}
+
+	/**
+	 * Returns number of splines.
+	 */
+	public int getCount() {
+		return mCount;
+	}
+
+	/**
+	 * Returns control points of all splines interpolated by last update(),
+	 * 12 floats per spline.
+	 */
+	public float[] getControlPoints() {
+		return mCurrent;
+	}
+
+	/**
+	 * Returns number of vertices in strip holding all splines.
+	 */
+	public int getVertexCount() {
+		return mCount * (2 * mSplits + 2) - 2;
+	}
+
+	/**
+	 * Returns vertices written by last update().
+	 */
+	public float[] getVertices() {
+		return mVertices;
+	}
+
+	/**
+	 * Writes hashed control points of given spline and period into array.
+	 */
+	private void hash(int i, long cycle, float[] ctrl) {
+		long base = EffectsRandom.mix(mSeed + cycle * GOLDEN + i);
+		for (int j = 0; j < 4; ++j) {
+			long hash = EffectsRandom.mix(base + j * GOLDEN);
+			int k = i * 12 + j * 3;
+			ctrl[k] = (hash & 0x1FFFFF) * HASH_UNIT * 2f - 1f;
+			ctrl[k + 1] = ((hash >>> 21) & 0x1FFFFF) * HASH_UNIT * 2f - 1f;
+			ctrl[k + 2] = (hash >>> 43) * HASH_UNIT * 2f - 1f;
+		}
+	}
+
+	@Override
+	public void run(int start, int end) {
+		final float[] source = mSource, target = mTarget;
+		final float[] ctrl = mCurrent, vertices = mVertices;
+		final float[] weights = mWeights, weightsDt = mWeightsDt;
+		final int splits = mSplits;
+		final int stride = VERTEX_FLOATS;
+		for (int i = start; i < end; ++i) {
+			// Phase shift spreads target changes evenly over the period.
+			long time = mTime
+					+ ((EffectsRandom.mix(mSeed ^ i) >>> 1) % PERIOD);
+			long cycle = time / PERIOD;
+			if (cycle != mCycle[i]) {
+				if (cycle == mCycle[i] + 1) {
+					System.arraycopy(target, i * 12, source, i * 12, 12);
+				} else {
+					hash(i, cycle - 1, source);
+				}
+				hash(i, cycle, target);
+				mCycle[i] = cycle;
+			}
+			float t = (float) (time - cycle * PERIOD) / PERIOD;
+			t = t * t * (3 - 2 * t);
+			final int c = i * 12;
+			for (int k = c; k < c + 12; ++k) {
+				ctrl[k] = source[k] + (target[k] - source[k]) * t;
+			}
+
+			// Spline i starts at vertex i * (2 * splits + 2), preceded and
+			// followed by a degenerate vertex unless first or last.
+			final int first = i * (2 * splits + 2) * stride;
+			for (int j = 0; j < splits; ++j) {
+				float w0 = weights[j * 4], w1 = weights[j * 4 + 1];
+				float w2 = weights[j * 4 + 2], w3 = weights[j * 4 + 3];
+				float d0 = weightsDt[j * 4], d1 = weightsDt[j * 4 + 1];
+				float d2 = weightsDt[j * 4 + 2], d3 = weightsDt[j * 4 + 3];
+				int v = first + 2 * j * stride;
+				for (int k = 0; k < 3; ++k) {
+					float p = w0 * ctrl[c + k] + w1 * ctrl[c + 3 + k] + w2
+							* ctrl[c + 6 + k] + w3 * ctrl[c + 9 + k];
+					float d = d0 * ctrl[c + k] + d1 * ctrl[c + 3 + k] + d2
+							* ctrl[c + 6 + k] + d3 * ctrl[c + 9 + k];
+					vertices[v + k] = vertices[v + stride + k] = p;
+					vertices[v + 3 + k] = vertices[v + stride + 3 + k] = d;
+				}
+				vertices[v + 6] = (float) j / (splits - 1);
+				vertices[v + stride + 6] = vertices[v + 6];
+				vertices[v + 7] = 1;
+				vertices[v + stride + 7] = -1;
+			}
+			if (i > 0) {
+				System.arraycopy(vertices, first, vertices, first - stride,
+						stride);
+			}
+			if (i < mCount - 1) {
+				int last = first + (2 * splits - 1) * stride;
+				System.arraycopy(vertices, last, vertices, last + stride,
+						stride);
+			}
+		}
+	}
+
+	/**
+	 * Updates all splines to given time in milliseconds and evaluates them
+	 * into vertices.
+	 */
+	public void update(long timeMillis) {
+		mTime = timeMillis;
+		mParallel.forRange(mCount, this);
+	}
+
+	/**
+	 * Writes vertices into buffer starting from its position.
+	 */
+	public void write(FloatBuffer buffer) {
+		buffer.put(mVertices);
+	}
+
+}
@@ -0,0 +1,161 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Per spline tessellation planner for cubic Bezier ribbons. Strips of a few
+ * fixed split counts are stored one after another in a single buffer, and
+ * for every spline the coarsest strip keeping the screen space error within
+ * tolerance is chosen. Piecewise linear approximation of a curve with n
+ * uniform segments is off by at most max|B''| / (8 * n^2), and for a cubic
+ * max|B''| is bounded by six times the larger second difference of its
+ * control points, giving error <= 3 * d / (4 * n^2). This bound holds for
+ * affine projection only. Under perspective the difference is scaled by
+ * ratio of largest and smallest control point depth, which is an estimate
+ * rather than a guarantee; it has been checked against exactly projected
+ * curves for views like the one in ViewSplines. Splines which spline_vs.txt
+ * would discard entirely are culled.
+ */
+public final class SplineTessellator {
+
+	// Split counts, i.e. points along the spline, of available strips.
+	public static final int[] LEVELS = { 5, 10, 20, 40 };
+
+	// Vertices with NDC z below this are discarded in spline_vs.txt.
+	private static final float NEAR_Z = 0.1f;
+
+	private final float[] mClip = new float[16];
+	private float mScaleX, mScaleY;
+	private final float mTolerance;
+
+	/**
+	 * Creates new planner with given maximum screen space error in pixels.
+	 */
+	public SplineTessellator(float tolerancePixels) {
+		mTolerance = tolerancePixels;
+	}
+
+	/**
+	 * Returns first vertex of strip for given level within strip buffer.
+	 */
+	public static int getFirst(int level) {
+		int first = 0;
+		for (int i = 0; i < level; ++i) {
+			first += 2 * LEVELS[i];
+		}
+		return first;
+	}
+
+	/**
+	 * Returns number of vertices in strip for given level.
+	 */
+	public static int getVertexCount(int level) {
+		return 2 * LEVELS[level];
+	}
+
+	/**
+	 * Returns number of vertices in strip buffer.
+	 */
+	public static int getTotalVertexCount() {
+		return getFirst(LEVELS.length);
+	}
+
+	/**
+	 * Writes strips of all levels into given buffer as (t, side) pairs.
+	 */
+	public static void writeStrips(FloatBuffer buffer) {
+		for (int level = 0; level < LEVELS.length; ++level) {
+			int splits = LEVELS[level];
+			for (int i = 0; i < splits; ++i) {
+				float x = (float) i / (splits - 1);
+				buffer.put(x).put(1).put(x).put(-1);
+			}
+		}
+	}
+
+	/**
+	 * Returns strip level for spline with given 4 control points, or -1 if
+	 * spline is not visible. Matrix is the model view projection matrix
+	 * used for rendering.
+	 */
+	public int plan(float[] mvp, float[] ctrl) {
+		final float[] clip = mClip;
+		int behind = 0, near = 0;
+		for (int i = 0; i < 4; ++i) {
+			float x = ctrl[i * 3];
+			float y = ctrl[i * 3 + 1];
+			float z = ctrl[i * 3 + 2];
+			for (int j = 0; j < 4; ++j) {
+				clip[i * 4 + j] = mvp[j] * x + mvp[4 + j] * y + mvp[8 + j] * z
+						+ mvp[12 + j];
+			}
+			float w = clip[i * 4 + 3];
+			if (w <= 0f) {
+				++behind;
+			} else if (clip[i * 4 + 2] < NEAR_Z * w) {
+				++near;
+			}
+		}
+
+		// Curve stays within its control hull, if every control point is
+		// behind camera or too close to it, so is the whole curve.
+		if (behind == 4 || near == 4) {
+			return -1;
+		}
+		// Projection of a hull crossing camera plane is unbounded.
+		if (behind > 0) {
+			return LEVELS.length - 1;
+		}
+
+		float minW = Float.MAX_VALUE, maxW = 0f;
+		for (int i = 0; i < 4; ++i) {
+			float w = clip[i * 4 + 3];
+			minW = Math.min(minW, w);
+			maxW = Math.max(maxW, w);
+			clip[i * 4] = clip[i * 4] / w * mScaleX;
+			clip[i * 4 + 1] = clip[i * 4 + 1] / w * mScaleY;
+		}
+		float ax = clip[0] - 2 * clip[4] + clip[8];
+		float ay = clip[1] - 2 * clip[5] + clip[9];
+		float bx = clip[4] - 2 * clip[8] + clip[12];
+		float by = clip[5] - 2 * clip[9] + clip[13];
+		float d = (float) Math.sqrt(Math.max(ax * ax + ay * ay, bx * bx + by
+				* by));
+		// Perspective bends projected curve more the more its depth varies,
+		// estimate, not a bound.
+		d *= maxW / minW;
+
+		for (int level = 0; level < LEVELS.length - 1; ++level) {
+			int n = LEVELS[level] - 1;
+			if (3 * d <= 4 * n * n * mTolerance) {
+				return level;
+			}
+		}
+		return LEVELS.length - 1;
+	}
+
+	/**
+	 * Sets viewport size in pixels.
+	 */
+	public void setViewport(int width, int height) {
+		mScaleX = width * 0.5f;
+		mScaleY = height * 0.5f;
+	}
+
+}
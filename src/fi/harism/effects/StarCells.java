@@ -0,0 +1,246 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+/**
+ * Infinite star field streamed in cubic cells around the camera. Cells within
+ * given radius of camera cell are resident, each holding a fixed number of
+ * stars generated from a hash of cell coordinates, so a cell looks the same
+ * every time it is generated. Cells leaving the range give their slot to
+ * cells entering it; slot count is fixed and nothing is allocated after
+ * construction. Star positions are given relative to camera which keeps
+ * them precise however far camera travels.
+ */
+public final class StarCells {
+
+	private static final long CELL_MASK = (1L << 21) - 1;
+	private static final float HASH_UNIT = 1f / (1 << 21);
+
+	// Star positions relative to camera.
+	public final float[] mPosX;
+	public final float[] mPosY;
+	public final float[] mPosZ;
+
+	private long mCameraCell = Long.MIN_VALUE;
+	private int mCameraCellX, mCameraCellY, mCameraCellZ;
+	private final int[] mCellX, mCellY, mCellZ;
+	private final float mCellSize;
+	private final int[] mFreeSlots;
+	private long mGeneratedCount;
+	private final float[] mLocalX, mLocalY, mLocalZ;
+	private final long[] mMapKeys;
+	private final int[] mMapSlots;
+	private final int mRadius;
+	private final long mSeed;
+	private final long[] mSlotKeys;
+	private final int mStarsPerCell;
+
+	/**
+	 * Creates new star field with cells of given size and given number of
+	 * stars per cell. Cells at most radius cells away from camera cell on
+	 * every axis are resident.
+	 */
+	public StarCells(int radius, float cellSize, int starsPerCell, long seed) {
+		int side = 2 * radius + 1;
+		int slots = side * side * side;
+		mRadius = radius;
+		mCellSize = cellSize;
+		mStarsPerCell = starsPerCell;
+		mSeed = seed;
+
+		mCellX = new int[slots];
+		mCellY = new int[slots];
+		mCellZ = new int[slots];
+		mFreeSlots = new int[slots];
+		mSlotKeys = new long[slots];
+
+		int mapSize = Integer.highestOneBit(slots * 2 - 1) << 1;
+		mMapKeys = new long[mapSize];
+		mMapSlots = new int[mapSize];
+
+		mLocalX = new float[slots * starsPerCell];
+		mLocalY = new float[slots * starsPerCell];
+		mLocalZ = new float[slots * starsPerCell];
+		mPosX = new float[slots * starsPerCell];
+		mPosY = new float[slots * starsPerCell];
+		mPosZ = new float[slots * starsPerCell];
+	}
+
+	/**
+	 * Packs cell coordinates into a map key.
+	 */
+	private static long key(int cx, int cy, int cz) {
+		return ((cx & CELL_MASK) << 42) | ((cy & CELL_MASK) << 21)
+				| (cz & CELL_MASK);
+	}
+
+	/**
+	 * Fills given slot with stars of given cell.
+	 */
+	private void generate(int slot, int cx, int cy, int cz) {
+		long key = key(cx, cy, cz);
+		long base = EffectsRandom.mix(mSeed ^ key);
+		mCellX[slot] = cx;
+		mCellY[slot] = cy;
+		mCellZ[slot] = cz;
+		mSlotKeys[slot] = key;
+		for (int i = 0, k = slot * mStarsPerCell; i < mStarsPerCell; ++i, ++k) {
+			long hash = EffectsRandom.mix(base + i * 0x9E3779B97F4A7C15L);
+			mLocalX[k] = (hash & 0x1FFFFF) * HASH_UNIT * mCellSize;
+			mLocalY[k] = ((hash >>> 21) & 0x1FFFFF) * HASH_UNIT * mCellSize;
+			mLocalZ[k] = (hash >>> 43) * HASH_UNIT * mCellSize;
+		}
+		++mGeneratedCount;
+	}
+
+	/**
+	 * Returns number of stars, all of which are resident after first
+	 * update.
+	 */
+	public int getCapacity() {
+		return mPosX.length;
+	}
+
+	/**
+	 * Returns number of cells generated so far.
+	 */
+	public long getGeneratedCount() {
+		return mGeneratedCount;
+	}
+
+	/**
+	 * Returns distance from camera within which all stars are resident.
+	 */
+	public float getRange() {
+		return mRadius * mCellSize;
+	}
+
+	/**
+	 * Returns number of resident cell slots.
+	 */
+	public int getSlotCount() {
+		return mSlotKeys.length;
+	}
+
+	/**
+	 * Returns slot holding cell with given key, or -1 if cell is not
+	 * resident.
+	 */
+	private int lookup(long key) {
+		int mask = mMapKeys.length - 1;
+		for (int i = (int) EffectsRandom.mix(key) & mask;; i = (i + 1) & mask) {
+			if (mMapSlots[i] == -1) {
+				return -1;
+			}
+			if (mMapKeys[i] == key) {
+				return mMapSlots[i];
+			}
+		}
+	}
+
+	/**
+	 * Adds slot with given key into map.
+	 */
+	private void put(long key, int slot) {
+		int mask = mMapKeys.length - 1;
+		int i = (int) EffectsRandom.mix(key) & mask;
+		while (mMapSlots[i] != -1) {
+			i = (i + 1) & mask;
+		}
+		mMapKeys[i] = key;
+		mMapSlots[i] = slot;
+	}
+
+	/**
+	 * Moves camera to given world position. Once camera enters a new cell,
+	 * cells out of range are recycled for the ones coming into range.
+	 * Relative star positions are updated on every call.
+	 */
+	public void update(double x, double y, double z) {
+		int cx = (int) Math.floor(x / mCellSize);
+		int cy = (int) Math.floor(y / mCellSize);
+		int cz = (int) Math.floor(z / mCellSize);
+		long cameraCell = key(cx, cy, cz);
+		if (cameraCell != mCameraCell) {
+			boolean first = mCameraCell == Long.MIN_VALUE;
+			mCameraCell = cameraCell;
+			mCameraCellX = cx;
+			mCameraCellY = cy;
+			mCameraCellZ = cz;
+			updateCells(first);
+		}
+
+		// Camera position within its cell.
+		float fx = (float) (x - (double) cx * mCellSize);
+		float fy = (float) (y - (double) cy * mCellSize);
+		float fz = (float) (z - (double) cz * mCellSize);
+		for (int slot = 0; slot < mSlotKeys.length; ++slot) {
+			float ox = (mCellX[slot] - cx) * mCellSize - fx;
+			float oy = (mCellY[slot] - cy) * mCellSize - fy;
+			float oz = (mCellZ[slot] - cz) * mCellSize - fz;
+			int k = slot * mStarsPerCell;
+			for (int end = k + mStarsPerCell; k < end; ++k) {
+				mPosX[k] = ox + mLocalX[k];
+				mPosY[k] = oy + mLocalY[k];
+				mPosZ[k] = oz + mLocalZ[k];
+			}
+		}
+	}
+
+	/**
+	 * Recycles slots of cells out of range and generates cells coming into
+	 * range around current camera cell.
+	 */
+	private void updateCells(boolean first) {
+		final int radius = mRadius;
+		final int slots = mSlotKeys.length;
+
+		// Slots outside range are freed and the rest are put back into an
+		// emptied map. Range always has as many cells as there are slots.
+		int free = 0;
+		final int[] freeSlots = mFreeSlots;
+		for (int i = 0; i < mMapSlots.length; ++i) {
+			mMapSlots[i] = -1;
+		}
+		for (int slot = 0; slot < slots; ++slot) {
+			if (first || Math.abs(mCellX[slot] - mCameraCellX) > radius
+					|| Math.abs(mCellY[slot] - mCameraCellY) > radius
+					|| Math.abs(mCellZ[slot] - mCameraCellZ) > radius) {
+				freeSlots[free++] = slot;
+			} else {
+				put(mSlotKeys[slot], slot);
+			}
+		}
+
+		for (int z = -radius; z <= radius; ++z) {
+			for (int y = -radius; y <= radius; ++y) {
+				for (int x = -radius; x <= radius; ++x) {
+					int cx = mCameraCellX + x;
+					int cy = mCameraCellY + y;
+					int cz = mCameraCellZ + z;
+					long key = key(cx, cy, cz);
+					if (lookup(key) == -1) {
+						int slot = freeSlots[--free];
+						generate(slot, cx, cy, cz);
+						put(key, slot);
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,174 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Star field stored as parallel primitive arrays. Stars fly from FAR towards
+ * the viewer and are respawned at FAR once past NEAR. Update runs in
+ * parallel chunks and processes stars in small blocks; a block is checked
+ * for respawns only if its largest depth went past NEAR, so the common case
+ * has no per star branches. Respawn positions are hashed from seed, star
+ * index and update count, which keeps the field deterministic regardless of
+ * thread count.
+ */
+public final class StarField implements EffectsParallel.Task,
+		EffectsSnapshot.Snapshot {
+
+	public static final float FAR = -2f;
+	public static final float NEAR = 2f;
+
+	private static final int BLOCK_SIZE = 256;
+	private static final float HASH_UNIT = 1f / (1 << 21);
+
+	public final float[] mPosX;
+	public final float[] mPosY;
+	public final float[] mPosZ;
+	public final float[] mSpeed;
+
+	private long mGeneration;
+	private final EffectsParallel mParallel;
+	private final int[] mRespawned;
+	private final AtomicInteger mRespawnedCount = new AtomicInteger();
+	private final long mSeed;
+	private float mTime;
+
+	/**
+	 * Creates new star field with given number of stars. Stars are not
+	 * initialized until randomize() is called.
+	 */
+	public StarField(int count, EffectsParallel parallel, long seed) {
+		mPosX = new float[count];
+		mPosY = new float[count];
+		mPosZ = new float[count];
+		mSpeed = new float[count];
+		mParallel = parallel;
+		mRespawned = new int[count];
+		mSeed = seed;
+	}
+
+	/**
+	 * Returns number of stars.
+	 */
+	public int getCount() {
+		return mPosZ.length;
+	}
+
+	/**
+	 * Returns array holding indices of stars respawned during last update in
+	 * ascending order, see getRespawnedCount().
+	 */
+	public int[] getRespawned() {
+		return mRespawned;
+	}
+
+	/**
+	 * Returns number of stars respawned during last update.
+	 */
+	public int getRespawnedCount() {
+		return mRespawnedCount.get();
+	}
+
+	@Override
+	public int getStateSize() {
+		return 8 + 4 * 4 * mPosZ.length;
+	}
+
+	/**
+	 * Spawns all stars with random depth between FAR and NEAR.
+	 */
+	public void randomize() {
+		for (int i = 0; i < mPosZ.length; ++i) {
+			spawn(i);
+			long hash = EffectsRandom.mix(~(mSeed + i));
+			mPosZ[i] = FAR + (NEAR - FAR) * (hash >>> 43) * HASH_UNIT;
+		}
+		mRespawnedCount.set(0);
+	}
+
+	@Override
+	public void restoreState(ByteBuffer buffer) {
+		mGeneration = buffer.getLong();
+		EffectsSnapshot.getFloats(buffer, mPosX, mPosX.length);
+		EffectsSnapshot.getFloats(buffer, mPosY, mPosY.length);
+		EffectsSnapshot.getFloats(buffer, mPosZ, mPosZ.length);
+		EffectsSnapshot.getFloats(buffer, mSpeed, mSpeed.length);
+		mRespawnedCount.set(0);
+	}
+
+	@Override
+	public void run(int start, int end) {
+		final float[] posZ = mPosZ;
+		final float[] speed = mSpeed;
+		final float t = mTime;
+		for (int block = start; block < end; block += BLOCK_SIZE) {
+			int blockEnd = Math.min(block + BLOCK_SIZE, end);
+			float maxZ = FAR;
+			for (int i = block; i < blockEnd; ++i) {
+				float z = posZ[i] + speed[i] * t;
+				posZ[i] = z;
+				maxZ = z > maxZ ? z : maxZ;
+			}
+			if (maxZ > NEAR) {
+				for (int i = block; i < blockEnd; ++i) {
+					if (posZ[i] > NEAR) {
+						spawn(i);
+						mRespawned[mRespawnedCount.getAndIncrement()] = i;
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.putLong(mGeneration);
+		EffectsSnapshot.putFloats(buffer, mPosX, mPosX.length);
+		EffectsSnapshot.putFloats(buffer, mPosY, mPosY.length);
+		EffectsSnapshot.putFloats(buffer, mPosZ, mPosZ.length);
+		EffectsSnapshot.putFloats(buffer, mSpeed, mSpeed.length);
+	}
+
+	/**
+	 * Places star with given index at FAR with hashed position and speed.
+	 */
+	private void spawn(int i) {
+		long hash = EffectsRandom.mix(mSeed + mGeneration
+				* 0x9E3779B97F4A7C15L + i);
+		mPosX[i] = (hash & 0x1FFFFF) * HASH_UNIT * 2f - 1f;
+		mPosY[i] = ((hash >>> 21) & 0x1FFFFF) * HASH_UNIT * 2f - 1f;
+		mPosZ[i] = FAR;
+		mSpeed[i] = 0.2f + 0.2f * (hash >>> 43) * HASH_UNIT;
+	}
+
+	/**
+	 * Moves stars forward by given time in seconds and respawns the ones
+	 * which went past NEAR.
+	 */
+	public void update(float t) {
+		mTime = t;
+		++mGeneration;
+		mRespawnedCount.set(0);
+		mParallel.forRange(mPosZ.length, this);
+		// Chunks append in thread order, sort for a deterministic order.
+		Arrays.sort(mRespawned, 0, mRespawnedCount.get());
+	}
+
+}
@@ -17,18 +17,45 @@
 package fi.harism.effects;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
 
 import android.content.Context;
 import android.opengl.GLSurfaceView;
+import android.util.Log;
 import android.widget.Toast;
 
-abstract class ViewBase extends GLSurfaceView implements GLSurfaceView.Renderer {
+abstract class ViewBase extends GLSurfaceView implements
+		GLSurfaceView.Renderer, EffectsSnapshot.Snapshot {
+
+	// Snapshot files saved by this process. Files left over from earlier
+	// processes are stale and never restored. Accessed on UI thread only.
+	private static final HashSet<String> sSnapshots = new HashSet<String>();
 
 	public ViewBase(Context context) {
 		super(context);
 	}
 
+	/**
+	 * Returns file used for storing simulation state snapshot.
+	 */
+	private File getSnapshotFile() {
+		return new File(getContext().getCacheDir(), getClass().getSimpleName()
+				+ ".snapshot");
+	}
+
+	/**
+	 * Returns size of simulation state in bytes. Views without simulation
+	 * state return zero and are never snapshotted.
+	 */
+	@Override
+	public int getStateSize() {
+		return 0;
+	}
+
 	/**
 	 * Loads String from raw resources with given id.
 	 */
@@ -43,6 +70,54 @@ abstract class ViewBase extends GLSurfaceView implements GLSurfaceView.Renderer
 		return baos.toString();
 	}
 
+	/**
+	 * Pauses rendering and stores simulation state snapshot. Renderer thread
+	 * is paused once super.onPause() returns so state can be read safely.
+	 */
+	@Override
+	public void onPause() {
+		super.onPause();
+		if (getStateSize() > 0) {
+			try {
+				File file = getSnapshotFile();
+				EffectsSnapshot.save(file, this);
+				sSnapshots.add(file.getPath());
+			} catch (IOException ex) {
+				Log.w("ViewBase", "Snapshot save failed: " + ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Restores simulation state snapshot saved by the latest onPause() of
+	 * this process, if there is one, and resumes rendering. Snapshot file is
+	 * deleted afterwards so it is never restored twice.
+	 */
+	@Override
+	public void onResume() {
+		if (getStateSize() > 0) {
+			File file = getSnapshotFile();
+			try {
+				if (sSnapshots.remove(file.getPath())) {
+					EffectsSnapshot.restore(file, this);
+				}
+			} catch (IOException ex) {
+				Log.w("ViewBase", "Snapshot restore failed: "
+						+ ex.getMessage());
+			}
+			file.delete();
+		}
+		super.onResume();
+	}
+
+	@Override
+	public void restoreState(ByteBuffer buffer) {
+	}
+
+	@Override
+	public void saveState(ByteBuffer buffer) {
+	}
+
 	/**
 	 * Shows Toast on screen with given message.
 	 */
@@ -33,11 +33,12 @@ public class ViewBlob extends ViewBase {
 
 	private static final int CURVE_COUNT = 20;
 
-	private FloatBuffer mBufferCurves;
-	private FloatBuffer mBufferPoints;
+	private EffectsBuffer mBufferCurves;
+	private EffectsBuffer mBufferPoints;
 	private PointF mPoint0 = new PointF();
 	private PointF mPoint1 = new PointF();
 	private PointF mPoint2 = new PointF();
+	private FloatBuffer mPoints;
 	private boolean[] mShaderCompilerSupport = new boolean[1];
 	private EffectsShader mShaderCurve = new EffectsShader();
 	private EffectsShader mShaderFill = new EffectsShader();
@@ -48,16 +49,21 @@ public class ViewBlob extends ViewBase {
 		super(context);
 
 		ByteBuffer buffer = ByteBuffer.allocateDirect(4 * 2 * 3);
-		mBufferPoints = buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		mPoints = buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		mBufferPoints = new EffectsBuffer(GLES20.GL_ARRAY_BUFFER, mPoints,
+				GLES20.GL_DYNAMIC_DRAW);
 
 		buffer = ByteBuffer.allocateDirect(4 * 4 * CURVE_COUNT);
-		mBufferCurves = buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		FloatBuffer curves = buffer.order(ByteOrder.nativeOrder())
+				.asFloatBuffer();
 		for (int i = 0; i < CURVE_COUNT; ++i) {
 			float t = (float) i / (CURVE_COUNT - 1);
-			mBufferCurves.put(t).put(0);
-			mBufferCurves.put(t).put(FloatMath.sin((float) Math.PI * t));
+			curves.put(t).put(0);
+			curves.put(t).put(FloatMath.sin((float) Math.PI * t));
 		}
-		mBufferCurves.position(0);
+		curves.position(0);
+		mBufferCurves = new EffectsBuffer(GLES20.GL_ARRAY_BUFFER, curves,
+				GLES20.GL_STATIC_DRAW);
 
 		setEGLContextClientVersion(2);
 		setRenderer(this);
@@ -65,6 +71,11 @@ public class ViewBlob extends ViewBase {
 		queueEvent(mWorker);
 	}
 
+	@Override
+	public int getStateSize() {
+		return 16 + 4 * 2 * 12;
+	}
+
 	@Override
 	public void onDrawFrame(GL10 unused) {
 		GLES20.glClearColor(0, 0, 0, 1);
@@ -81,8 +92,9 @@ public class ViewBlob extends ViewBase {
 		// Render curved areas.
 		//
 		mShaderCurve.useProgram();
-		GLES20.glVertexAttribPointer(mShaderCurve.getHandle("aPosition"), 2,
-				GLES20.GL_FLOAT, false, 0, mBufferCurves);
+		mBufferCurves.bind();
+		mBufferCurves.vertexAttribPointer(mShaderCurve.getHandle("aPosition"),
+				2, GLES20.GL_FLOAT, false, 0, 0);
 		GLES20.glEnableVertexAttribArray(mShaderCurve.getHandle("aPosition"));
 
 		renderCurve(mShaderCurve, mPoint0, mPoint1, mPoint2);
@@ -93,8 +105,10 @@ public class ViewBlob extends ViewBase {
 		// Fill blob inner area.
 		//
 		mShaderFill.useProgram();
-		GLES20.glVertexAttribPointer(mShaderFill.getHandle("aPosition"), 2,
-				GLES20.GL_FLOAT, false, 0, mBufferPoints);
+		mBufferPoints.upload();
+		mBufferPoints.bind();
+		mBufferPoints.vertexAttribPointer(mShaderFill.getHandle("aPosition"),
+				2, GLES20.GL_FLOAT, false, 0, 0);
 		GLES20.glEnableVertexAttribArray(mShaderFill.getHandle("aPosition"));
 		GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 3);
 
@@ -102,8 +116,8 @@ public class ViewBlob extends ViewBase {
 		// Render blob control point lines.
 		//
 		mShaderLine.useProgram();
-		GLES20.glVertexAttribPointer(mShaderLine.getHandle("aPosition"), 2,
-				GLES20.GL_FLOAT, false, 0, mBufferPoints);
+		mBufferPoints.vertexAttribPointer(mShaderLine.getHandle("aPosition"),
+				2, GLES20.GL_FLOAT, false, 0, 0);
 		GLES20.glEnableVertexAttribArray(mShaderLine.getHandle("aPosition"));
 		GLES20.glLineWidth(5);
 		GLES20.glDrawArrays(GLES20.GL_LINE_LOOP, 0, 3);
@@ -128,6 +142,9 @@ public class ViewBlob extends ViewBase {
 			return;
 		}
 
+		mBufferCurves.create();
+		mBufferPoints.create();
+
 		try {
 			String vertexSource, fragmentSource;
 			vertexSource = loadRawString(R.raw.blob_line_vs);
@@ -144,6 +161,21 @@ public class ViewBlob extends ViewBase {
 		}
 	}
 
+	/**
+	 * Reads point from buffer.
+	 */
+	private void getPoint(ByteBuffer buffer, PointF point) {
+		point.x = buffer.getFloat();
+		point.y = buffer.getFloat();
+	}
+
+	/**
+	 * Writes point into buffer.
+	 */
+	private void putPoint(ByteBuffer buffer, PointF point) {
+		buffer.putFloat(point.x).putFloat(point.y);
+	}
+
 	/**
 	 * Renders a curve segment.
 	 */
@@ -165,59 +197,124 @@ public class ViewBlob extends ViewBase {
 		GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, CURVE_COUNT * 2);
 	}
 
+	@Override
+	public void restoreState(ByteBuffer buffer) {
+		mWorker.mStepper.setStepCount(buffer.getLong());
+		mWorker.mRenderTime = buffer.getLong();
+		getPoint(buffer, mWorker.mPoint0Curr);
+		getPoint(buffer, mWorker.mPoint0Prev);
+		getPoint(buffer, mWorker.mPoint0Source);
+		getPoint(buffer, mWorker.mPoint0Target);
+		getPoint(buffer, mWorker.mPoint1Curr);
+		getPoint(buffer, mWorker.mPoint1Prev);
+		getPoint(buffer, mWorker.mPoint1Source);
+		getPoint(buffer, mWorker.mPoint1Target);
+		getPoint(buffer, mWorker.mPoint2Curr);
+		getPoint(buffer, mWorker.mPoint2Prev);
+		getPoint(buffer, mWorker.mPoint2Source);
+		getPoint(buffer, mWorker.mPoint2Target);
+	}
+
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.putLong(mWorker.mStepper.getStepCount());
+		buffer.putLong(mWorker.mRenderTime);
+		putPoint(buffer, mWorker.mPoint0Curr);
+		putPoint(buffer, mWorker.mPoint0Prev);
+		putPoint(buffer, mWorker.mPoint0Source);
+		putPoint(buffer, mWorker.mPoint0Target);
+		putPoint(buffer, mWorker.mPoint1Curr);
+		putPoint(buffer, mWorker.mPoint1Prev);
+		putPoint(buffer, mWorker.mPoint1Source);
+		putPoint(buffer, mWorker.mPoint1Target);
+		putPoint(buffer, mWorker.mPoint2Curr);
+		putPoint(buffer, mWorker.mPoint2Prev);
+		putPoint(buffer, mWorker.mPoint2Source);
+		putPoint(buffer, mWorker.mPoint2Target);
+	}
+
 	/**
-	 * Worker runnable.
+	 * Worker runnable. Animation is run in fixed size steps and rendered
+	 * points are interpolated between the two latest steps.
 	 */
 	private class Worker implements Runnable {
 
+		private PointF mPoint0Curr = new PointF();
+		private PointF mPoint0Prev = new PointF();
 		private PointF mPoint0Source = new PointF();
 		private PointF mPoint0Target = new PointF();
+		private PointF mPoint1Curr = new PointF();
+		private PointF mPoint1Prev = new PointF();
 		private PointF mPoint1Source = new PointF();
 		private PointF mPoint1Target = new PointF();
+		private PointF mPoint2Curr = new PointF();
+		private PointF mPoint2Prev = new PointF();
 		private PointF mPoint2Source = new PointF();
 		private PointF mPoint2Target = new PointF();
-		private long mRenderTime;
+		private long mRenderTime = -4000;
+		private EffectsStepper mStepper = new EffectsStepper(60, 5);
 
 		@Override
 		public void run() {
 
 			long time = SystemClock.uptimeMillis();
+			for (int steps = mStepper.advance(time); steps > 0; --steps) {
+				mPoint0Prev.set(mPoint0Curr);
+				mPoint1Prev.set(mPoint1Curr);
+				mPoint2Prev.set(mPoint2Curr);
+				step(mStepper.nextStep());
+			}
+
+			float t = mStepper.getAlpha();
+			mPoint0.x = mPoint0Prev.x + (mPoint0Curr.x - mPoint0Prev.x) * t;
+			mPoint0.y = mPoint0Prev.y + (mPoint0Curr.y - mPoint0Prev.y) * t;
+			mPoint1.x = mPoint1Prev.x + (mPoint1Curr.x - mPoint1Prev.x) * t;
+			mPoint1.y = mPoint1Prev.y + (mPoint1Curr.y - mPoint1Prev.y) * t;
+			mPoint2.x = mPoint2Prev.x + (mPoint2Curr.x - mPoint2Prev.x) * t;
+			mPoint2.y = mPoint2Prev.y + (mPoint2Curr.y - mPoint2Prev.y) * t;
+
+			mPoints.position(0);
+			mPoints.put(mPoint0.x).put(mPoint0.y);
+			mPoints.put(mPoint1.x).put(mPoint1.y);
+			mPoints.put(mPoint2.x).put(mPoint2.y);
+			mPoints.position(0);
+
+			requestRender();
+		}
+
+		/**
+		 * Runs one animation step, time is simulation time in milliseconds.
+		 */
+		private void step(long time) {
 			if (time - mRenderTime > 4000) {
+				final EffectsRandom random = EffectsRandom.get();
 				mPoint0Source.set(mPoint0Target);
-				mPoint0Target.x = (float) (Math.random() * 2 - 1);
-				mPoint0Target.y = (float) (Math.random() * 2 - 1);
+				mPoint0Target.x = random.nextFloat(-1f, 1f);
+				mPoint0Target.y = random.nextFloat(-1f, 1f);
 				mPoint1Source.set(mPoint1Target);
-				mPoint1Target.x = (float) (Math.random() * 2 - 1);
-				mPoint1Target.y = (float) (Math.random() * 2 - 1);
+				mPoint1Target.x = random.nextFloat(-1f, 1f);
+				mPoint1Target.y = random.nextFloat(-1f, 1f);
 				mPoint2Source.set(mPoint2Target);
-				mPoint2Target.x = (float) (Math.random() * 2 - 1);
-				mPoint2Target.y = (float) (Math.random() * 2 - 1);
+				mPoint2Target.x = random.nextFloat(-1f, 1f);
+				mPoint2Target.y = random.nextFloat(-1f, 1f);
 				mRenderTime = time;
 			}
 
 			float t = (time - mRenderTime) / 4000f;
 			t = t * t * (3 - 2 * t);
 
-			mPoint0.x = mPoint0Source.x + (mPoint0Target.x - mPoint0Source.x)
-					* t;
-			mPoint0.y = mPoint0Source.y + (mPoint0Target.y - mPoint0Source.y)
-					* t;
-			mPoint1.x = mPoint1Source.x + (mPoint1Target.x - mPoint1Source.x)
-					* t;
-			mPoint1.y = mPoint1Source.y + (mPoint1Target.y - mPoint1Source.y)
-					* t;
-			mPoint2.x = mPoint2Source.x + (mPoint2Target.x - mPoint2Source.x)
-					* t;
-			mPoint2.y = mPoint2Source.y + (mPoint2Target.y - mPoint2Source.y)
-					* t;
-
-			mBufferPoints.position(0);
-			mBufferPoints.put(mPoint0.x).put(mPoint0.y);
-			mBufferPoints.put(mPoint1.x).put(mPoint1.y);
-			mBufferPoints.put(mPoint2.x).put(mPoint2.y);
-			mBufferPoints.position(0);
-
-			requestRender();
+			mPoint0Curr.x = mPoint0Source.x
+					+ (mPoint0Target.x - mPoint0Source.x) * t;
+			mPoint0Curr.y = mPoint0Source.y
+					+ (mPoint0Target.y - mPoint0Source.y) * t;
+			mPoint1Curr.x = mPoint1Source.x
+					+ (mPoint1Target.x - mPoint1Source.x) * t;
+			mPoint1Curr.y = mPoint1Source.y
+					+ (mPoint1Target.y - mPoint1Source.y) * t;
+			mPoint2Curr.x = mPoint2Source.x
+					+ (mPoint2Target.x - mPoint2Source.x) * t;
+			mPoint2Curr.y = mPoint2Source.y
+					+ (mPoint2Target.y - mPoint2Source.y) * t;
 		}
 	}
 }
@@ -31,7 +31,7 @@ import android.view.MotionEvent;
 
 public class ViewFractal extends ViewBase {
 
-	private ByteBuffer mBufferQuad;
+	private EffectsBuffer mBufferQuad;
 	private Matrix mMatrixMove = new Matrix();
 	private Matrix mMatrixView = new Matrix();
 	private SparseArray<StructPointer> mPointers = new SparseArray<StructPointer>();
@@ -44,8 +44,10 @@ public class ViewFractal extends ViewBase {
 
 		// Full view quad buffer.
 		final byte[] QUAD = { -1, 1, -1, -1, 1, 1, 1, -1 };
-		mBufferQuad = ByteBuffer.allocateDirect(8);
-		mBufferQuad.put(QUAD).position(0);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(8);
+		buffer.put(QUAD).position(0);
+		mBufferQuad = new EffectsBuffer(GLES20.GL_ARRAY_BUFFER, buffer,
+				GLES20.GL_STATIC_DRAW);
 
 		setEGLContextClientVersion(2);
 		setRenderer(this);
@@ -73,8 +75,9 @@ public class ViewFractal extends ViewBase {
 		GLES20.glUniformMatrix3fv(mShaderFractal.getHandle("uMoveMatrix"), 1,
 				false, matrix, 0);
 
-		GLES20.glVertexAttribPointer(mShaderFractal.getHandle("aPosition"), 2,
-				GLES20.GL_BYTE, false, 0, mBufferQuad);
+		mBufferQuad.bind();
+		mBufferQuad.vertexAttribPointer(mShaderFractal.getHandle("aPosition"),
+				2, GLES20.GL_BYTE, false, 0, 0);
 		GLES20.glEnableVertexAttribArray(mShaderFractal.getHandle("aPosition"));
 		GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
 	}
@@ -98,6 +101,8 @@ public class ViewFractal extends ViewBase {
 			return;
 		}
 
+		mBufferQuad.create();
+
 		try {
 			String vertexSource = loadRawString(R.raw.fractal_vs);
 			String fragmentSource = loadRawString(R.raw.fractal_fs);
@@ -19,7 +19,7 @@ package fi.harism.effects;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.util.Vector;
+import java.nio.ShortBuffer;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -29,27 +29,75 @@ import android.graphics.PointF;
 import android.opengl.GLES20;
 import android.opengl.Matrix;
 import android.os.SystemClock;
-import android.util.FloatMath;
+import android.view.MotionEvent;
 
 /**
  * Particles Renderer and GLSurfaceView.
  */
 public class ViewParticles extends ViewBase {
 
-	private FloatBuffer mBufferLine;
-	private ByteBuffer mBufferQuad;
+	// Particle render modes.
+	public static final int PARTICLES_LEGACY = 0;
+	public static final int PARTICLES_BATCHED = 1;
+	public static final int PARTICLES_STATELESS = 2;
+
+	private static final int COUNT_EMIT = 100;
+	private static final int COUNT_PARTICLES = 10000;
+	// Touch driven emission is split into sub steps along touch path.
+	private static final int EMIT_SUBSTEPS = 4;
+	// Stateless vertex layout; spawn position, birth time, velocity, corner.
+	private static final int SPAWN_FLOATS = 7;
+	// How far ahead touch position is predicted, about one frame.
+	private static final long TOUCH_PREDICT_MILLIS = 16;
+	// Batched vertex layout; position, corner, size and color.
+	private static final int VERTEX_FLOATS = 6;
+
+	private EffectsBuffer mBufferBatch;
+	private EffectsBuffer mBufferBatchIndices;
+	private EffectsBuffer mBufferLine;
+	private EffectsBuffer mBufferQuad;
+	private EffectsBuffer mBufferSpawn;
+	private FloatBuffer mBatchData;
+	private float[] mBatchVertices = new float[4 * VERTEX_FLOATS
+			* COUNT_PARTICLES];
+	private float mAlpha;
 	private float mEmitterDir;
 	private float mEmitterDirSource;
 	private float mEmitterDirTarget;
-	private PointF mEmitterPos = new PointF();
-	private PointF mEmitterPosCtrl0 = new PointF();
-	private PointF mEmitterPosCtrl1 = new PointF();
-	private PointF mEmitterPosCtrl2 = new PointF();
+	// Quadratic emitter path, three (x, y) control points.
+	private float[] mEmitterCurve = new float[3 * 2];
+	private float[] mEmitterPos = new float[2];
 	private float[] mMatrixProjection = new float[16];
-	private Vector<Particle> mParticles = new Vector<Particle>();
+	private int[] mOffscreenFramebufferId = new int[1];
+	private int mOffscreenHeight;
+	private int mOffscreenScale = 1;
+	private boolean mOffscreenSupported = true;
+	private int[] mOffscreenTextureId = new int[1];
+	private int mOffscreenWidth;
+	private int mParticleMode = PARTICLES_BATCHED;
+	private ParticleBuffer mParticles = new ParticleBuffer(COUNT_PARTICLES);
+	private EffectsRecorder mRecorder = new EffectsRecorder(256);
 	private boolean[] mShaderCompilerSupport = new boolean[1];
+	private EffectsShader mShaderComposite = new EffectsShader();
 	private EffectsShader mShaderEmitter = new EffectsShader();
 	private EffectsShader mShaderParticle = new EffectsShader();
+	private EffectsShader mShaderParticleBatch = new EffectsShader();
+	private EffectsShader mShaderParticleStateless = new EffectsShader();
+	private FloatBuffer mSpawnData;
+	// Ring range of spawn slots written since last upload.
+	private int mSpawnDirtyCount;
+	private int mSpawnDirtyFirst;
+	private float[] mSpawnVertices = new float[4 * SPAWN_FLOATS];
+	private EffectsStepper mStepper = new EffectsStepper(60, 5);
+	private float mTime;
+	private volatile boolean mTouchActive;
+	private volatile float mTouchLag;
+	private EffectsTouchPath mTouchPath = new EffectsTouchPath(64);
+	private int mWidth, mHeight;
+	private ParticleAttractors mAttractors = new ParticleAttractors(256, 0.2f);
+	private ParticleEmitters mEmitters = new ParticleEmitters(64, mAttractors);
+	private ParticleSolver mSolver = new ParticleSolver(mParticles,
+			new EffectsParallel());
 	private Worker mWorker = new Worker();
 
 	public ViewParticles(Context context) {
@@ -57,15 +105,78 @@ public class ViewParticles extends ViewBase {
 
 		// Full view quad buffer.
 		final byte[] QUAD = { -1, 1, -1, -1, 1, 1, 1, -1 };
-		mBufferQuad = ByteBuffer.allocateDirect(8);
-		mBufferQuad.put(QUAD).position(0);
-
-		ByteBuffer buffer = ByteBuffer.allocateDirect(4 * 20);
-		mBufferLine = buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(8);
+		buffer.put(QUAD).position(0);
+		mBufferQuad = new EffectsBuffer(GLES20.GL_ARRAY_BUFFER, buffer,
+				GLES20.GL_STATIC_DRAW);
+
+		buffer = ByteBuffer.allocateDirect(4 * 20);
+		FloatBuffer line = buffer.order(ByteOrder.nativeOrder())
+				.asFloatBuffer();
 		for (int i = 0; i < 20; ++i) {
-			mBufferLine.put(i / 19f);
+			line.put(i / 19f);
+		}
+		line.position(0);
+		mBufferLine = new EffectsBuffer(GLES20.GL_ARRAY_BUFFER, line,
+				GLES20.GL_STATIC_DRAW);
+
+		// Batched particle buffers, one quad per particle.
+		buffer = ByteBuffer.allocateDirect(4 * mBatchVertices.length);
+		mBatchData = buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		mBufferBatch = new EffectsBuffer(GLES20.GL_ARRAY_BUFFER, mBatchData,
+				GLES20.GL_STREAM_DRAW);
+		buffer = ByteBuffer.allocateDirect(2 * 6 * COUNT_PARTICLES);
+		ShortBuffer indices = buffer.order(ByteOrder.nativeOrder())
+				.asShortBuffer();
+		for (int i = 0; i < COUNT_PARTICLES; ++i) {
+			short index = (short) (i * 4);
+			indices.put(index).put((short) (index + 1))
+					.put((short) (index + 2));
+			indices.put((short) (index + 2)).put((short) (index + 1))
+					.put((short) (index + 3));
+			for (int j = 0; j < 4; ++j) {
+				int offset = (i * 4 + j) * VERTEX_FLOATS;
+				mBatchVertices[offset + 2] = QUAD[j * 2];
+				mBatchVertices[offset + 3] = QUAD[j * 2 + 1];
+				mBatchVertices[offset + 4] = 0.03f;
+			}
+		}
+		indices.position(0);
+		mBufferBatchIndices = new EffectsBuffer(
+				GLES20.GL_ELEMENT_ARRAY_BUFFER, indices, GLES20.GL_STATIC_DRAW);
+
+		// Stateless particle spawn buffer, never spawned slots are born far
+		// in the past.
+		buffer = ByteBuffer.allocateDirect(4 * 4 * SPAWN_FLOATS
+				* COUNT_PARTICLES);
+		mSpawnData = buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		for (int i = 0; i < 4 * COUNT_PARTICLES; ++i) {
+			mSpawnData.put(0).put(0).put(-1e6f).put(0).put(0);
+			mSpawnData.put(QUAD[(i % 4) * 2]).put(QUAD[(i % 4) * 2 + 1]);
+		}
+		mSpawnData.position(0);
+		mBufferSpawn = new EffectsBuffer(GLES20.GL_ARRAY_BUFFER, mSpawnData,
+				GLES20.GL_DYNAMIC_DRAW);
+
+		final EffectsBuffer[] buffers = { mBufferBatch, mBufferBatchIndices,
+				mBufferLine, mBufferQuad, mBufferSpawn };
+		for (EffectsBuffer effectsBuffer : buffers) {
+			effectsBuffer.setRecorder(mRecorder);
 		}
-		mBufferLine.position(0);
+		for (int i = 0; i < 4; ++i) {
+			mSpawnVertices[i * SPAWN_FLOATS + 5] = QUAD[i * 2];
+			mSpawnVertices[i * SPAWN_FLOATS + 6] = QUAD[i * 2 + 1];
+		}
+
+		// Primary emitter following emitter path.
+		mEmitters.add(0f, 0f, 0f, true);
+
+		// Default particle behavior; attraction, integration, drag and fade
+		// in over the 1000 oldest particles.
+		mSolver.addAffector(new ParticleAffectors.Attractor(mAttractors));
+		mSolver.addAffector(new ParticleAffectors.Integrate());
+		mSolver.addAffector(new ParticleAffectors.Drag());
+		mSolver.addAffector(new ParticleAffectors.ColorOverOrder(1000));
 
 		setEGLContextClientVersion(2);
 		setRenderer(this);
@@ -73,11 +184,53 @@ public class ViewParticles extends ViewBase {
 		queueEvent(mWorker);
 	}
 
+	/**
+	 * Adds new attractor at given position and returns its id. Attractors
+	 * should be modified on renderer thread only, e.g. using queueEvent.
+	 */
+	public int addAttractor(float x, float y) {
+		return mAttractors.add(x, y);
+	}
+
+	/**
+	 * Adds new particle emitter and returns its id. Emitters should be
+	 * modified on renderer thread only, e.g. using queueEvent.
+	 */
+	public int addEmitter(float x, float y, float dir, boolean attract) {
+		return mEmitters.add(x, y, dir, attract);
+	}
+
+	/**
+	 * Returns distance between touch driven emitter and latest touch
+	 * position, in view units where view height is 2. Measured after every
+	 * simulation step, zero while view is not touched.
+	 */
+	public float getTouchLag() {
+		return mTouchLag;
+	}
+
+	@Override
+	public int getStateSize() {
+		return 16 + 4 * 8 + mParticles.getStateSize();
+	}
+
+	/**
+	 * Returns recorder used for counting GL calls made for particles.
+	 * Recording is disabled by default.
+	 */
+	public EffectsRecorder getRecorder() {
+		return mRecorder;
+	}
+
 	@Override
 	public void onDrawFrame(GL10 unused) {
+		mRecorder.begin();
+
 		GLES20.glClearColor(0f, 0f, 0f, 0f);
 		GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT
 				| GLES20.GL_STENCIL_BUFFER_BIT);
+		mRecorder.record(EffectsRecorder.CALL_STATE);
+		mRecorder.record(EffectsRecorder.CALL_CLEAR);
 
 		if (mShaderCompilerSupport[0] == false) {
 			return;
@@ -86,10 +239,12 @@ public class ViewParticles extends ViewBase {
 		GLES20.glDisable(GLES20.GL_DEPTH_TEST);
 		GLES20.glDisable(GLES20.GL_CULL_FACE);
 		GLES20.glDisable(GLES20.GL_BLEND);
+		mRecorder.record(EffectsRecorder.CALL_STATE, 3);
 
 		// Render emitter movement lines.
 		{
 			mShaderEmitter.useProgram();
+			mRecorder.record(EffectsRecorder.CALL_USE_PROGRAM);
 			int uProjectionM = mShaderEmitter.getHandle("uProjectionM");
 			int uEmitterCtrl0 = mShaderEmitter.getHandle("uEmitterCtrl0");
 			int uEmitterCtrl1 = mShaderEmitter.getHandle("uEmitterCtrl1");
@@ -99,64 +254,92 @@ public class ViewParticles extends ViewBase {
 			GLES20.glUniformMatrix4fv(uProjectionM, 1, false,
 					mMatrixProjection, 0);
 
-			GLES20.glUniform2f(uEmitterCtrl0, mEmitterPosCtrl0.x,
-					mEmitterPosCtrl0.y);
-			GLES20.glUniform2f(uEmitterCtrl1, mEmitterPosCtrl1.x,
-					mEmitterPosCtrl1.y);
-			GLES20.glUniform2f(uEmitterCtrl2, mEmitterPosCtrl2.x,
-					mEmitterPosCtrl2.y);
-
-			GLES20.glVertexAttribPointer(aPosition, 1, GLES20.GL_FLOAT, false,
-					0, mBufferLine);
+			GLES20.glUniform2f(uEmitterCtrl0, mEmitterCurve[0],
+					mEmitterCurve[1]);
+			GLES20.glUniform2f(uEmitterCtrl1, mEmitterCurve[2],
+					mEmitterCurve[3]);
+			GLES20.glUniform2f(uEmitterCtrl2, mEmitterCurve[4],
+					mEmitterCurve[5]);
+			mRecorder.record(EffectsRecorder.CALL_UNIFORM, 4);
+
+			mBufferLine.bind();
+			mBufferLine.vertexAttribPointer(aPosition, 1, GLES20.GL_FLOAT,
+					false, 0, 0);
 			GLES20.glEnableVertexAttribArray(aPosition);
 
 			GLES20.glLineWidth(7);
+			mRecorder.record(EffectsRecorder.CALL_STATE, 2);
 			GLES20.glDrawArrays(GLES20.GL_LINES, 0, 20);
+			mRecorder.record(EffectsRecorder.CALL_DRAW);
 		}
 
 		GLES20.glEnable(GLES20.GL_BLEND);
-		GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-
-		// Render particles.
-		{
-			mShaderParticle.useProgram();
-			int uPosition = mShaderParticle.getHandle("uPosition");
-			int uProjectionM = mShaderParticle.getHandle("uProjectionM");
-			int uColor = mShaderParticle.getHandle("uColor");
-			int aPosition = mShaderParticle.getHandle("aPosition");
-
-			GLES20.glVertexAttribPointer(aPosition, 2, GLES20.GL_BYTE, false,
-					0, mBufferQuad);
-			GLES20.glEnableVertexAttribArray(aPosition);
-
-			GLES20.glUniformMatrix4fv(uProjectionM, 1, false,
-					mMatrixProjection, 0);
-
-			for (int i = 0; i < mParticles.size(); ++i) {
-				float col = 1f;
-				if (i < 1000) {
-					col = i / 1000f;
-				}
-				GLES20.glUniform3f(uColor, col, col, col);
+		mRecorder.record(EffectsRecorder.CALL_STATE);
+
+		// Render particles, either directly or into reduced resolution
+		// offscreen buffer which is composited on screen afterwards.
+		boolean offscreen = prepareOffscreen();
+		if (offscreen) {
+			GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER,
+					mOffscreenFramebufferId[0]);
+			GLES20.glViewport(0, 0, mOffscreenWidth, mOffscreenHeight);
+			GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+			mRecorder.record(EffectsRecorder.CALL_BIND_FRAMEBUFFER);
+			mRecorder.record(EffectsRecorder.CALL_VIEWPORT);
+			mRecorder.record(EffectsRecorder.CALL_CLEAR);
+
+			// Keep offscreen color premultiplied for compositing.
+			GLES20.glBlendFuncSeparate(GLES20.GL_SRC_ALPHA,
+					GLES20.GL_ONE_MINUS_SRC_ALPHA, GLES20.GL_ONE,
+					GLES20.GL_ONE_MINUS_SRC_ALPHA);
+		} else {
+			GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA,
+					GLES20.GL_ONE_MINUS_SRC_ALPHA);
+		}
+		mRecorder.record(EffectsRecorder.CALL_STATE);
+
+		if (mParticleMode == PARTICLES_BATCHED) {
+			renderParticlesBatched();
+		} else if (mParticleMode == PARTICLES_STATELESS) {
+			renderParticlesStateless();
+		} else {
+			renderParticlesLegacy();
+		}
 
-				Particle p = mParticles.get(i);
-				GLES20.glUniform4f(uPosition, p.mPosition[0], p.mPosition[1],
-						0f, 0.03f);
-				GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
-			}
+		if (offscreen) {
+			GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+			GLES20.glViewport(0, 0, mWidth, mHeight);
+			mRecorder.record(EffectsRecorder.CALL_BIND_FRAMEBUFFER);
+			mRecorder.record(EffectsRecorder.CALL_VIEWPORT);
+			renderComposite();
 		}
 
 		queueEvent(mWorker);
 	}
 
+	/**
+	 * Adds touch sample converted from view pixels into emitter coordinates.
+	 */
+	private void addTouchSample(long time, float x, float y) {
+		float aspect = (float) getWidth() / getHeight();
+		mTouchPath.add(time, (x * 2 / getWidth() - 1) * aspect,
+				1 - y * 2 / getHeight());
+	}
+
 	@Override
 	public void onSurfaceChanged(GL10 unused, int width, int height) {
+		mWidth = width;
+		mHeight = height;
 		float aspect = (float) width / height;
 		Matrix.orthoM(mMatrixProjection, 0, -aspect, aspect, -1, 1, -1, 1);
 	}
 
 	@Override
 	public void onSurfaceCreated(GL10 unused, EGLConfig config) {
+		// Offscreen buffers were lost with previous context.
+		mOffscreenFramebufferId[0] = mOffscreenTextureId[0] = 0;
+		mOffscreenSupported = true;
+
 		// Check if shader compiler is supported.
 		GLES20.glGetBooleanv(GLES20.GL_SHADER_COMPILER, mShaderCompilerSupport,
 				0);
@@ -168,6 +351,12 @@ public class ViewParticles extends ViewBase {
 			return;
 		}
 
+		mBufferBatch.create();
+		mBufferBatchIndices.create();
+		mBufferLine.create();
+		mBufferQuad.create();
+		mBufferSpawn.create();
+
 		try {
 			String vertexSource, fragmentSource;
 			vertexSource = loadRawString(R.raw.emitter_vs);
@@ -176,106 +365,480 @@ public class ViewParticles extends ViewBase {
 			vertexSource = loadRawString(R.raw.particle_vs);
 			fragmentSource = loadRawString(R.raw.particle_fs);
 			mShaderParticle.setProgram(vertexSource, fragmentSource);
+			vertexSource = loadRawString(R.raw.particle_batch_vs);
+			fragmentSource = loadRawString(R.raw.particle_batch_fs);
+			mShaderParticleBatch.setProgram(vertexSource, fragmentSource);
+			vertexSource = loadRawString(R.raw.particle_stateless_vs);
+			mShaderParticleStateless.setProgram(vertexSource, fragmentSource);
+			vertexSource = loadRawString(R.raw.particle_composite_vs);
+			fragmentSource = loadRawString(R.raw.particle_composite_fs);
+			mShaderComposite.setProgram(vertexSource, fragmentSource);
 		} catch (Exception ex) {
 			showError(ex.getMessage());
 		}
 	}
 
+	@Override
+	public void restoreState(ByteBuffer buffer) {
+		mStepper.setStepCount(buffer.getLong());
+		mWorker.mRenderTime = buffer.getLong();
+		for (int i = 0; i < mEmitterCurve.length; ++i) {
+			mEmitterCurve[i] = buffer.getFloat();
+		}
+		mEmitterDirSource = buffer.getFloat();
+		mEmitterDirTarget = buffer.getFloat();
+		mParticles.restoreState(buffer);
+	}
+
+	/**
+	 * Makes sure offscreen framebuffer matches current scale and surface
+	 * size. Returns false if offscreen rendering is disabled or not
+	 * supported.
+	 */
+	private boolean prepareOffscreen() {
+		if (mOffscreenScale <= 1 || !mOffscreenSupported) {
+			return false;
+		}
+		int width = Math.max(1, mWidth / mOffscreenScale);
+		int height = Math.max(1, mHeight / mOffscreenScale);
+		if (mOffscreenTextureId[0] != 0 && width == mOffscreenWidth
+				&& height == mOffscreenHeight) {
+			return true;
+		}
+
+		if (mOffscreenTextureId[0] != 0) {
+			GLES20.glDeleteFramebuffers(1, mOffscreenFramebufferId, 0);
+			GLES20.glDeleteTextures(1, mOffscreenTextureId, 0);
+		}
+
+		GLES20.glGenTextures(1, mOffscreenTextureId, 0);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mOffscreenTextureId[0]);
+		mRecorder.record(EffectsRecorder.CALL_BIND_TEXTURE);
+		GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S,
+				GLES20.GL_CLAMP_TO_EDGE);
+		GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T,
+				GLES20.GL_CLAMP_TO_EDGE);
+		mRecorder.record(EffectsRecorder.CALL_STATE, 4);
+		GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width,
+				height, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+
+		GLES20.glGenFramebuffers(1, mOffscreenFramebufferId, 0);
+		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER,
+				mOffscreenFramebufferId[0]);
+		GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER,
+				GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D,
+				mOffscreenTextureId[0], 0);
+		int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+		mRecorder.record(EffectsRecorder.CALL_BIND_FRAMEBUFFER, 2);
+
+		if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+			GLES20.glDeleteFramebuffers(1, mOffscreenFramebufferId, 0);
+			GLES20.glDeleteTextures(1, mOffscreenTextureId, 0);
+			mOffscreenFramebufferId[0] = mOffscreenTextureId[0] = 0;
+			mOffscreenSupported = false;
+			return false;
+		}
+
+		mOffscreenWidth = width;
+		mOffscreenHeight = height;
+		return true;
+	}
+
+	/**
+	 * Composites offscreen particle texture on screen using full view quad.
+	 */
+	private void renderComposite() {
+		mShaderComposite.useProgram();
+		mRecorder.record(EffectsRecorder.CALL_USE_PROGRAM);
+
+		GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+		mRecorder.record(EffectsRecorder.CALL_STATE);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mOffscreenTextureId[0]);
+		mRecorder.record(EffectsRecorder.CALL_BIND_TEXTURE);
+		GLES20.glUniform1i(mShaderComposite.getHandle("sTexture"), 0);
+		mRecorder.record(EffectsRecorder.CALL_UNIFORM);
+
+		// Offscreen color is premultiplied with alpha.
+		GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+		mRecorder.record(EffectsRecorder.CALL_STATE);
+
+		mBufferQuad.bind();
+		mBufferQuad.vertexAttribPointer(
+				mShaderComposite.getHandle("aPosition"), 2, GLES20.GL_BYTE,
+				false, 0, 0);
+		GLES20.glEnableVertexAttribArray(mShaderComposite
+				.getHandle("aPosition"));
+		mRecorder.record(EffectsRecorder.CALL_STATE);
+		GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+		mRecorder.record(EffectsRecorder.CALL_DRAW);
+	}
+
+	/**
+	 * Renders all particles with one indexed draw call. Particle quads are
+	 * written into one interleaved vertex buffer first.
+	 */
+	private void renderParticlesBatched() {
+		final ParticleBuffer particles = mParticles;
+		final float[] vertices = mBatchVertices;
+		final int count = particles.getCount();
+		final float alpha = mAlpha;
+		for (int i = 0, offset = 0; i < count; ++i) {
+			int k = particles.index(i);
+			float col = particles.mColor[k];
+			float x = particles.mPrevX[k]
+					+ (particles.mPosX[k] - particles.mPrevX[k]) * alpha;
+			float y = particles.mPrevY[k]
+					+ (particles.mPosY[k] - particles.mPrevY[k]) * alpha;
+			for (int j = 0; j < 4; ++j, offset += VERTEX_FLOATS) {
+				vertices[offset] = x;
+				vertices[offset + 1] = y;
+				vertices[offset + 5] = col;
+			}
+		}
+		mBatchData.position(0);
+		mBatchData.put(vertices, 0, count * 4 * VERTEX_FLOATS).position(0);
+		mBufferBatch.upload(count * 4 * VERTEX_FLOATS);
+
+		mShaderParticleBatch.useProgram();
+		int uProjectionM = mShaderParticleBatch.getHandle("uProjectionM");
+		int aPosition = mShaderParticleBatch.getHandle("aPosition");
+		int aCorner = mShaderParticleBatch.getHandle("aCorner");
+		int aSizeColor = mShaderParticleBatch.getHandle("aSizeColor");
+		mRecorder.record(EffectsRecorder.CALL_USE_PROGRAM);
+
+		GLES20.glUniformMatrix4fv(uProjectionM, 1, false, mMatrixProjection,
+				0);
+		mRecorder.record(EffectsRecorder.CALL_UNIFORM);
+
+		final int stride = 4 * VERTEX_FLOATS;
+		mBufferBatch.bind();
+		mBufferBatch.vertexAttribPointer(aPosition, 2, GLES20.GL_FLOAT,
+				false, stride, 0);
+		GLES20.glEnableVertexAttribArray(aPosition);
+		mBufferBatch.vertexAttribPointer(aCorner, 2, GLES20.GL_FLOAT, false,
+				stride, 4 * 2);
+		GLES20.glEnableVertexAttribArray(aCorner);
+		mBufferBatch.vertexAttribPointer(aSizeColor, 2, GLES20.GL_FLOAT,
+				false, stride, 4 * 4);
+		GLES20.glEnableVertexAttribArray(aSizeColor);
+		mRecorder.record(EffectsRecorder.CALL_STATE, 3);
+
+		mBufferBatchIndices.bind();
+		mBufferBatchIndices.drawElements(GLES20.GL_TRIANGLES, count * 6,
+				GLES20.GL_UNSIGNED_SHORT, 0);
+	}
+
+	/**
+	 * Renders particles one by one, each particle takes two uniform updates
+	 * and one draw call.
+	 */
+	private void renderParticlesLegacy() {
+		mShaderParticle.useProgram();
+		int uPosition = mShaderParticle.getHandle("uPosition");
+		int uProjectionM = mShaderParticle.getHandle("uProjectionM");
+		int uColor = mShaderParticle.getHandle("uColor");
+		int aPosition = mShaderParticle.getHandle("aPosition");
+		mRecorder.record(EffectsRecorder.CALL_USE_PROGRAM);
+
+		mBufferQuad.bind();
+		mBufferQuad.vertexAttribPointer(aPosition, 2, GLES20.GL_BYTE, false,
+				0, 0);
+		GLES20.glEnableVertexAttribArray(aPosition);
+		mRecorder.record(EffectsRecorder.CALL_STATE);
+
+		GLES20.glUniformMatrix4fv(uProjectionM, 1, false, mMatrixProjection,
+				0);
+		mRecorder.record(EffectsRecorder.CALL_UNIFORM);
+
+		final ParticleBuffer particles = mParticles;
+		final float alpha = mAlpha;
+		for (int i = 0; i < particles.getCount(); ++i) {
+			int k = particles.index(i);
+			float col = particles.mColor[k];
+			GLES20.glUniform3f(uColor, col, col, col);
+
+			float x = particles.mPrevX[k]
+					+ (particles.mPosX[k] - particles.mPrevX[k]) * alpha;
+			float y = particles.mPrevY[k]
+					+ (particles.mPosY[k] - particles.mPrevY[k]) * alpha;
+			GLES20.glUniform4f(uPosition, x, y, 0f, 0.03f);
+			mRecorder.record(EffectsRecorder.CALL_UNIFORM, 2);
+			GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+			mRecorder.record(EffectsRecorder.CALL_DRAW);
+		}
+	}
+
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.putLong(mStepper.getStepCount());
+		buffer.putLong(mWorker.mRenderTime);
+		for (int i = 0; i < mEmitterCurve.length; ++i) {
+			buffer.putFloat(mEmitterCurve[i]);
+		}
+		buffer.putFloat(mEmitterDirSource).putFloat(mEmitterDirTarget);
+		mParticles.saveState(buffer);
+	}
+
 	/**
-	 * Particle information container.
+	 * Moves attractor with given id into new position.
 	 */
-	private class Particle {
-		public float[] mDirection = new float[2];
-		public float[] mPosition = new float[2];
-		public float mSpeed;
+	public void setAttractor(int id, float x, float y) {
+		mAttractors.set(id, x, y);
+	}
+
+	/**
+	 * Moves emitter with given id into new position and direction.
+	 */
+	public void setEmitter(int id, float x, float y, float dir) {
+		mEmitters.set(id, x, y, dir);
+	}
+
+	@Override
+	public boolean onTouchEvent(MotionEvent me) {
+		switch (me.getActionMasked()) {
+		case MotionEvent.ACTION_DOWN:
+			mTouchPath.clear();
+			addTouchSample(me.getEventTime(), me.getX(), me.getY());
+			mTouchActive = true;
+			return true;
+		case MotionEvent.ACTION_MOVE:
+			// Historical samples keep emitter on track during fast strokes.
+			for (int i = 0; i < me.getHistorySize(); ++i) {
+				addTouchSample(me.getHistoricalEventTime(i),
+						me.getHistoricalX(i), me.getHistoricalY(i));
+			}
+			addTouchSample(me.getEventTime(), me.getX(), me.getY());
+			return true;
+		case MotionEvent.ACTION_UP:
+		case MotionEvent.ACTION_CANCEL:
+			mTouchActive = false;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Renders particles without simulation state. Vertex shader evaluates
+	 * particle positions from spawn parameters and current time using
+	 * ParticleMotion formula.
+	 */
+	private void renderParticlesStateless() {
+		final float step = mStepper.getStepSeconds();
+
+		mShaderParticleStateless.useProgram();
+		int uProjectionM = mShaderParticleStateless.getHandle("uProjectionM");
+		int uDecay = mShaderParticleStateless.getHandle("uDecay");
+		int uLifetime = mShaderParticleStateless.getHandle("uLifetime");
+		int uTime = mShaderParticleStateless.getHandle("uTime");
+		int aSpawn = mShaderParticleStateless.getHandle("aSpawn");
+		int aVelocity = mShaderParticleStateless.getHandle("aVelocity");
+		int aCorner = mShaderParticleStateless.getHandle("aCorner");
+		mRecorder.record(EffectsRecorder.CALL_USE_PROGRAM);
+
+		GLES20.glUniformMatrix4fv(uProjectionM, 1, false, mMatrixProjection,
+				0);
+		GLES20.glUniform1f(uDecay, ParticleMotion.decay(step));
+		GLES20.glUniform1f(uLifetime, step * COUNT_PARTICLES / COUNT_EMIT);
+		GLES20.glUniform1f(uTime, mTime);
+		mRecorder.record(EffectsRecorder.CALL_UNIFORM, 4);
+
+		// Upload only slots written since previous frame, at most two
+		// ranges if they wrap around end of ring.
+		final int stride = 4 * SPAWN_FLOATS;
+		final int first = mSpawnDirtyFirst;
+		final int tail = Math.min(mSpawnDirtyCount, COUNT_PARTICLES - first);
+		if (tail > 0) {
+			mBufferSpawn.upload(first * 4 * SPAWN_FLOATS, tail * 4
+					* SPAWN_FLOATS);
+		}
+		if (mSpawnDirtyCount > tail) {
+			mBufferSpawn.upload(0, (mSpawnDirtyCount - tail) * 4
+					* SPAWN_FLOATS);
+		}
+		mSpawnDirtyCount = 0;
+		mBufferSpawn.bind();
+		mBufferSpawn.vertexAttribPointer(aSpawn, 3, GLES20.GL_FLOAT, false,
+				stride, 0);
+		GLES20.glEnableVertexAttribArray(aSpawn);
+		mBufferSpawn.vertexAttribPointer(aVelocity, 2, GLES20.GL_FLOAT,
+				false, stride, 4 * 3);
+		GLES20.glEnableVertexAttribArray(aVelocity);
+		mBufferSpawn.vertexAttribPointer(aCorner, 2, GLES20.GL_FLOAT, false,
+				stride, 4 * 5);
+		GLES20.glEnableVertexAttribArray(aCorner);
+		mRecorder.record(EffectsRecorder.CALL_STATE, 3);
+
+		mBufferBatchIndices.bind();
+		mBufferBatchIndices.drawElements(GLES20.GL_TRIANGLES,
+				COUNT_PARTICLES * 6, GLES20.GL_UNSIGNED_SHORT, 0);
 	}
 
 	/**
-	 * Worker runnable.
+	 * Sets offscreen resolution divisor for particle rendering. Value of 2
+	 * or 4 renders particles at half or quarter resolution, 1 renders them
+	 * directly on screen.
+	 */
+	public void setOffscreenScale(int scale) {
+		mOffscreenScale = scale;
+	}
+
+	/**
+	 * Selects particle render mode, either PARTICLES_LEGACY,
+	 * PARTICLES_BATCHED or PARTICLES_STATELESS. Stateless mode runs no
+	 * simulation, particles fly freely without being attracted.
+	 */
+	public void setParticleMode(int mode) {
+		mParticleMode = mode;
+	}
+
+	/**
+	 * Worker runnable. Simulation is run in fixed size steps and rendering
+	 * interpolates between the two latest steps.
 	 */
 	private class Worker implements Runnable {
 
-		private long mRenderTime;
-		private long mRenderTimeLast;
+		private EffectsBezier mBezier = new EffectsBezier();
+		private long mRenderTime = -4000;
+		private boolean mTouchEmitting;
+		private PointF mTouchLast = new PointF();
+		private PointF mTouchPos = new PointF();
+
+		/**
+		 * Emits particles from primary emitter along touch path during the
+		 * step ending at given real time.
+		 */
+		private void emitTouch(float realTime) {
+			final float stepMillis = mStepper.getStepSeconds() * 1000;
+			for (int i = 1; i <= EMIT_SUBSTEPS; ++i) {
+				long time = (long) (realTime - stepMillis + stepMillis * i
+						/ EMIT_SUBSTEPS);
+				if (mTouchPath.sample(time + TOUCH_PREDICT_MILLIS,
+						TOUCH_PREDICT_MILLIS, mTouchPos)) {
+					mEmitters.set(0, mTouchPos.x, mTouchPos.y, mEmitterDir);
+				}
+				if (!mTouchEmitting) {
+					mEmitters.reset(0);
+					mTouchEmitting = true;
+				}
+				mEmitters.emit(mParticles, COUNT_EMIT / EMIT_SUBSTEPS);
+			}
+
+			if (mTouchPath.getLast(mTouchLast)) {
+				float dx = mTouchPos.x - mTouchLast.x;
+				float dy = mTouchPos.y - mTouchLast.y;
+				mTouchLag = (float) Math.sqrt(dx * dx + dy * dy);
+			}
+		}
 
 		@Override
 		public void run() {
+			long time = SystemClock.uptimeMillis();
+			int steps = mStepper.advance(time);
+
+			// Real time at the end of each step, simulation runs behind real
+			// time by the fraction of a step left in stepper.
+			final float stepMillis = mStepper.getStepSeconds() * 1000;
+			float realTime = time - (steps - 1 + mStepper.getAlpha())
+					* stepMillis;
+			for (; steps > 0; --steps) {
+				step(mStepper.nextStep(), realTime);
+				realTime += stepMillis;
+			}
+			mAlpha = mStepper.getAlpha();
+			mTime = (mStepper.getTime() + mAlpha * mStepper.getStepSeconds()
+					* 1000) / 1000f;
+
+			requestRender();
+		}
+
+		/**
+		 * Runs one simulation step, time is simulation time in milliseconds
+		 * and realTime the matching uptime the step ends at.
+		 */
+		private void step(long time, float realTime) {
 
 			// First update emitter position and direction.
-			long time = SystemClock.uptimeMillis();
 			if (time - mRenderTime > 4000) {
-				mEmitterPosCtrl0.set(mEmitterPosCtrl2);
-				mEmitterPosCtrl1.x = (float) (Math.random() * 2 - 1);
-				mEmitterPosCtrl1.y = (float) (Math.random() * 2 - 1);
-				mEmitterPosCtrl2.x = (float) (Math.random() * 2 - 1);
-				mEmitterPosCtrl2.y = (float) (Math.random() * 2 - 1);
+				final EffectsRandom random = EffectsRandom.get();
+				mEmitterCurve[0] = mEmitterCurve[4];
+				mEmitterCurve[1] = mEmitterCurve[5];
+				random.fill(mEmitterCurve, 2, 4, -1f, 1f);
 				mEmitterDirSource = mEmitterDirTarget;
-				mEmitterDirTarget = (float) (Math.random() * 720);
+				mEmitterDirTarget = random.nextFloat(0f, 720f);
 				mRenderTime = time;
 			}
 
 			float t = (time - mRenderTime) / 4000f;
 			t = t * t * (3 - 2 * t);
 
-			mEmitterPos.x = (1 - t) * (1 - t) * mEmitterPosCtrl0.x + 2
-					* (1 - t) * t * mEmitterPosCtrl1.x + t * t
-					* mEmitterPosCtrl2.x;
-			mEmitterPos.y = (1 - t) * (1 - t) * mEmitterPosCtrl0.y + 2
-					* (1 - t) * t * mEmitterPosCtrl1.y + t * t
-					* mEmitterPosCtrl2.y;
+			mBezier.evaluate(mEmitterCurve, 0, 2, 2, t, mEmitterPos, 0);
 			mEmitterDir = mEmitterDirSource
 					+ (mEmitterDirTarget - mEmitterDirSource) * t;
 
-			// Emit particles.
-			for (int i = 0; i < 100; ++i) {
-
-				Particle p;
-				if (mParticles.size() > 10000) {
-					p = mParticles.remove(0);
-				} else {
-					p = new Particle();
+			// Emit particles, primary emitter follows touch if there is one.
+			if (mTouchActive) {
+				emitTouch(realTime);
+			} else {
+				mEmitters.set(0, mEmitterPos[0], mEmitterPos[1], mEmitterDir);
+				if (mTouchEmitting) {
+					mEmitters.reset(0);
+					mTouchEmitting = false;
+					mTouchLag = 0f;
 				}
+				mEmitters.emit(mParticles, COUNT_EMIT);
+			}
 
-				p.mPosition[0] = mEmitterPos.x;
-				p.mPosition[1] = mEmitterPos.y;
-
-				float dir = (float) ((Math.PI * 2 * (mEmitterDir
-						+ Math.random() * 40 - 20)) / 360);
-				float len = (float) (Math.random() * 0.8 + 0.2);
-				p.mDirection[0] = FloatMath.sin(dir) * len;
-				p.mDirection[1] = FloatMath.cos(dir) * len;
-				p.mSpeed = 0.8f;
-
-				mParticles.add(p);
+			// Update particle positions, stateless mode evaluates them from
+			// spawn parameters instead.
+			if (mParticleMode == PARTICLES_STATELESS) {
+				writeSpawns(time, mEmitters.getCount() * COUNT_EMIT);
+			} else {
+				mSolver.solve(mStepper.getStepSeconds());
 			}
+		}
 
-			// Update particle positions.
-			t = (time - mRenderTimeLast) / 1000f;
-			for (int i = 0; i < mParticles.size(); ++i) {
-				Particle p = mParticles.get(i);
-
-				float dx = p.mPosition[0] - mEmitterPos.x;
-				float dy = p.mPosition[1] - mEmitterPos.y;
-				float len = FloatMath.sqrt(dx * dx + dy * dy);
-				if (len > 0.0f && len < 0.2f) {
-					p.mDirection[0] = p.mSpeed * p.mDirection[0]
-							+ (1.0f - p.mSpeed) * dx / len;
-					p.mDirection[1] = p.mSpeed * p.mDirection[1]
-							+ (1.0f - p.mSpeed) * dy / len;
-					p.mSpeed += 0.2f - len;
-					if (p.mSpeed > 0.8f) {
-						p.mSpeed = 0.8f;
-					}
+		/**
+		 * Writes spawn parameters of given amount of most recently emitted
+		 * particles into stateless render buffer. Particle is integrated once
+		 * during the step it is emitted, hence birth time is one step back.
+		 * Written slots follow previously written ones in the ring, so they
+		 * extend the dirty range uploaded on next frame.
+		 */
+		private void writeSpawns(long time, int count) {
+			final ParticleBuffer particles = mParticles;
+			final float[] vertices = mSpawnVertices;
+			final float birth = time / 1000f - mStepper.getStepSeconds();
+			count = Math.min(count, particles.getCount());
+			if (count == 0) {
+				return;
+			}
+			if (mSpawnDirtyCount == 0) {
+				mSpawnDirtyFirst = particles.index(particles.getCount()
+						- count);
+			}
+			mSpawnDirtyCount = Math.min(mSpawnDirtyCount + count,
+					COUNT_PARTICLES);
+			for (int i = particles.getCount() - count; i < particles
+					.getCount(); ++i) {
+				int k = particles.index(i);
+				float speed = particles.mSpeed[k];
+				for (int j = 0; j < 4; ++j) {
+					int offset = j * SPAWN_FLOATS;
+					vertices[offset] = particles.mPosX[k];
+					vertices[offset + 1] = particles.mPosY[k];
+					vertices[offset + 2] = birth;
+					vertices[offset + 3] = particles.mDirX[k] * speed;
+					vertices[offset + 4] = particles.mDirY[k] * speed;
 				}
-
-				p.mPosition[0] += p.mDirection[0] * p.mSpeed * t;
-				p.mPosition[1] += p.mDirection[1] * p.mSpeed * t;
-				p.mSpeed *= 1.0 - t;
-
+				mSpawnData.position(k * 4 * SPAWN_FLOATS);
+				mSpawnData.put(vertices);
 			}
-			mRenderTimeLast = time;
-
-			requestRender();
+			mSpawnData.position(0);
 		}
 
 	}
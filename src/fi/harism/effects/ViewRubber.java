@@ -31,9 +31,18 @@ import android.os.SystemClock;
 
 public class ViewRubber extends ViewBase {
 
+	// Weight attributes in the order PatchBasis stores them.
+	private static final String[] BASIS_ATTRIBUTES = { "aBasisU", "aBasisV",
+			"aBasisDU", "aBasisDV" };
+	// Vertex cache size indices are optimized for, small enough for most
+	// GPUs.
+	private static final int CACHE_SIZE = 16;
 	private static final int COUNT_EDGE = 20;
 	private static final int COUNT_INDICES = 6 * (COUNT_EDGE - 1)
 			* (COUNT_EDGE - 1);
+	// Mesh attributes following patch index in RubberMesh vertex layout.
+	private static final String[] MESH_ATTRIBUTES = { "aSeam0", "aSeam1",
+			"aRest" };
 
 	private static final float[][][] FACE_DATA = {
 			{ { .3f, .5f, 1f }, { 0, 8, 2, 9, 20, 10, 1, 11, 3 } },
@@ -51,62 +60,187 @@ public class ViewRubber extends ViewBase {
 			{ -1, 0, 0 }, { 1, 0, 0 }, { 0, 1, 0 }, { 0, -1, 0 } };
 	private static final float[][] FACE_VERTICES_SOURCE = new float[FACE_VERTICES.length][];
 	private static final float[][] FACE_VERTICES_TARGET = new float[FACE_VERTICES.length][];
-
-	private ShortBuffer mBufferIndices;
-	private FloatBuffer mBufferVertices;
+	// Soft body nodes per axis, odd so that control points are nodes.
+	private static final int LATTICE_SIZE = 5;
+	private static final float LATTICE_ANCHOR_STIFFNESS = 200f;
+	private static final float LATTICE_DAMPING = 0.01f;
+	private static final float LATTICE_STIFFNESS = 200f;
+
+	// Face colors by axis and sign, -x, +x, -y, +y, -z and +z.
+	private float[] mAxisColors = new float[3 * 6];
+	private PatchBasis mBasis = new PatchBasis(COUNT_EDGE);
+	private EffectsBuffer mBufferIndices;
+	private EffectsBuffer mBufferMesh;
+	private EffectsBuffer mBufferMeshIndices;
+	private EffectsBuffer mBufferVertices;
+	private float[] mCtrl = new float[3 * FACE_VERTICES.length];
+	private int[] mCtrlNodes = new int[FACE_VERTICES.length];
+	private EffectsCulling mCulling = new EffectsCulling();
+	private float[] mEye = new float[3];
 	private float[] mEyeSource = { 0, 0, 5 };
 	private float[] mEyeTarget = { 0, 0, 5 };
+	private float[] mLines = new float[27];
 
 	private float[] mMatrixProjection = new float[16];
 	private float[] mMatrixView = new float[16];
+	private float[] mMatrixViewProjection = new float[16];
+	private RubberMesh mMesh;
+	private EffectsRecorder mRecorder = new EffectsRecorder(64);
 	private long mRenderTime;
 	private boolean[] mShaderCompilerSupport = new boolean[1];
+	private EffectsShader mShaderMesh = new EffectsShader();
 	private EffectsShader mShaderRubber = new EffectsShader();
+	private boolean mSimulated = true;
+	private boolean mSingleMesh = true;
+	private SoftBody mSoftBody = new SoftBody(LATTICE_SIZE, LATTICE_STIFFNESS,
+			LATTICE_DAMPING, new EffectsParallel());
+	private EffectsStepper mStepper = new EffectsStepper(120, 8);
 
 	public ViewRubber(Context context) {
 		super(context);
 
-		ByteBuffer buffer = ByteBuffer.allocateDirect(4 * 2 * COUNT_EDGE
-				* COUNT_EDGE);
-		mBufferVertices = buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
-		for (int i = 0; i < COUNT_EDGE; ++i) {
-			float y = (float) i / (COUNT_EDGE - 1);
-			for (int j = 0; j < COUNT_EDGE; ++j) {
-				float x = (float) j / (COUNT_EDGE - 1);
-				mBufferVertices.put(x).put(y);
-			}
-		}
-		mBufferVertices.position(0);
-
+		// Bernstein weights of every grid vertex, control points are
+		// combined with them in rubber_vs.txt.
+		ByteBuffer buffer = ByteBuffer.allocateDirect(4
+				* PatchBasis.VERTEX_FLOATS * mBasis.getVertexCount());
+		FloatBuffer vertices = buffer.order(ByteOrder.nativeOrder())
+				.asFloatBuffer();
+		mBasis.writeBasis(vertices);
+		vertices.position(0);
+		mBufferVertices = new EffectsBuffer(GLES20.GL_ARRAY_BUFFER, vertices,
+				GLES20.GL_STATIC_DRAW);
+		mBufferVertices.setRecorder(mRecorder);
+
+		// Grid triangles ordered for post transform vertex cache.
+		int[] indices = MeshIndices.tipsify(MeshIndices.grid(COUNT_EDGE),
+				COUNT_EDGE * COUNT_EDGE, CACHE_SIZE);
 		buffer = ByteBuffer.allocateDirect(2 * COUNT_INDICES);
-		mBufferIndices = buffer.order(ByteOrder.nativeOrder()).asShortBuffer();
-		for (int i = 0; i < COUNT_EDGE - 1; ++i) {
-			for (int j = 0; j < COUNT_EDGE - 1; ++j) {
-				short index = (short) (j * COUNT_EDGE + i);
-				mBufferIndices.put(index).put((short) (index + COUNT_EDGE))
-						.put((short) (index + 1));
-				mBufferIndices.put((short) (index + COUNT_EDGE))
-						.put((short) (index + COUNT_EDGE + 1))
-						.put((short) (index + 1));
+		ShortBuffer shorts = buffer.order(ByteOrder.nativeOrder())
+				.asShortBuffer();
+		for (int index : indices) {
+			shorts.put((short) index);
+		}
+		shorts.position(0);
+		mBufferIndices = new EffectsBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER,
+				shorts, GLES20.GL_STATIC_DRAW);
+		mBufferIndices.setRecorder(mRecorder);
+
+		// Whole cube as one mesh with shared seam vertices, faces looked up
+		// from control point table in rubber_mesh_vs.txt. Faces are colored
+		// by the axis their center control point lies on at rest.
+		int[][] faces = new int[FACE_DATA.length][9];
+		for (int f = 0; f < FACE_DATA.length; ++f) {
+			for (int i = 0; i < 9; ++i) {
+				faces[f][i] = (int) FACE_DATA[f][1][i];
 			}
+			float[] center = FACE_VERTICES[faces[f][4]];
+			int axis = 0;
+			for (int i = 1; i < 3; ++i) {
+				if (Math.abs(center[i]) > Math.abs(center[axis])) {
+					axis = i;
+				}
+			}
+			int index = axis * 2 + (center[axis] < 0 ? 0 : 1);
+			System.arraycopy(FACE_DATA[f][0], 0, mAxisColors, index * 3, 3);
+		}
+		float[] restCtrl = new float[3 * FACE_VERTICES.length];
+		for (int i = 0; i < FACE_VERTICES.length; ++i) {
+			System.arraycopy(FACE_VERTICES[i], 0, restCtrl, i * 3, 3);
 		}
-		mBufferIndices.position(0);
+		mMesh = new RubberMesh(COUNT_EDGE, faces);
+		buffer = ByteBuffer.allocateDirect(4 * RubberMesh.VERTEX_FLOATS
+				* mMesh.getVertexCount());
+		vertices = buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		mMesh.writeVertices(vertices, restCtrl);
+		vertices.position(0);
+		mBufferMesh = new EffectsBuffer(GLES20.GL_ARRAY_BUFFER, vertices,
+				GLES20.GL_STATIC_DRAW);
+		mBufferMesh.setRecorder(mRecorder);
+
+		indices = MeshIndices.tipsify(mMesh.getIndices(),
+				mMesh.getVertexCount(), CACHE_SIZE);
+		buffer = ByteBuffer.allocateDirect(2 * indices.length);
+		shorts = buffer.order(ByteOrder.nativeOrder()).asShortBuffer();
+		for (int index : indices) {
+			shorts.put((short) index);
+		}
+		shorts.position(0);
+		mBufferMeshIndices = new EffectsBuffer(
+				GLES20.GL_ELEMENT_ARRAY_BUFFER, shorts, GLES20.GL_STATIC_DRAW);
+		mBufferMeshIndices.setRecorder(mRecorder);
 
 		for (int i = 0; i < FACE_VERTICES.length; ++i) {
 			FACE_VERTICES_SOURCE[i] = new float[3];
 			FACE_VERTICES_TARGET[i] = new float[3];
 		}
 
+		// Control points are lattice nodes anchored to their targets.
+		final int half = (LATTICE_SIZE - 1) / 2;
+		for (int i = 0; i < FACE_VERTICES.length; ++i) {
+			int x = (int) (FACE_VERTICES[i][0] + 1) * half;
+			int y = (int) (FACE_VERTICES[i][1] + 1) * half;
+			int z = (int) (FACE_VERTICES[i][2] + 1) * half;
+			mCtrlNodes[i] = mSoftBody.getNode(x, y, z);
+		}
+		mSoftBody.setAnchorStiffness(LATTICE_ANCHOR_STIFFNESS);
+
 		setEGLContextClientVersion(2);
 		setRenderer(this);
 		setRenderMode(RENDERMODE_CONTINUOUSLY);
 	}
 
+	/**
+	 * Returns patch evaluator holding control points of last drawn face,
+	 * usable for evaluating the face on CPU.
+	 */
+	public PatchBasis getBasis() {
+		return mBasis;
+	}
+
+	/**
+	 * Returns culling stage holding culled and visible face counts of last
+	 * frame. Faces are culled only when drawn as separate patches.
+	 */
+	public EffectsCulling getCulling() {
+		return mCulling;
+	}
+
+	/**
+	 * Returns single mesh of whole cube.
+	 */
+	public RubberMesh getMesh() {
+		return mMesh;
+	}
+
+	/**
+	 * Returns recorder used for counting GL calls made for rubber faces.
+	 * Recording is disabled by default.
+	 */
+	public EffectsRecorder getRecorder() {
+		return mRecorder;
+	}
+
+	/**
+	 * Returns soft body lattice driving control points.
+	 */
+	public SoftBody getSoftBody() {
+		return mSoftBody;
+	}
+
+	@Override
+	public int getStateSize() {
+		return 8 + 4 * 6 + 4 * 6 * FACE_VERTICES.length + 8
+				+ mSoftBody.getStateSize();
+	}
+
 	@Override
 	public void onDrawFrame(GL10 unused) {
 
+		mRecorder.begin();
 		GLES20.glClearColor(0f, 0f, 0f, 1f);
 		GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+		mRecorder.record(EffectsRecorder.CALL_STATE);
+		mRecorder.record(EffectsRecorder.CALL_CLEAR);
 
 		if (mShaderCompilerSupport[0] == false) {
 			return;
@@ -114,9 +248,10 @@ public class ViewRubber extends ViewBase {
 
 		long time = SystemClock.uptimeMillis();
 		if (time - mRenderTime > 2000) {
+			final EffectsRandom random = EffectsRandom.get();
 			for (int i = 0; i < 3; ++i) {
 				mEyeSource[i] = mEyeTarget[i];
-				mEyeTarget[i] = (float) (Math.random() * 4 - 2);
+				mEyeTarget[i] = random.nextFloat(-2f, 2f);
 				mEyeTarget[i] += mEyeTarget[i] > 0 ? 3 : -3;
 			}
 			for (int i = 0; i < FACE_VERTICES.length; ++i) {
@@ -124,57 +259,57 @@ public class ViewRubber extends ViewBase {
 					FACE_VERTICES_SOURCE[i][j] = FACE_VERTICES_TARGET[i][j];
 					FACE_VERTICES_TARGET[i][j] = FACE_VERTICES[i][j]
 							+ FACE_VERTICES[i][j]
-							* (float) (Math.random() - 0.5);
+							* random.nextFloat(-0.5f, 0.5f);
 				}
 			}
 			mRenderTime = time;
+			setAnchors();
 		}
 
 		float t = (time - mRenderTime) / 2000f;
 		t = t * t * (3 - 2 * t);
 
-		final float[] eye = new float[3];
+		final float[] ctrl = mCtrl;
+		if (mSimulated) {
+			for (int steps = mStepper.advance(time); steps > 0; --steps) {
+				mSoftBody.step(mStepper.getStepSeconds());
+				mStepper.nextStep();
+			}
+			float alpha = mStepper.getAlpha();
+			for (int i = 0; i < FACE_VERTICES.length; ++i) {
+				mSoftBody.getPosition(mCtrlNodes[i], alpha, ctrl, i * 3);
+			}
+		} else {
+			for (int i = 0; i < FACE_VERTICES.length; ++i) {
+				float[] verticesSource = FACE_VERTICES_SOURCE[i];
+				float[] verticesTarget = FACE_VERTICES_TARGET[i];
+				for (int j = 0; j < 3; ++j) {
+					ctrl[i * 3 + j] = verticesSource[j]
+							+ (verticesTarget[j] - verticesSource[j]) * t;
+				}
+			}
+		}
+
+		final float[] eye = mEye;
 		for (int i = 0; i < 3; ++i) {
 			eye[i] = mEyeSource[i] + (mEyeTarget[i] - mEyeSource[i]) * t;
 		}
 
 		Matrix.setLookAtM(mMatrixView, 0, eye[0], eye[1], eye[2], 0, 0, 0, 0,
 				1, 0);
-
-		mShaderRubber.useProgram();
+		Matrix.multiplyMM(mMatrixViewProjection, 0, mMatrixProjection, 0,
+				mMatrixView, 0);
+		mCulling.begin(mMatrixViewProjection, 0f);
 
 		GLES20.glEnable(GLES20.GL_CULL_FACE);
 		GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+		mRecorder.record(EffectsRecorder.CALL_STATE, 2);
 
-		GLES20.glUniformMatrix4fv(mShaderRubber.getHandle("uViewM"), 1, false,
-				mMatrixView, 0);
-		GLES20.glUniformMatrix4fv(mShaderRubber.getHandle("uProjectionM"), 1,
-				false, mMatrixProjection, 0);
-
-		GLES20.glVertexAttribPointer(mShaderRubber.getHandle("aPosition"), 2,
-				GLES20.GL_FLOAT, false, 0, mBufferVertices);
-		GLES20.glEnableVertexAttribArray(mShaderRubber.getHandle("aPosition"));
-
-		for (float[][] face : FACE_DATA) {
-			GLES20.glUniform3fv(mShaderRubber.getHandle("uColor"), 1, face[0],
-					0);
-
-			final float[] lines = new float[27];
-			for (int i = 0; i < 9; ++i) {
-				float[] verticesSource = FACE_VERTICES_SOURCE[(int) face[1][i]];
-				float[] verticesTarget = FACE_VERTICES_TARGET[(int) face[1][i]];
-				for (int j = 0; j < 3; ++j) {
-					float value = verticesSource[j]
-							+ (verticesTarget[j] - verticesSource[j]) * t;
-					lines[i * 3 + j] = value;
-				}
-			}
-
-			GLES20.glUniform3fv(mShaderRubber.getHandle("uCtrl"), 9, lines, 0);
-			GLES20.glDrawElements(GLES20.GL_TRIANGLES, COUNT_INDICES,
-					GLES20.GL_UNSIGNED_SHORT, mBufferIndices);
+		if (mSingleMesh) {
+			renderMesh();
+		} else {
+			renderPatches();
 		}
-
 	}
 
 	@Override
@@ -196,13 +331,179 @@ public class ViewRubber extends ViewBase {
 			return;
 		}
 
+		mBufferIndices.create();
+		mBufferMesh.create();
+		mBufferMeshIndices.create();
+		mBufferVertices.create();
+
 		try {
 			String vertexSource = loadRawString(R.raw.rubber_vs);
 			String fragmentSource = loadRawString(R.raw.rubber_fs);
 			mShaderRubber.setProgram(vertexSource, fragmentSource);
+			vertexSource = loadRawString(R.raw.rubber_mesh_vs);
+			fragmentSource = loadRawString(R.raw.rubber_mesh_fs);
+			mShaderMesh.setProgram(vertexSource, fragmentSource);
+
+			// Face table and colors never change, set them once per program.
+			float[] table = mMesh.getFaceTable();
+			mShaderMesh.useProgram();
+			GLES20.glUniform3fv(mShaderMesh.getHandle("uFaceCtrl"),
+					table.length / 3, table, 0);
+			GLES20.glUniform3fv(mShaderMesh.getHandle("uAxisColors"), 6,
+					mAxisColors, 0);
 		} catch (Exception ex) {
 			showError(ex.getMessage());
 		}
 	}
 
+	/**
+	 * Draws whole cube with one draw call, all control points given as one
+	 * uniform array.
+	 */
+	private void renderMesh() {
+		mShaderMesh.useProgram();
+		mRecorder.record(EffectsRecorder.CALL_USE_PROGRAM);
+
+		GLES20.glUniformMatrix4fv(mShaderMesh.getHandle("uViewM"), 1, false,
+				mMatrixView, 0);
+		GLES20.glUniformMatrix4fv(mShaderMesh.getHandle("uProjectionM"), 1,
+				false, mMatrixProjection, 0);
+		GLES20.glUniform3fv(mShaderMesh.getHandle("uCtrl"),
+				FACE_VERTICES.length, mCtrl, 0);
+		mRecorder.record(EffectsRecorder.CALL_UNIFORM, 3);
+
+		final int stride = 4 * RubberMesh.VERTEX_FLOATS;
+		mBufferMesh.bind();
+		for (int i = 0; i < BASIS_ATTRIBUTES.length; ++i) {
+			int handle = mShaderMesh.getHandle(BASIS_ATTRIBUTES[i]);
+			mBufferMesh.vertexAttribPointer(handle, 3, GLES20.GL_FLOAT, false,
+					stride, 4 * 3 * i);
+			GLES20.glEnableVertexAttribArray(handle);
+			mRecorder.record(EffectsRecorder.CALL_STATE);
+		}
+		int aFace = mShaderMesh.getHandle("aFace");
+		mBufferMesh.vertexAttribPointer(aFace, 1, GLES20.GL_FLOAT, false,
+				stride, 4 * PatchBasis.VERTEX_FLOATS);
+		GLES20.glEnableVertexAttribArray(aFace);
+		mRecorder.record(EffectsRecorder.CALL_STATE);
+		for (int i = 0; i < MESH_ATTRIBUTES.length; ++i) {
+			int handle = mShaderMesh.getHandle(MESH_ATTRIBUTES[i]);
+			mBufferMesh.vertexAttribPointer(handle, 3, GLES20.GL_FLOAT, false,
+					stride, 4 * (PatchBasis.VERTEX_FLOATS + 1 + 3 * i));
+			GLES20.glEnableVertexAttribArray(handle);
+			mRecorder.record(EffectsRecorder.CALL_STATE);
+		}
+
+		mBufferMeshIndices.bind();
+		mBufferMeshIndices.drawElements(GLES20.GL_TRIANGLES,
+				mMesh.getIndices().length, GLES20.GL_UNSIGNED_SHORT, 0);
+	}
+
+	/**
+	 * Draws faces as separate patches, culling those outside view or facing
+	 * away from eye.
+	 */
+	private void renderPatches() {
+		final float[] eye = mEye;
+		mShaderRubber.useProgram();
+		mRecorder.record(EffectsRecorder.CALL_USE_PROGRAM);
+
+		GLES20.glUniformMatrix4fv(mShaderRubber.getHandle("uViewM"), 1, false,
+				mMatrixView, 0);
+		GLES20.glUniformMatrix4fv(mShaderRubber.getHandle("uProjectionM"), 1,
+				false, mMatrixProjection, 0);
+		mRecorder.record(EffectsRecorder.CALL_UNIFORM, 2);
+
+		mBufferVertices.bind();
+		for (int i = 0; i < BASIS_ATTRIBUTES.length; ++i) {
+			int handle = mShaderRubber.getHandle(BASIS_ATTRIBUTES[i]);
+			mBufferVertices.vertexAttribPointer(handle, 3, GLES20.GL_FLOAT,
+					false, 4 * PatchBasis.VERTEX_FLOATS, 4 * 3 * i);
+			GLES20.glEnableVertexAttribArray(handle);
+			mRecorder.record(EffectsRecorder.CALL_STATE);
+		}
+		mBufferIndices.bind();
+
+		final float[] lines = mLines;
+		final float[] matrices = mBasis.getMatrices();
+		for (float[][] face : FACE_DATA) {
+			for (int i = 0; i < 9; ++i) {
+				System.arraycopy(mCtrl, (int) face[1][i] * 3, lines, i * 3, 3);
+			}
+
+			// Skip faces outside view or facing away from eye.
+			if (!mCulling.isPatchVisible(lines, 3, 3, eye)) {
+				continue;
+			}
+
+			GLES20.glUniform3fv(mShaderRubber.getHandle("uColor"), 1, face[0],
+					0);
+			mBasis.setControlPoints(lines, 0);
+			GLES20.glUniformMatrix3fv(mShaderRubber.getHandle("uCtrlX"), 1,
+					false, matrices, 0);
+			GLES20.glUniformMatrix3fv(mShaderRubber.getHandle("uCtrlY"), 1,
+					false, matrices, 9);
+			GLES20.glUniformMatrix3fv(mShaderRubber.getHandle("uCtrlZ"), 1,
+					false, matrices, 18);
+			mRecorder.record(EffectsRecorder.CALL_UNIFORM, 4);
+			mBufferIndices.drawElements(GLES20.GL_TRIANGLES, COUNT_INDICES,
+					GLES20.GL_UNSIGNED_SHORT, 0);
+		}
+	}
+
+	@Override
+	public void restoreState(ByteBuffer buffer) {
+		// Animation time is stored relative to current time.
+		mRenderTime = SystemClock.uptimeMillis() - buffer.getLong();
+		EffectsSnapshot.getFloats(buffer, mEyeSource, 3);
+		EffectsSnapshot.getFloats(buffer, mEyeTarget, 3);
+		for (int i = 0; i < FACE_VERTICES.length; ++i) {
+			EffectsSnapshot.getFloats(buffer, FACE_VERTICES_SOURCE[i], 3);
+			EffectsSnapshot.getFloats(buffer, FACE_VERTICES_TARGET[i], 3);
+		}
+		mStepper.setStepCount(buffer.getLong());
+		mSoftBody.restoreState(buffer);
+		setAnchors();
+	}
+
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.putLong(SystemClock.uptimeMillis() - mRenderTime);
+		EffectsSnapshot.putFloats(buffer, mEyeSource, 3);
+		EffectsSnapshot.putFloats(buffer, mEyeTarget, 3);
+		for (int i = 0; i < FACE_VERTICES.length; ++i) {
+			EffectsSnapshot.putFloats(buffer, FACE_VERTICES_SOURCE[i], 3);
+			EffectsSnapshot.putFloats(buffer, FACE_VERTICES_TARGET[i], 3);
+		}
+		buffer.putLong(mStepper.getStepCount());
+		mSoftBody.saveState(buffer);
+	}
+
+	/**
+	 * Anchors control point nodes of soft body to current targets.
+	 */
+	private void setAnchors() {
+		for (int i = 0; i < FACE_VERTICES.length; ++i) {
+			float[] target = FACE_VERTICES_TARGET[i];
+			mSoftBody.setAnchor(mCtrlNodes[i], target[0], target[1],
+					target[2], 1f);
+		}
+	}
+
+	/**
+	 * Selects between control points driven by soft body simulation and
+	 * smoothstep interpolation between random targets.
+	 */
+	public void setSimulated(boolean simulated) {
+		mSimulated = simulated;
+	}
+
+	/**
+	 * Selects between drawing cube as one watertight mesh, the default, and
+	 * as six separately culled patches.
+	 */
+	public void setSingleMesh(boolean singleMesh) {
+		mSingleMesh = singleMesh;
+	}
+
 }
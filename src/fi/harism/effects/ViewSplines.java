@@ -30,35 +30,64 @@ import android.os.SystemClock;
 
 public class ViewSplines extends ViewBase {
 
+	// Floats per baked vertex, position, tangent and (t, side).
+	private static final int BAKED_FLOATS = 8;
+	// Points along every baked spline.
+	private static final int BAKED_SPLITS = SplineTessellator.LEVELS[
+			SplineTessellator.LEVELS.length - 1];
+	private static final int COUNT_MORPH = 10000;
 	private static final int COUNT_SPLINES = 100;
-	private static final int COUNT_SPLITS = 40;
-	private static final int COUNT_VERTICES = 2 * COUNT_SPLITS;
+	// Points along every morphing spline.
+	private static final int MORPH_SPLITS = SplineTessellator.LEVELS[1];
+	// Maximum screen space error of tessellated splines in pixels.
+	private static final float TOLERANCE = 1f;
 
-	private FloatBuffer mBufferSpline;
+	private EffectsBuffer mBufferBaked;
+	private EffectsBuffer[] mBufferMorph;
+	private EffectsBuffer mBufferSpline;
+	private boolean mBaked;
+	private boolean mBakeDirty = true;
+	private FloatBuffer mBakedVertices;
+	private EffectsBezier mBezier = new EffectsBezier();
+	private EffectsCulling mCulling = new EffectsCulling();
 	private float[] mMatrixModel = new float[16];
 	private float[] mMatrixModelViewProjection = new float[16];
 	private float[] mMatrixProjection = new float[16];
 	private float[] mMatrixView = new float[16];
+	private SplineMorph mMorph;
+	private int mMorphFrame;
+	private boolean mMorphing;
+	private FloatBuffer mMorphVertices;
 	private boolean[] mShaderCompilerSupport = new boolean[1];
+	private EffectsShader mShaderBaked = new EffectsShader();
 	private EffectsShader mShaderSpline = new EffectsShader();
 	private float[][] mSplines = new float[COUNT_SPLINES][];
+	private SplineTessellator mTessellator = new SplineTessellator(TOLERANCE);
+	private int mVertexCount;
 
 	public ViewSplines(Context context) {
 		super(context);
 
-		ByteBuffer buffer = ByteBuffer.allocateDirect(4 * 2 * COUNT_VERTICES);
-		mBufferSpline = buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
-		for (int i = 0; i < COUNT_SPLITS; ++i) {
-			float x = (float) i / (COUNT_SPLITS - 1);
-			mBufferSpline.put(x).put(1).put(x).put(-1);
-		}
-		mBufferSpline.position(0);
+		// Strips for every tessellation level in one buffer.
+		ByteBuffer buffer = ByteBuffer.allocateDirect(4 * 2 * SplineTessellator
+				.getTotalVertexCount());
+		FloatBuffer strips = buffer.order(ByteOrder.nativeOrder())
+				.asFloatBuffer();
+		SplineTessellator.writeStrips(strips);
+		strips.position(0);
+		mBufferSpline = new EffectsBuffer(GLES20.GL_ARRAY_BUFFER, strips,
+				GLES20.GL_STATIC_DRAW);
+
+		buffer = ByteBuffer.allocateDirect(4 * BAKED_FLOATS
+				* getBakedVertexCount());
+		mBakedVertices = buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		mBufferBaked = new EffectsBuffer(GLES20.GL_ARRAY_BUFFER,
+				mBakedVertices, GLES20.GL_STATIC_DRAW);
 
+		final EffectsRandom random = EffectsRandom.get();
 		for (int i = 0; i < COUNT_SPLINES; ++i) {
 			mSplines[i] = new float[3 * 4];
-			for (int j = 0; j < mSplines[i].length; ++j) {
-				mSplines[i][j] = (float) (Math.random() * 2 - 1);
-			}
+			random.fill(mSplines[i], 0, mSplines[i].length, -1f, 1f);
 		}
 
 		setEGLContextClientVersion(2);
@@ -66,6 +95,94 @@ public class ViewSplines extends ViewBase {
 		setRenderMode(RENDERMODE_CONTINUOUSLY);
 	}
 
+	/**
+	 * Returns number of vertices in baked buffer, spline strips joined with
+	 * two degenerate vertices in between.
+	 */
+	private static int getBakedVertexCount() {
+		return COUNT_SPLINES * (2 * BAKED_SPLITS + 2) - 2;
+	}
+
+	/**
+	 * Evaluates every spline into baked vertex buffer. Splines are joined
+	 * with degenerate triangles by repeating last vertex of previous and
+	 * first vertex of next spline. Strips have even length so winding of
+	 * following splines is not flipped.
+	 */
+	private void bakeSplines() {
+		final FloatBuffer buffer = mBakedVertices;
+		final float[] vertex = new float[BAKED_FLOATS];
+		buffer.position(0);
+		for (int i = 0; i < COUNT_SPLINES; ++i) {
+			final float[] ctrl = mSplines[i];
+			for (int j = 0; j < BAKED_SPLITS; ++j) {
+				float t = (float) j / (BAKED_SPLITS - 1);
+				mBezier.evaluate(ctrl, 0, 3, 3, t, vertex, 0);
+				mBezier.derivative(ctrl, 0, 3, 3, t, vertex, 3);
+				vertex[6] = t;
+				vertex[7] = 1;
+				if (j == 0 && i > 0) {
+					buffer.put(vertex);
+				}
+				buffer.put(vertex);
+				vertex[7] = -1;
+				buffer.put(vertex);
+				if (j == BAKED_SPLITS - 1 && i < COUNT_SPLINES - 1) {
+					buffer.put(vertex);
+				}
+			}
+		}
+		buffer.position(0);
+		mBakeDirty = false;
+	}
+
+	/**
+	 * Sets up baked shader and vertex attributes for vertices in given
+	 * buffer and draws given count of them as a single strip.
+	 */
+	private void drawBakedStrip(EffectsBuffer buffer, int count) {
+		mShaderBaked.useProgram();
+		GLES20.glUniformMatrix4fv(
+				mShaderBaked.getHandle("uModelViewProjectionM"), 1, false,
+				mMatrixModelViewProjection, 0);
+
+		final int stride = 4 * BAKED_FLOATS;
+		buffer.bind();
+		int aPosition = mShaderBaked.getHandle("aPosition");
+		buffer.vertexAttribPointer(aPosition, 3, GLES20.GL_FLOAT, false,
+				stride, 0);
+		GLES20.glEnableVertexAttribArray(aPosition);
+		int aTangent = mShaderBaked.getHandle("aTangent");
+		buffer.vertexAttribPointer(aTangent, 3, GLES20.GL_FLOAT, false,
+				stride, 4 * 3);
+		GLES20.glEnableVertexAttribArray(aTangent);
+		int aCoord = mShaderBaked.getHandle("aCoord");
+		buffer.vertexAttribPointer(aCoord, 2, GLES20.GL_FLOAT, false,
+				stride, 4 * 6);
+		GLES20.glEnableVertexAttribArray(aCoord);
+
+		GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, count);
+		mVertexCount = count;
+
+		GLES20.glDisableVertexAttribArray(aTangent);
+		GLES20.glDisableVertexAttribArray(aCoord);
+	}
+
+	/**
+	 * Returns culling stage holding culled and visible spline counts of last
+	 * frame.
+	 */
+	public EffectsCulling getCulling() {
+		return mCulling;
+	}
+
+	/**
+	 * Returns number of spline vertices drawn during last frame.
+	 */
+	public int getVertexCount() {
+		return mVertexCount;
+	}
+
 	@Override
 	public void onDrawFrame(GL10 unused) {
 
@@ -88,19 +205,12 @@ public class ViewSplines extends ViewBase {
 		Matrix.multiplyMM(mMatrixModelViewProjection, 0, mMatrixProjection, 0,
 				mMatrixModelViewProjection, 0);
 
-		mShaderSpline.useProgram();
-
-		GLES20.glUniformMatrix4fv(
-				mShaderSpline.getHandle("uModelViewProjectionM"), 1, false,
-				mMatrixModelViewProjection, 0);
-
-		GLES20.glVertexAttribPointer(mShaderSpline.getHandle("aPosition"), 2,
-				GLES20.GL_FLOAT, false, 0, mBufferSpline);
-		GLES20.glEnableVertexAttribArray(mShaderSpline.getHandle("aPosition"));
-
-		for (float[] ctrl : mSplines) {
-			GLES20.glUniform3fv(mShaderSpline.getHandle("uCtrl"), 4, ctrl, 0);
-			GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, COUNT_VERTICES);
+		if (mMorphing) {
+			renderMorph();
+		} else if (mBaked) {
+			renderBaked();
+		} else {
+			renderTessellated();
 		}
 	}
 
@@ -109,6 +219,7 @@ public class ViewSplines extends ViewBase {
 		float aspect = (float) width / height;
 		Matrix.perspectiveM(mMatrixProjection, 0, 60f, aspect, .1f, 10f);
 		Matrix.setLookAtM(mMatrixView, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0);
+		mTessellator.setViewport(width, height);
 	}
 
 	@Override
@@ -124,13 +235,134 @@ public class ViewSplines extends ViewBase {
 			return;
 		}
 
+		// Buffer objects of previous context are gone, vertices are uploaded
+		// again into new ones.
+		mBufferBaked.create();
+		mBufferSpline.create();
+		if (mBufferMorph != null) {
+			mBufferMorph[0].create();
+			mBufferMorph[1].create();
+		}
+
 		try {
 			String vertexSource = loadRawString(R.raw.spline_vs);
 			String fragmentSource = loadRawString(R.raw.spline_fs);
 			mShaderSpline.setProgram(vertexSource, fragmentSource);
+			vertexSource = loadRawString(R.raw.spline_baked_vs);
+			mShaderBaked.setProgram(vertexSource, fragmentSource);
 		} catch (Exception ex) {
 			showError(ex.getMessage());
 		}
 	}
 
+	/**
+	 * Draws all splines from baked vertex buffer with a single call. Splines
+	 * are baked again only after control points have changed.
+	 */
+	private void renderBaked() {
+		if (mBakeDirty) {
+			bakeSplines();
+			mBufferBaked.upload();
+		}
+		drawBakedStrip(mBufferBaked, getBakedVertexCount());
+	}
+
+	/**
+	 * Updates morphing splines on worker threads and streams them into one
+	 * of two array buffers in turn, so that buffer read by previous frame is
+	 * not written while it may still be in use.
+	 */
+	private void renderMorph() {
+		if (mMorph == null) {
+			mMorph = new SplineMorph(COUNT_MORPH, MORPH_SPLITS,
+					new EffectsParallel(), EffectsRandom.get().nextLong());
+			ByteBuffer buffer = ByteBuffer.allocateDirect(4 * BAKED_FLOATS
+					* mMorph.getVertexCount());
+			mMorphVertices = buffer.order(ByteOrder.nativeOrder())
+					.asFloatBuffer();
+			mBufferMorph = new EffectsBuffer[2];
+			for (int i = 0; i < 2; ++i) {
+				mBufferMorph[i] = new EffectsBuffer(GLES20.GL_ARRAY_BUFFER,
+						mMorphVertices, GLES20.GL_STREAM_DRAW);
+				mBufferMorph[i].create();
+			}
+		}
+		mMorph.update(SystemClock.uptimeMillis());
+		mMorphVertices.position(0);
+		mMorph.write(mMorphVertices);
+		mMorphVertices.position(0);
+
+		mMorphFrame ^= 1;
+		mBufferMorph[mMorphFrame].upload();
+		drawBakedStrip(mBufferMorph[mMorphFrame], mMorph.getVertexCount());
+	}
+
+	/**
+	 * Draws splines one by one evaluating them in vertex shader, using
+	 * coarsest strip keeping screen space error within tolerance.
+	 */
+	private void renderTessellated() {
+		mShaderSpline.useProgram();
+
+		GLES20.glUniformMatrix4fv(
+				mShaderSpline.getHandle("uModelViewProjectionM"), 1, false,
+				mMatrixModelViewProjection, 0);
+
+		mBufferSpline.bind();
+		mBufferSpline.vertexAttribPointer(
+				mShaderSpline.getHandle("aPosition"), 2, GLES20.GL_FLOAT,
+				false, 0, 0);
+		GLES20.glEnableVertexAttribArray(mShaderSpline.getHandle("aPosition"));
+
+		// Ribbons extend up to 0.1 units sideways in screen space.
+		mCulling.begin(mMatrixModelViewProjection, .1f);
+		mVertexCount = 0;
+		for (float[] ctrl : mSplines) {
+			if (!mCulling.isHullVisible(ctrl, 4)) {
+				continue;
+			}
+			int level = mTessellator.plan(mMatrixModelViewProjection, ctrl);
+			if (level == -1) {
+				continue;
+			}
+			int count = SplineTessellator.getVertexCount(level);
+			GLES20.glUniform3fv(mShaderSpline.getHandle("uCtrl"), 4, ctrl, 0);
+			GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP,
+					SplineTessellator.getFirst(level), count);
+			mVertexCount += count;
+		}
+	}
+
+	/**
+	 * Selects between drawing splines from a static baked vertex buffer
+	 * and evaluating them per spline in vertex shader. Off by default, baked
+	 * splines are always drawn in full without culling or level selection.
+	 */
+	public void setBaked(boolean baked) {
+		mBaked = baked;
+	}
+
+	/**
+	 * Switches between static splines and COUNT_MORPH splines morphing
+	 * between random targets.
+	 */
+	public void setMorphing(boolean morphing) {
+		mMorphing = morphing;
+	}
+
+	/**
+	 * Replaces control points of spline at given index, baked vertices are
+	 * updated before next frame.
+	 */
+	public void setSpline(final int index, float[] ctrl) {
+		final float[] copy = ctrl.clone();
+		queueEvent(new Runnable() {
+			@Override
+			public void run() {
+				mSplines[index] = copy;
+				mBakeDirty = true;
+			}
+		});
+	}
+
 }
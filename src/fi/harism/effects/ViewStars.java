@@ -17,44 +17,104 @@
 package fi.harism.effects;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import android.content.Context;
+import android.util.FloatMath;
 import android.opengl.GLES20;
 import android.opengl.Matrix;
 import android.os.SystemClock;
 
 public class ViewStars extends ViewBase {
 
+	// Streaming star cells; (2 * CELL_RADIUS + 1)^3 * CELL_STARS stars
+	// equals STAR_COUNT.
+	private static final int CELL_RADIUS = 2;
+	private static final float CELL_SIZE = 1f;
+	private static final int CELL_STARS = 16;
+	// Near plane distance, closest stars are drawn largest there.
+	private static final float NEAR = .1f;
+	private static final int STAR_COUNT = 2000;
+	private static final float STAR_SIZE = .01f;
+	// Quad vertex layout; position and corner.
+	private static final int VERTEX_FLOATS = 5;
+	// Streaming camera speed in units per second.
+	private static final float STREAM_SPEED = .3f;
+
 	private EffectsShader mShaderStar = new EffectsShader();
+	private EffectsShader mShaderStarPoint = new EffectsShader();
+	private double mCameraX, mCameraY, mCameraZ;
+	private float[] mCellDepth = new float[STAR_COUNT];
+	private EffectsDepthOrder mCellOrder = new EffectsDepthOrder(STAR_COUNT);
+	private StarCells mCells = new StarCells(CELL_RADIUS, CELL_SIZE,
+			CELL_STARS, EffectsRandom.get().nextLong());
 	private float[] mMatrixView = new float[16];
 	private float[] mMatrixProjection = new float[16];
+	private float[] mMatrixStreamProjection = new float[16];
+	private float[] mMatrixStreamView = new float[16];
 	private float[] mMatrixModelViewProjection = new float[16];
 	private boolean[] mShaderCompilerSupport = new boolean[1];
 	private long mLastRenderTime = -1;
-	private Star[] mStarArray = new Star[2000];
-	private ByteBuffer mBufferVertices;
+	private float mPointScale;
+	private float[] mPointSizeRange = new float[2];
+	private boolean mPointSprites = true;
+	private boolean mPointSpritesSupported;
+	private FloatBuffer mStarData;
+	private EffectsDepthOrder mStarOrder = new EffectsDepthOrder(STAR_COUNT);
+	private float[] mStarPoints = new float[3 * STAR_COUNT];
+	private float[] mStarVertices = new float[4 * VERTEX_FLOATS * STAR_COUNT];
+	private StarField mStars = new StarField(STAR_COUNT, new EffectsParallel(),
+			EffectsRandom.get().nextLong());
+	private boolean mStarsValid;
+	private boolean mStreaming;
+	private float mStreamTime;
+	private EffectsBuffer mBufferStarIndices;
+	private EffectsBuffer mBufferStars;
 
 	public ViewStars(Context context) {
 		super(context);
 
-		for (int i = 0; i < mStarArray.length; ++i) {
-			mStarArray[i] = new Star();
-		}
-
+		// All stars are drawn from one buffer, either as one point or as
+		// one quad per star.
 		final byte[] VERTICES = { -1, 1, -1, -1, 1, 1, 1, -1 };
-		mBufferVertices = ByteBuffer.allocateDirect(2 * 4);
-		mBufferVertices.put(VERTICES).position(0);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(4 * mStarVertices.length);
+		mStarData = buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		mBufferStars = new EffectsBuffer(GLES20.GL_ARRAY_BUFFER, mStarData,
+				GLES20.GL_STREAM_DRAW);
+		buffer = ByteBuffer.allocateDirect(2 * 6 * STAR_COUNT);
+		ShortBuffer indices = buffer.order(ByteOrder.nativeOrder())
+				.asShortBuffer();
+		for (int i = 0; i < STAR_COUNT; ++i) {
+			short index = (short) (i * 4);
+			indices.put(index).put((short) (index + 1))
+					.put((short) (index + 2));
+			indices.put((short) (index + 2)).put((short) (index + 1))
+					.put((short) (index + 3));
+			for (int j = 0; j < 4; ++j) {
+				int offset = (i * 4 + j) * VERTEX_FLOATS;
+				mStarVertices[offset + 3] = VERTICES[j * 2];
+				mStarVertices[offset + 4] = VERTICES[j * 2 + 1];
+			}
+		}
+		indices.position(0);
+		mBufferStarIndices = new EffectsBuffer(
+				GLES20.GL_ELEMENT_ARRAY_BUFFER, indices, GLES20.GL_STATIC_DRAW);
 
 		setEGLContextClientVersion(2);
 		setRenderer(this);
 		setRenderMode(RENDERMODE_CONTINUOUSLY);
 	}
 
+	@Override
+	public int getStateSize() {
+		return 4 + 4 + 4 + 3 * 8 + mStars.getStateSize();
+	}
+
 	@Override
 	public void onDrawFrame(GL10 unused) {
 		GLES20.glClearColor(0f, 0f, 0f, 1f);
@@ -69,46 +129,34 @@ public class ViewStars extends ViewBase {
 
 		long time = SystemClock.uptimeMillis();
 
+		if (!mStarsValid) {
+			mStars.randomize();
+			mStarsValid = true;
+		}
 		if (mLastRenderTime == -1) {
-			for (Star star : mStarArray) {
-				star.randomize();
-				star.mPosition[2] = (float) (Math.random() * 4 - 2);
-			}
 			mLastRenderTime = time;
 		}
 
 		float t = (time - mLastRenderTime) / 1000f;
 		mLastRenderTime = time;
 
-		mShaderStar.useProgram();
-
-		GLES20.glUniformMatrix4fv(
-				mShaderStar.getHandle("uModelViewProjectionM"), 1, false,
-				mMatrixModelViewProjection, 0);
-		GLES20.glUniform1f(mShaderStar.getHandle("uSize"), .01f);
-
-		GLES20.glVertexAttribPointer(mShaderStar.getHandle("aPosition"), 2,
-				GLES20.GL_BYTE, false, 0, mBufferVertices);
-		GLES20.glEnableVertexAttribArray(mShaderStar.getHandle("aPosition"));
-
-		for (Star star : mStarArray) {
-			star.mPosition[2] += star.mSpeed * t;
-			if (star.mPosition[2] > 2) {
-				star.randomize();
-			}
-		}
-
-		Arrays.sort(mStarArray, new Comparator<Star>() {
-			@Override
-			public int compare(Star arg0, Star arg1) {
-				return arg0.mPosition[2] < arg1.mPosition[2] ? -1 : 1;
-			}
-		});
-
-		for (Star star : mStarArray) {
-			GLES20.glUniform3fv(mShaderStar.getHandle("uPosition"), 1,
-					star.mPosition, 0);
-			GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+		if (mStreaming) {
+			updateStream(t);
+			Matrix.multiplyMM(mMatrixModelViewProjection, 0,
+					mMatrixStreamProjection, 0, mMatrixStreamView, 0);
+			renderStars(mCells.mPosX, mCells.mPosY, mCells.mPosZ, mCellOrder);
+		} else {
+			mStars.update(t);
+
+			// Respawned stars are farthest away, rest of the stars keep
+			// nearly the same order as on previous frame.
+			mStarOrder.moveToFront(mStars.getRespawned(),
+					mStars.getRespawnedCount());
+			mStarOrder.sort(mStars.mPosZ);
+
+			Matrix.multiplyMM(mMatrixModelViewProjection, 0,
+					mMatrixProjection, 0, mMatrixView, 0);
+			renderStars(mStars.mPosX, mStars.mPosY, mStars.mPosZ, mStarOrder);
 		}
 
 		GLES20.glDisable(GLES20.GL_BLEND);
@@ -118,11 +166,18 @@ public class ViewStars extends ViewBase {
 	@Override
 	public void onSurfaceChanged(GL10 unused, int width, int height) {
 		float aspect = (float) width / height;
-		Matrix.perspectiveM(mMatrixProjection, 0, 60f, aspect, .1f, 10f);
+		Matrix.perspectiveM(mMatrixProjection, 0, 60f, aspect, NEAR, 10f);
 		Matrix.setLookAtM(mMatrixView, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0);
-		Matrix.multiplyMM(mMatrixModelViewProjection, 0, mMatrixProjection, 0,
-				mMatrixView, 0);
+		// Streaming stars are guaranteed to be resident up to cell range.
+		Matrix.perspectiveM(mMatrixStreamProjection, 0, 60f, aspect, NEAR,
+				mCells.getRange());
 		mLastRenderTime = -1;
+
+		// Quad of STAR_SIZE projects to this many pixels divided by w. Point
+		// sprites are used only if stars at near plane fit in point size
+		// range.
+		mPointScale = STAR_SIZE * mMatrixProjection[5] * height;
+		mPointSpritesSupported = mPointSizeRange[1] >= mPointScale / NEAR;
 	}
 
 	@Override
@@ -138,25 +193,180 @@ public class ViewStars extends ViewBase {
 			return;
 		}
 
+		GLES20.glGetFloatv(GLES20.GL_ALIASED_POINT_SIZE_RANGE, mPointSizeRange,
+				0);
+
+		mBufferStarIndices.create();
+		mBufferStars.create();
+
 		try {
 			String vertexSource = loadRawString(R.raw.star_vs);
 			String fragmentSource = loadRawString(R.raw.star_fs);
 			mShaderStar.setProgram(vertexSource, fragmentSource);
+			fragmentSource = loadRawString(R.raw.star_point_fs);
+			mShaderStarPoint.setProgram(vertexSource, fragmentSource);
 		} catch (Exception ex) {
 			showError(ex.getMessage());
 		}
 	}
 
-	private class Star {
-		public float[] mPosition = new float[3];
-		public float mSpeed;
+	/**
+	 * Renders all stars as point sprites with a single draw call.
+	 */
+	private void renderStarPoints(float[] posX, float[] posY, float[] posZ,
+			EffectsDepthOrder order) {
+		final float[] vertices = mStarPoints;
+		final int count = order.getCount();
+		for (int i = 0, offset = 0; i < count; ++i, offset += 3) {
+			int k = order.get(i);
+			vertices[offset] = posX[k];
+			vertices[offset + 1] = posY[k];
+			vertices[offset + 2] = posZ[k];
+		}
+		mStarData.position(0);
+		mStarData.put(vertices, 0, count * 3).position(0);
+		mBufferStars.upload(count * 3);
+
+		mShaderStarPoint.useProgram();
+		setStarUniforms(mShaderStarPoint);
+		int aPosition = mShaderStarPoint.getHandle("aPosition");
+		int aCorner = mShaderStarPoint.getHandle("aCorner");
+
+		mBufferStars.bind();
+		mBufferStars.vertexAttribPointer(aPosition, 3, GLES20.GL_FLOAT, false,
+				0, 0);
+		GLES20.glEnableVertexAttribArray(aPosition);
+		GLES20.glDisableVertexAttribArray(aCorner);
+		GLES20.glVertexAttrib2f(aCorner, 0f, 0f);
+
+		GLES20.glDrawArrays(GLES20.GL_POINTS, 0, count);
+	}
+
+	/**
+	 * Renders all stars as quads with a single indexed draw call.
+	 */
+	private void renderStarQuads(float[] posX, float[] posY, float[] posZ,
+			EffectsDepthOrder order) {
+		final float[] vertices = mStarVertices;
+		final int count = order.getCount();
+		for (int i = 0, offset = 0; i < count; ++i) {
+			int k = order.get(i);
+			for (int j = 0; j < 4; ++j, offset += VERTEX_FLOATS) {
+				vertices[offset] = posX[k];
+				vertices[offset + 1] = posY[k];
+				vertices[offset + 2] = posZ[k];
+			}
+		}
+		mStarData.position(0);
+		mStarData.put(vertices, 0, count * 4 * VERTEX_FLOATS).position(0);
+		mBufferStars.upload(count * 4 * VERTEX_FLOATS);
+
+		mShaderStar.useProgram();
+		setStarUniforms(mShaderStar);
+		int aPosition = mShaderStar.getHandle("aPosition");
+		int aCorner = mShaderStar.getHandle("aCorner");
+
+		final int stride = 4 * VERTEX_FLOATS;
+		mBufferStars.bind();
+		mBufferStars.vertexAttribPointer(aPosition, 3, GLES20.GL_FLOAT, false,
+				stride, 0);
+		GLES20.glEnableVertexAttribArray(aPosition);
+		mBufferStars.vertexAttribPointer(aCorner, 2, GLES20.GL_FLOAT, false,
+				stride, 4 * 3);
+		GLES20.glEnableVertexAttribArray(aCorner);
+
+		mBufferStarIndices.bind();
+		mBufferStarIndices.drawElements(GLES20.GL_TRIANGLES, count * 6,
+				GLES20.GL_UNSIGNED_SHORT, 0);
+	}
+
+	/**
+	 * Renders stars in given order, as point sprites if they are enabled and
+	 * supported and as quads otherwise.
+	 */
+	private void renderStars(float[] posX, float[] posY, float[] posZ,
+			EffectsDepthOrder order) {
+		if (mPointSprites && mPointSpritesSupported) {
+			renderStarPoints(posX, posY, posZ, order);
+		} else {
+			renderStarQuads(posX, posY, posZ, order);
+		}
+	}
+
+	@Override
+	public void restoreState(ByteBuffer buffer) {
+		mStarsValid = buffer.getInt() != 0;
+		mStreaming = buffer.getInt() != 0;
+		mStreamTime = buffer.getFloat();
+		mCameraX = buffer.getDouble();
+		mCameraY = buffer.getDouble();
+		mCameraZ = buffer.getDouble();
+		mStars.restoreState(buffer);
+	}
+
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.putInt(mStarsValid ? 1 : 0);
+		buffer.putInt(mStreaming ? 1 : 0);
+		buffer.putFloat(mStreamTime);
+		buffer.putDouble(mCameraX).putDouble(mCameraY).putDouble(mCameraZ);
+		mStars.saveState(buffer);
+	}
+
+	/**
+	 * Enables or disables streaming mode. While streaming camera travels
+	 * freely through an infinite star field instead of stars flying
+	 * towards a fixed camera.
+	 */
+	public void setStreaming(boolean streaming) {
+		mStreaming = streaming;
+	}
+
+	/**
+	 * Sets uniforms shared by point and quad star shaders.
+	 */
+	private void setStarUniforms(EffectsShader shader) {
+		GLES20.glUniformMatrix4fv(shader.getHandle("uModelViewProjectionM"),
+				1, false, mMatrixModelViewProjection, 0);
+		GLES20.glUniform1f(shader.getHandle("uSize"), STAR_SIZE);
+		GLES20.glUniform1f(shader.getHandle("uPointScale"), mPointScale);
+	}
+
+	/**
+	 * Enables or disables point sprite rendering. Stars are drawn as quads
+	 * if disabled, or if device does not support large enough points.
+	 */
+	public void setPointSprites(boolean enabled) {
+		mPointSprites = enabled;
+	}
 
-		public void randomize() {
-			mPosition[0] = (float) (Math.random() * 2 - 1);
-			mPosition[1] = (float) (Math.random() * 2 - 1);
-			mPosition[2] = -2f;
-			mSpeed = (float) (Math.random() * 0.2 + 0.2);
+	/**
+	 * Moves streaming camera along slowly turning heading, updates star
+	 * cells around it and orders stars back to front along view direction.
+	 */
+	private void updateStream(float t) {
+		mStreamTime += t;
+		float yaw = mStreamTime * .05f;
+		float pitch = .3f * FloatMath.sin(mStreamTime * .03f);
+		float dirX = FloatMath.cos(pitch) * FloatMath.sin(yaw);
+		float dirY = FloatMath.sin(pitch);
+		float dirZ = -FloatMath.cos(pitch) * FloatMath.cos(yaw);
+		mCameraX += dirX * STREAM_SPEED * t;
+		mCameraY += dirY * STREAM_SPEED * t;
+		mCameraZ += dirZ * STREAM_SPEED * t;
+
+		// Stars are given relative to camera, view only rotates.
+		mCells.update(mCameraX, mCameraY, mCameraZ);
+		Matrix.setLookAtM(mMatrixStreamView, 0, 0, 0, 0, dirX, dirY, dirZ, 0,
+				1, 0);
+
+		final float[] posX = mCells.mPosX;
+		final float[] posY = mCells.mPosY;
+		final float[] posZ = mCells.mPosZ;
+		for (int i = 0; i < mCellDepth.length; ++i) {
+			mCellDepth[i] = -(posX[i] * dirX + posY[i] * dirY + posZ[i] * dirZ);
 		}
+		mCellOrder.sort(mCellDepth);
 	}
 
 }
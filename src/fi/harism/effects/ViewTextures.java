@@ -38,7 +38,7 @@ import android.os.SystemClock;
  */
 public class ViewTextures extends ViewBase {
 
-	private ByteBuffer mBufferQuad;
+	private EffectsBuffer mBufferQuad;
 	private Matrix mMatrixBackground = new Matrix();
 	private Matrix mMatrixForeground = new Matrix();
 	private Matrix mMatrixForegroundAnim = new Matrix();
@@ -52,8 +52,10 @@ public class ViewTextures extends ViewBase {
 
 		// Full view quad buffer.
 		final byte[] QUAD = { -1, 1, -1, -1, 1, 1, 1, -1 };
-		mBufferQuad = ByteBuffer.allocateDirect(8);
-		mBufferQuad.put(QUAD).position(0);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(8);
+		buffer.put(QUAD).position(0);
+		mBufferQuad = new EffectsBuffer(GLES20.GL_ARRAY_BUFFER, buffer,
+				GLES20.GL_STATIC_DRAW);
 
 		setEGLContextClientVersion(2);
 		setRenderer(this);
@@ -61,6 +63,11 @@ public class ViewTextures extends ViewBase {
 		queueEvent(mWorker);
 	}
 
+	@Override
+	public int getStateSize() {
+		return 16 + 4 * 20;
+	}
+
 	@Override
 	public void onDrawFrame(GL10 unused) {
 
@@ -90,8 +97,9 @@ public class ViewTextures extends ViewBase {
 		GLES20.glUniformMatrix3fv(mShaderTextures.getHandle("uForegroundM"), 1,
 				false, matrix, 0);
 
-		GLES20.glVertexAttribPointer(mShaderTextures.getHandle("aPosition"), 2,
-				GLES20.GL_BYTE, false, 0, mBufferQuad);
+		mBufferQuad.bind();
+		mBufferQuad.vertexAttribPointer(mShaderTextures.getHandle("aPosition"),
+				2, GLES20.GL_BYTE, false, 0, 0);
 		GLES20.glEnableVertexAttribArray(mShaderTextures.getHandle("aPosition"));
 		GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
 
@@ -156,6 +164,8 @@ public class ViewTextures extends ViewBase {
 			return;
 		}
 
+		mBufferQuad.create();
+
 		try {
 			String vertexSource, fragmentSource;
 			vertexSource = loadRawString(R.raw.textures_vs);
@@ -166,6 +176,39 @@ public class ViewTextures extends ViewBase {
 		}
 	}
 
+	@Override
+	public void restoreState(ByteBuffer buffer) {
+		final Worker w = mWorker;
+		w.mStepper.setStepCount(buffer.getLong());
+		w.mRenderTime = buffer.getLong();
+		EffectsSnapshot.getFloats(buffer, w.mAnimCurr, w.mAnimCurr.length);
+		EffectsSnapshot.getFloats(buffer, w.mAnimPrev, w.mAnimPrev.length);
+		w.mPivotSource.x = buffer.getFloat();
+		w.mPivotSource.y = buffer.getFloat();
+		w.mPivotTarget.x = buffer.getFloat();
+		w.mPivotTarget.y = buffer.getFloat();
+		w.mRotateSource = buffer.getFloat();
+		w.mRotateTarget = buffer.getFloat();
+		w.mTranslateSource.x = buffer.getFloat();
+		w.mTranslateSource.y = buffer.getFloat();
+		w.mTranslateTarget.x = buffer.getFloat();
+		w.mTranslateTarget.y = buffer.getFloat();
+	}
+
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		final Worker w = mWorker;
+		buffer.putLong(w.mStepper.getStepCount());
+		buffer.putLong(w.mRenderTime);
+		EffectsSnapshot.putFloats(buffer, w.mAnimCurr, w.mAnimCurr.length);
+		EffectsSnapshot.putFloats(buffer, w.mAnimPrev, w.mAnimPrev.length);
+		buffer.putFloat(w.mPivotSource.x).putFloat(w.mPivotSource.y);
+		buffer.putFloat(w.mPivotTarget.x).putFloat(w.mPivotTarget.y);
+		buffer.putFloat(w.mRotateSource).putFloat(w.mRotateTarget);
+		buffer.putFloat(w.mTranslateSource.x).putFloat(w.mTranslateSource.y);
+		buffer.putFloat(w.mTranslateTarget.x).putFloat(w.mTranslateTarget.y);
+	}
+
 	/**
 	 * Updates texture with given values plus alters matrix.
 	 */
@@ -205,49 +248,74 @@ public class ViewTextures extends ViewBase {
 	}
 
 	/**
-	 * Worker runnable.
+	 * Worker runnable. Animation is run in fixed size steps and rendered
+	 * transformation is interpolated between the two latest steps.
 	 */
 	private class Worker implements Runnable {
 
+		// Animated values; translate x, y, pivot x, y and rotation.
+		private float[] mAnimCurr = new float[5];
+		private float[] mAnimPrev = new float[5];
 		private PointF mPivotSource = new PointF();
 		private PointF mPivotTarget = new PointF();
-		private long mRenderTime;
+		private long mRenderTime = -2000;
 		private float mRotateSource;
 		private float mRotateTarget;
+		private EffectsStepper mStepper = new EffectsStepper(60, 5);
 		private PointF mTranslateSource = new PointF();
 		private PointF mTranslateTarget = new PointF();
 
 		@Override
 		public void run() {
 			long time = SystemClock.uptimeMillis();
+			for (int steps = mStepper.advance(time); steps > 0; --steps) {
+				System.arraycopy(mAnimCurr, 0, mAnimPrev, 0, mAnimCurr.length);
+				step(mStepper.nextStep());
+			}
+
+			float t = mStepper.getAlpha();
+			float tx = mAnimPrev[0] + (mAnimCurr[0] - mAnimPrev[0]) * t;
+			float ty = mAnimPrev[1] + (mAnimCurr[1] - mAnimPrev[1]) * t;
+			float px = mAnimPrev[2] + (mAnimCurr[2] - mAnimPrev[2]) * t;
+			float py = mAnimPrev[3] + (mAnimCurr[3] - mAnimPrev[3]) * t;
+			float r = mAnimPrev[4] + (mAnimCurr[4] - mAnimPrev[4]) * t;
+
+			mMatrixForegroundAnim.set(mMatrixForeground);
+			mMatrixForegroundAnim.postTranslate(tx, ty);
+			mMatrixForegroundAnim.preRotate(r, px, py);
+
+			requestRender();
+		}
+
+		/**
+		 * Runs one animation step, time is simulation time in milliseconds.
+		 */
+		private void step(long time) {
 			if (time - mRenderTime > 2000) {
+				final EffectsRandom random = EffectsRandom.get();
 				mTranslateSource.set(mTranslateTarget);
-				mTranslateTarget.x = (float) (Math.random() * 0.5 - 0.25);
-				mTranslateTarget.y = (float) (Math.random() * 0.5 - 0.25);
+				mTranslateTarget.x = random.nextFloat(-0.25f, 0.25f);
+				mTranslateTarget.y = random.nextFloat(-0.25f, 0.25f);
 				mPivotSource.set(mPivotTarget);
-				mPivotTarget.x = (float) (Math.random() * 2.0 - 1.0);
-				mPivotTarget.y = (float) (Math.random() * 2.0 - 1.0);
+				mPivotTarget.x = random.nextFloat(-1f, 1f);
+				mPivotTarget.y = random.nextFloat(-1f, 1f);
 				mRotateSource = mRotateTarget;
-				mRotateTarget = (float) (Math.random() * 120 - 60);
+				mRotateTarget = random.nextFloat(-60f, 60f);
 				mRenderTime = time;
 			}
 
 			float t = (time - mRenderTime) / 2000f;
 			t = t * t * (3 - 2 * t);
 
-			float tx = mTranslateSource.x
+			mAnimCurr[0] = mTranslateSource.x
 					+ (mTranslateTarget.x - mTranslateSource.x) * t;
-			float ty = mTranslateSource.y
+			mAnimCurr[1] = mTranslateSource.y
 					+ (mTranslateTarget.y - mTranslateSource.y) * t;
-			float px = mPivotSource.x + (mPivotTarget.x - mPivotSource.x) * t;
-			float py = mPivotSource.y + (mPivotTarget.y - mPivotSource.y) * t;
-			float r = mRotateSource + (mRotateTarget - mRotateSource) * t;
-
-			mMatrixForegroundAnim.set(mMatrixForeground);
-			mMatrixForegroundAnim.postTranslate(tx, ty);
-			mMatrixForegroundAnim.preRotate(r, px, py);
-
-			requestRender();
+			mAnimCurr[2] = mPivotSource.x + (mPivotTarget.x - mPivotSource.x)
+					* t;
+			mAnimCurr[3] = mPivotSource.y + (mPivotTarget.y - mPivotSource.y)
+					* t;
+			mAnimCurr[4] = mRotateSource + (mRotateTarget - mRotateSource) * t;
 		}
 	}
 }
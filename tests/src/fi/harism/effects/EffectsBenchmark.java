@@ -0,0 +1,75 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Minimal timing harness for benchmark test cases. Every measurement warms
+ * the task up first and then returns the median of repeated runs. Results
+ * are printed to standard output, which ends up in logcat on a device.
+ */
+public final class EffectsBenchmark {
+
+	// Time spent measuring each task, at least MIN_RUNS runs are measured.
+	private static final long MEASURE_NANOS = 300000000L;
+	private static final int MIN_RUNS = 5;
+	// Time spent running task before measuring it.
+	private static final long WARMUP_NANOS = 300000000L;
+
+	private EffectsBenchmark() {
+	}
+
+	/**
+	 * Prints formatted result line prefixed with given benchmark name.
+	 */
+	public static void report(String name, String format, Object... args) {
+		System.out.println(name + ": "
+				+ String.format(Locale.US, format, args));
+	}
+
+	/**
+	 * Runs given task repeatedly and returns its median run time in
+	 * nanoseconds.
+	 */
+	public static long time(Runnable task) {
+		long now = System.nanoTime();
+		final long warmupEnd = now + WARMUP_NANOS;
+		while (now < warmupEnd) {
+			task.run();
+			now = System.nanoTime();
+		}
+
+		long[] times = new long[16];
+		int runs = 0;
+		final long measureEnd = now + MEASURE_NANOS;
+		while (runs < MIN_RUNS || now < measureEnd) {
+			if (runs == times.length) {
+				times = Arrays.copyOf(times, runs * 2);
+			}
+			task.run();
+			long end = System.nanoTime();
+			times[runs++] = end - now;
+			now = end;
+		}
+		Arrays.sort(times, 0, runs);
+		return times[runs / 2];
+	}
+
+}
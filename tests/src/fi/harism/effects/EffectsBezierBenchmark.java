@@ -0,0 +1,163 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import junit.framework.TestCase;
+
+/**
+ * Plain timing harness for EffectsBezier evaluators, JMH is not available
+ * for Android test projects.
+ */
+public class EffectsBezierBenchmark extends TestCase {
+
+	private static final int COUNT_CURVES = 1000;
+	private static final int DIM = 3;
+	private static final int POINTS = 40;
+
+	private final EffectsBezier mBezier = new EffectsBezier();
+	private final float[] mOut = new float[3 * DIM];
+	private final float[] mSink = new float[1];
+
+	/**
+	 * Returns random control points for COUNT_CURVES curves of given degree.
+	 */
+	private static float[] createCurves(int degree) {
+		float ctrl[] = new float[COUNT_CURVES * (degree + 1) * DIM];
+		new EffectsRandom(9).fill(ctrl, 0, ctrl.length, -1f, 1f);
+		return ctrl;
+	}
+
+	/**
+	 * Reports median time per call of given task doing given amount of
+	 * calls per run.
+	 */
+	private static void report(String name, int calls, Runnable task) {
+		long nanos = EffectsBenchmark.time(task);
+		EffectsBenchmark.report("EffectsBezier", "%-28s %8.1f ns per call",
+				name, (double) nanos / calls);
+	}
+
+	public void testCurvePoints() {
+		ByteBuffer bytes = ByteBuffer.allocateDirect(4 * DIM * POINTS);
+		final FloatBuffer buffer = bytes.order(ByteOrder.nativeOrder())
+				.asFloatBuffer();
+		for (final int degree : new int[] { 2, 3, 7 }) {
+			final float ctrl[] = createCurves(degree);
+			final int size = (degree + 1) * DIM;
+			long casteljau = EffectsBenchmark.time(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < COUNT_CURVES; ++i) {
+						buffer.position(0);
+						for (int j = 0; j < POINTS; ++j) {
+							mBezier.evaluate(ctrl, i * size, degree, DIM,
+									(float) j / (POINTS - 1), mOut, 0);
+							buffer.put(mOut, 0, DIM);
+						}
+					}
+				}
+			});
+			long forward = EffectsBenchmark.time(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < COUNT_CURVES; ++i) {
+						buffer.position(0);
+						mBezier.forwardDifference(ctrl, i * size, degree,
+								DIM, POINTS - 1, buffer, DIM);
+					}
+				}
+			});
+			EffectsBenchmark.report("EffectsBezier",
+					"degree %d, %d curves x %d points, de Casteljau %.2f ms, "
+							+ "forward differences %.2f ms", degree,
+					COUNT_CURVES, POINTS, casteljau / 1e6, forward / 1e6);
+		}
+	}
+
+	public void testEvaluators() {
+		final float curves[] = createCurves(3);
+		final float patches[] = createCurves(15);
+		final float min[] = new float[DIM], max[] = new float[DIM];
+		final float halves[] = new float[8 * DIM];
+		report("evaluate cubic", COUNT_CURVES, new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < COUNT_CURVES; ++i) {
+					mBezier.evaluate(curves, i * 4 * DIM, 3, DIM, 0.3f, mOut,
+							0);
+				}
+				mSink[0] += mOut[0];
+			}
+		});
+		report("derivative cubic", COUNT_CURVES, new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < COUNT_CURVES; ++i) {
+					mBezier.derivative(curves, i * 4 * DIM, 3, DIM, 0.3f,
+							mOut, 0);
+				}
+				mSink[0] += mOut[0];
+			}
+		});
+		report("subdivide cubic", COUNT_CURVES, new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < COUNT_CURVES; ++i) {
+					mBezier.subdivide(curves, i * 4 * DIM, 3, DIM, 0.3f,
+							halves, 0, halves, 4 * DIM);
+				}
+				mSink[0] += halves[0];
+			}
+		});
+		report("bounds cubic", COUNT_CURVES, new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < COUNT_CURVES; ++i) {
+					mBezier.bounds(curves, i * 4 * DIM, 3, DIM, min, max);
+				}
+				mSink[0] += min[0];
+			}
+		});
+		report("hull bounds cubic", COUNT_CURVES, new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < COUNT_CURVES; ++i) {
+					EffectsBezier.hullBounds(curves, i * 4 * DIM, 4, DIM,
+							min, max);
+				}
+				mSink[0] += min[0];
+			}
+		});
+		// Bicubic patches have 16 control points, same as degree 15 curves.
+		report("evaluatePatch bicubic", COUNT_CURVES, new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < COUNT_CURVES; ++i) {
+					mBezier.evaluatePatch(patches, i * 16 * DIM, 3, 3, DIM,
+							0.3f, 0.6f, mOut, 0);
+				}
+				mSink[0] += mOut[0];
+			}
+		});
+	}
+
+}
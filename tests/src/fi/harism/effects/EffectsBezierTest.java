@@ -0,0 +1,189 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Evaluation, subdivision, bounds and forward differencing of EffectsBezier
+ * compared against Bernstein form.
+ */
+public class EffectsBezierTest extends TestCase {
+
+	private final EffectsBezier mBezier = new EffectsBezier();
+	private final Random mRandom = new Random(1);
+
+	/**
+	 * Returns component k of curve at t from Bernstein polynomials.
+	 */
+	private static double bernstein(float[] ctrl, int offset, int degree,
+			int dim, int k, double t) {
+		double sum = 0;
+		long binomial = 1;
+		for (int i = 0; i <= degree; ++i) {
+			sum += binomial * Math.pow(t, i) * Math.pow(1 - t, degree - i)
+					* ctrl[offset + i * dim + k];
+			binomial = binomial * (degree - i) / (i + 1);
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns given number of random floats within [-1, 1].
+	 */
+	private float[] random(int count) {
+		float values[] = new float[count];
+		for (int i = 0; i < count; ++i) {
+			values[i] = mRandom.nextFloat() * 2 - 1;
+		}
+		return values;
+	}
+
+	public void testBoundsContainCurve() {
+		float min[] = new float[3], max[] = new float[3], p[] = new float[3];
+		for (int degree = 0; degree <= EffectsBezier.MAX_DEGREE; ++degree) {
+			for (int n = 0; n < 20; ++n) {
+				float ctrl[] = random((degree + 1) * 3);
+				mBezier.bounds(ctrl, 0, degree, 3, min, max);
+				for (int i = 0; i <= 100; ++i) {
+					mBezier.evaluate(ctrl, 0, degree, 3, i / 100f, p, 0);
+					for (int k = 0; k < 3; ++k) {
+						assertTrue(p[k] >= min[k] - 1e-5f);
+						assertTrue(p[k] <= max[k] + 1e-5f);
+					}
+				}
+			}
+		}
+	}
+
+	public void testBoundsExactUpToCubic() {
+		float min[] = new float[2], max[] = new float[2], p[] = new float[2];
+		for (int degree = 1; degree <= 3; ++degree) {
+			for (int n = 0; n < 20; ++n) {
+				float ctrl[] = random((degree + 1) * 2);
+				mBezier.bounds(ctrl, 0, degree, 2, min, max);
+				float sampledMin[] = { Float.MAX_VALUE, Float.MAX_VALUE };
+				float sampledMax[] = { -Float.MAX_VALUE, -Float.MAX_VALUE };
+				for (int i = 0; i <= 10000; ++i) {
+					mBezier.evaluate(ctrl, 0, degree, 2, i / 10000f, p, 0);
+					for (int k = 0; k < 2; ++k) {
+						sampledMin[k] = Math.min(sampledMin[k], p[k]);
+						sampledMax[k] = Math.max(sampledMax[k], p[k]);
+					}
+				}
+				for (int k = 0; k < 2; ++k) {
+					assertEquals(sampledMin[k], min[k], 1e-4f);
+					assertEquals(sampledMax[k], max[k], 1e-4f);
+				}
+			}
+		}
+	}
+
+	public void testBoundsOfPointAtArrayEnd() {
+		float ctrl[] = { 5, 6, 1, 2 };
+		float min[] = new float[2], max[] = new float[2];
+		mBezier.bounds(ctrl, 2, 0, 2, min, max);
+		assertEquals(1f, min[0]);
+		assertEquals(2f, min[1]);
+		assertEquals(1f, max[0]);
+		assertEquals(2f, max[1]);
+	}
+
+	public void testDerivative() {
+		float out[] = new float[3];
+		for (int degree = 1; degree <= EffectsBezier.MAX_DEGREE; ++degree) {
+			float ctrl[] = random((degree + 1) * 3);
+			for (int i = 0; i <= 10; ++i) {
+				double t = i / 10.0, h = 1e-6;
+				mBezier.derivative(ctrl, 0, degree, 3, (float) t, out, 0);
+				for (int k = 0; k < 3; ++k) {
+					double d = bernstein(ctrl, 0, degree, 3, k, t + h)
+							- bernstein(ctrl, 0, degree, 3, k, t - h);
+					d /= 2 * h;
+					assertEquals(d, out[k], 1e-3);
+				}
+			}
+		}
+	}
+
+	public void testEvaluate() {
+		float out[] = new float[4];
+		for (int degree = 0; degree <= EffectsBezier.MAX_DEGREE; ++degree) {
+			for (int dim = 1; dim <= EffectsBezier.MAX_DIM; ++dim) {
+				float ctrl[] = random(2 + (degree + 1) * dim);
+				for (int i = 0; i <= 10; ++i) {
+					float t = i / 10f;
+					mBezier.evaluate(ctrl, 2, degree, dim, t, out, 0);
+					for (int k = 0; k < dim; ++k) {
+						assertEquals(bernstein(ctrl, 2, degree, dim, k, t),
+								out[k], 1e-5);
+					}
+				}
+			}
+		}
+	}
+
+	public void testForwardDifference() {
+		final int segments = 1000;
+		for (int degree = 1; degree <= EffectsBezier.MAX_DEGREE; ++degree) {
+			float ctrl[] = random((degree + 1) * 3);
+			FloatBuffer buffer = FloatBuffer.allocate((segments + 1) * 4 + 1);
+			buffer.position(1);
+			mBezier.forwardDifference(ctrl, 0, degree, 3, segments, buffer,
+					4);
+			assertEquals(1 + (segments + 1) * 4, buffer.position());
+			for (int i = 0; i <= segments; ++i) {
+				double t = (double) i / segments;
+				for (int k = 0; k < 3; ++k) {
+					assertEquals("degree " + degree + " point " + i,
+							bernstein(ctrl, 0, degree, 3, k, t),
+							buffer.get(1 + i * 4 + k), 1e-6);
+				}
+			}
+		}
+	}
+
+	public void testSubdivide() {
+		float p[] = new float[3], q[] = new float[3];
+		for (int degree = 1; degree <= EffectsBezier.MAX_DEGREE; ++degree) {
+			float ctrl[] = random((degree + 1) * 3);
+			float left[] = new float[ctrl.length];
+			float right[] = ctrl.clone();
+			float t = 0.3f;
+			// Right output shares its array with input.
+			mBezier.subdivide(right, 0, degree, 3, t, left, 0, right, 0);
+			for (int i = 0; i <= 10; ++i) {
+				float s = i / 10f;
+				mBezier.evaluate(ctrl, 0, degree, 3, s * t, p, 0);
+				mBezier.evaluate(left, 0, degree, 3, s, q, 0);
+				for (int k = 0; k < 3; ++k) {
+					assertEquals(p[k], q[k], 1e-5f);
+				}
+				mBezier.evaluate(ctrl, 0, degree, 3, t + s * (1 - t), p, 0);
+				mBezier.evaluate(right, 0, degree, 3, s, q, 0);
+				for (int k = 0; k < 3; ++k) {
+					assertEquals(p[k], q[k], 1e-5f);
+				}
+			}
+		}
+	}
+
+}
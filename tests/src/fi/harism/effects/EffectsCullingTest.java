@@ -0,0 +1,130 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+
+/**
+ * Frustum and back face culling of EffectsCulling with a camera at
+ * (0, 0, 3) looking towards origin.
+ */
+public class EffectsCullingTest extends TestCase {
+
+	private static final float EYE[] = { 0, 0, 3 };
+
+	/**
+	 * Returns points of a cube with given center and half size.
+	 */
+	private static float[] box(float x, float y, float z, float size) {
+		float points[] = new float[8 * 3];
+		for (int i = 0; i < 8; ++i) {
+			points[i * 3] = x + ((i & 1) == 0 ? -size : size);
+			points[i * 3 + 1] = y + ((i & 2) == 0 ? -size : size);
+			points[i * 3 + 2] = z + ((i & 4) == 0 ? -size : size);
+		}
+		return points;
+	}
+
+	/**
+	 * Returns culling started with 90 degree perspective camera, near and
+	 * far planes at distance 1 and 10.
+	 */
+	private static EffectsCulling camera(float margin) {
+		float near = 1, far = 10;
+		float mvp[] = new float[16];
+		mvp[0] = mvp[5] = 1;
+		mvp[10] = (far + near) / (near - far);
+		mvp[11] = -1;
+		mvp[14] = 2 * far * near / (near - far);
+		// View translation by -EYE[2] along z.
+		for (int j = 0; j < 4; ++j) {
+			mvp[12 + j] -= EYE[2] * mvp[8 + j];
+		}
+		EffectsCulling culling = new EffectsCulling();
+		culling.begin(mvp, margin);
+		return culling;
+	}
+
+	/**
+	 * Returns 3x3 grid patch on z = 0 plane, with normal Pv x Pu pointing
+	 * towards +z if front is true.
+	 */
+	private static float[] patch(boolean front) {
+		float ctrl[] = new float[9 * 3];
+		for (int r = 0; r < 3; ++r) {
+			for (int c = 0; c < 3; ++c) {
+				int i = (r * 3 + c) * 3;
+				ctrl[i] = front ? 1 - c : c - 1;
+				ctrl[i + 1] = r - 1;
+			}
+		}
+		return ctrl;
+	}
+
+	public void testBackFacingPatch() {
+		EffectsCulling culling = camera(0);
+		assertTrue(culling.isPatchVisible(patch(true), 3, 3, EYE));
+		assertFalse(culling.isPatchVisible(patch(false), 3, 3, EYE));
+		assertEquals(1, culling.getVisibleCount());
+		assertEquals(1, culling.getCulledCount());
+	}
+
+	public void testBentPatchPartlyFacingEye() {
+		// Back facing patch with one edge folded towards eye.
+		float ctrl[] = patch(false);
+		for (int r = 0; r < 3; ++r) {
+			int i = (r * 3 + 2) * 3;
+			ctrl[i] = 0;
+			ctrl[i + 2] = 1;
+		}
+		assertTrue(camera(0).isPatchVisible(ctrl, 3, 3, EYE));
+	}
+
+	public void testFrustumPlanes() {
+		EffectsCulling culling = camera(0);
+		// Inside.
+		assertTrue(culling.isHullVisible(box(0, 0, 0, 0.5f), 8));
+		// Behind eye and in front of near plane.
+		assertFalse(culling.isHullVisible(box(0, 0, 5, 0.5f), 8));
+		assertFalse(culling.isHullVisible(box(0, 0, 2.5f, 0.2f), 8));
+		// Beyond far plane.
+		assertFalse(culling.isHullVisible(box(0, 0, -9, 0.5f), 8));
+		// Frustum half width is 3.5 at far side of boxes.
+		assertFalse(culling.isHullVisible(box(-5, 0, 0, 0.5f), 8));
+		assertFalse(culling.isHullVisible(box(5, 0, 0, 0.5f), 8));
+		assertFalse(culling.isHullVisible(box(0, -5, 0, 0.5f), 8));
+		assertFalse(culling.isHullVisible(box(0, 5, 0, 0.5f), 8));
+		// Straddling left plane.
+		assertTrue(culling.isHullVisible(box(-3, 0, 0, 0.5f), 8));
+		assertEquals(2, culling.getVisibleCount());
+		assertEquals(7, culling.getCulledCount());
+
+		// Counters restart on next frame.
+		culling = camera(0);
+		assertEquals(0, culling.getVisibleCount());
+		assertEquals(0, culling.getCulledCount());
+	}
+
+	public void testMargin() {
+		// Just outside right plane, within 0.1 NDC margin.
+		float box[] = box(3.3f, 0, 0, 0.1f);
+		assertFalse(camera(0).isHullVisible(box, 8));
+		assertTrue(camera(0.1f).isHullVisible(box, 8));
+	}
+
+}
@@ -0,0 +1,113 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import junit.framework.TestCase;
+
+/**
+ * Per frame cost of moving stars and ordering them by depth, incremental
+ * EffectsDepthOrder against sorting star objects with Arrays.sort as
+ * ViewStars used to do.
+ */
+public class EffectsDepthOrderBenchmark extends TestCase {
+
+	private static final int[] COUNTS = { 2000, 100000, 1000000 };
+	private static final float STEP = 1f / 60f;
+
+	/**
+	 * Star object as it was stored before StarField.
+	 */
+	private static final class Star {
+		public float[] mPosition = new float[3];
+		public float mSpeed;
+
+		public void randomize(EffectsRandom random) {
+			mPosition[0] = random.nextFloat(-1f, 1f);
+			mPosition[1] = random.nextFloat(-1f, 1f);
+			mPosition[2] = StarField.FAR;
+			mSpeed = random.nextFloat(0.2f, 0.4f);
+		}
+	}
+
+	/**
+	 * Returns median nanoseconds per frame moving and sorting star objects.
+	 */
+	private static long timeArraysSort(int count) {
+		final EffectsRandom random = new EffectsRandom(6);
+		final Star[] stars = new Star[count];
+		for (int i = 0; i < count; ++i) {
+			stars[i] = new Star();
+			stars[i].randomize(random);
+			stars[i].mPosition[2] = random.nextFloat(StarField.FAR,
+					StarField.NEAR);
+		}
+		// Previous comparator never returned 0, which breaks the contract
+		// for the equal depths of respawned stars.
+		final Comparator<Star> comparator = new Comparator<Star>() {
+			@Override
+			public int compare(Star arg0, Star arg1) {
+				return Float.compare(arg0.mPosition[2], arg1.mPosition[2]);
+			}
+		};
+		return EffectsBenchmark.time(new Runnable() {
+			@Override
+			public void run() {
+				for (Star star : stars) {
+					star.mPosition[2] += star.mSpeed * STEP;
+					if (star.mPosition[2] > StarField.NEAR) {
+						star.randomize(random);
+					}
+				}
+				Arrays.sort(stars, comparator);
+			}
+		});
+	}
+
+	/**
+	 * Returns median nanoseconds per frame updating star field and its
+	 * depth order as ViewStars does.
+	 */
+	private static long timeDepthOrder(int count) {
+		final StarField stars = new StarField(count, new EffectsParallel(1), 6);
+		final EffectsDepthOrder order = new EffectsDepthOrder(count);
+		stars.randomize();
+		return EffectsBenchmark.time(new Runnable() {
+			@Override
+			public void run() {
+				stars.update(STEP);
+				order.moveToFront(stars.getRespawned(),
+						stars.getRespawnedCount());
+				order.sort(stars.mPosZ);
+			}
+		});
+	}
+
+	public void testAgainstArraysSort() {
+		for (int count : COUNTS) {
+			long incremental = timeDepthOrder(count);
+			long sorted = timeArraysSort(count);
+			EffectsBenchmark.report("EffectsDepthOrder",
+					"%7d stars, incremental %8.3f ms, Arrays.sort %8.3f ms",
+					count, incremental / 1e6, sorted / 1e6);
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Ordering, stability and radix fallback of EffectsDepthOrder.
+ */
+public class EffectsDepthOrderTest extends TestCase {
+
+	/**
+	 * Asserts order is ascending by key and equal keys are in given
+	 * previous order.
+	 */
+	private void assertStableOrder(EffectsDepthOrder order, float[] keys,
+			int[] previous) {
+		int rank[] = new int[previous.length];
+		for (int i = 0; i < previous.length; ++i) {
+			rank[previous[i]] = i;
+		}
+		for (int i = 1; i < order.getCount(); ++i) {
+			int a = order.get(i - 1);
+			int b = order.get(i);
+			assertTrue(keys[a] <= keys[b]);
+			if (keys[a] == keys[b]) {
+				assertTrue(rank[a] < rank[b]);
+			}
+		}
+	}
+
+	/**
+	 * Returns current order as an array.
+	 */
+	private int[] copyOrder(EffectsDepthOrder order) {
+		int copy[] = new int[order.getCount()];
+		for (int i = 0; i < copy.length; ++i) {
+			copy[i] = order.get(i);
+		}
+		return copy;
+	}
+
+	public void testMoveToFront() {
+		EffectsDepthOrder order = new EffectsDepthOrder(6);
+		order.moveToFront(new int[] { 4, 1 }, 2);
+		int expected[] = { 1, 4, 0, 2, 3, 5 };
+		for (int i = 0; i < expected.length; ++i) {
+			assertEquals(expected[i], order.get(i));
+		}
+	}
+
+	public void testNearlySortedIsStable() {
+		Random random = new Random(1);
+		float keys[] = new float[1000];
+		for (int i = 0; i < keys.length; ++i) {
+			// Few distinct values so that ties are common.
+			keys[i] = random.nextInt(50) - 25;
+		}
+		EffectsDepthOrder order = new EffectsDepthOrder(keys.length);
+		order.radixSort(keys);
+		for (int frame = 0; frame < 20; ++frame) {
+			int previous[] = copyOrder(order);
+			for (int i = 0; i < 10; ++i) {
+				int index = random.nextInt(keys.length);
+				keys[index] += random.nextBoolean() ? 1 : -1;
+			}
+			order.sort(keys);
+			assertStableOrder(order, keys, previous);
+		}
+	}
+
+	public void testRadixHandlesSignsAndTies() {
+		float keys[] = { 3f, -1f, 0f, -7.5f, 3f, 2f, 1e-20f, -1f,
+				Float.MAX_VALUE, -Float.MAX_VALUE };
+		EffectsDepthOrder order = new EffectsDepthOrder(keys.length);
+		int previous[] = copyOrder(order);
+		order.radixSort(keys);
+		assertStableOrder(order, keys, previous);
+	}
+
+	public void testReversedFallsBackToRadix() {
+		float keys[] = new float[500];
+		for (int i = 0; i < keys.length; ++i) {
+			keys[i] = (keys.length - i) / 10;
+		}
+		EffectsDepthOrder order = new EffectsDepthOrder(keys.length);
+		int previous[] = copyOrder(order);
+		// Insertion pass runs out of budget and gives up half way.
+		order.sort(keys);
+		assertStableOrder(order, keys, previous);
+
+		// Following sorts run radix sort and must stay stable as well.
+		for (int i = 0; i < keys.length; ++i) {
+			keys[i] = -keys[i];
+		}
+		previous = copyOrder(order);
+		order.sort(keys);
+		assertStableOrder(order, keys, previous);
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+
+/**
+ * Particle update throughput of ParticleSolver split into chunks by
+ * EffectsParallel.
+ */
+public class EffectsParallelBenchmark extends TestCase {
+
+	private static final int[] COUNTS = { 10000, 100000, 1000000 };
+	private static final int[] THREAD_COUNTS = { 1, 2, 4, 8 };
+
+	public void testThroughput() {
+		for (int count : COUNTS) {
+			for (int threadCount : THREAD_COUNTS) {
+				ParticleSolver solver = ParticleSolverBenchmark.createSolver(
+						count, threadCount);
+				long nanos = ParticleSolverBenchmark.time(solver);
+				EffectsBenchmark.report("EffectsParallel",
+						"%7d particles %d threads %8.3f ms %7.1f M/s", count,
+						threadCount, nanos / 1e6, count * 1e3 / nanos);
+			}
+		}
+	}
+
+}
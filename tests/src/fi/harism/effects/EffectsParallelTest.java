@@ -0,0 +1,95 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import junit.framework.TestCase;
+
+/**
+ * Range splitting and thread sharing of EffectsParallel.
+ */
+public class EffectsParallelTest extends TestCase {
+
+	public void testEveryIndexRunOnce() {
+		final int[] counts = { 0, 1, 1023, 1024, 5000, 100003 };
+		for (int threadCount = 1; threadCount <= 8; ++threadCount) {
+			EffectsParallel parallel = new EffectsParallel(threadCount);
+			for (int count : counts) {
+				final AtomicIntegerArray visits = new AtomicIntegerArray(count);
+				parallel.forRange(count, new EffectsParallel.Task() {
+					@Override
+					public void run(int start, int end) {
+						for (int i = start; i < end; ++i) {
+							visits.incrementAndGet(i);
+						}
+					}
+				});
+				for (int i = 0; i < count; ++i) {
+					assertEquals(1, visits.get(i));
+				}
+			}
+		}
+	}
+
+	public void testFailureIsRethrown() {
+		EffectsParallel parallel = new EffectsParallel(4);
+		try {
+			parallel.forRange(10000, new EffectsParallel.Task() {
+				@Override
+				public void run(int start, int end) {
+					if (start > 0) {
+						throw new IllegalStateException();
+					}
+				}
+			});
+			fail();
+		} catch (RuntimeException ex) {
+			assertTrue(ex.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	public void testInstancesShareThreads() {
+		EffectsParallel.Task task = new EffectsParallel.Task() {
+			@Override
+			public void run(int start, int end) {
+			}
+		};
+		// Views are recreated with their executors on every activity
+		// recreation, thread count must not grow with them.
+		for (int i = 0; i < 50; ++i) {
+			new EffectsParallel(4).forRange(100000, task);
+		}
+		int threads = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if ("EffectsParallel".equals(thread.getName())) {
+				assertTrue(thread.isDaemon());
+				++threads;
+			}
+		}
+		assertTrue(threads <= Runtime.getRuntime().availableProcessors());
+	}
+
+	public void testInvalidThreadCount() {
+		try {
+			new EffectsParallel(0);
+			fail();
+		} catch (IllegalArgumentException ex) {
+		}
+	}
+
+}
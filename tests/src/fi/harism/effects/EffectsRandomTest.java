@@ -0,0 +1,48 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+
+/**
+ * Value ranges of EffectsRandom.
+ */
+public class EffectsRandomTest extends TestCase {
+
+	// Float spacing is 2 here, so most values within [MIN, MAX) round up.
+	private static final float MAX = 16777218f;
+	private static final float MIN = 16777216f;
+
+	public void testFillHalfOpen() {
+		float[] values = new float[1000];
+		new EffectsRandom(3).fill(values, 0, values.length, MIN, MAX);
+		for (float value : values) {
+			assertEquals(MIN, value);
+		}
+	}
+
+	public void testNextFloatHalfOpen() {
+		EffectsRandom random = new EffectsRandom(3);
+		for (int i = 0; i < 1000; ++i) {
+			assertEquals(MIN, random.nextFloat(MIN, MAX));
+			float value = random.nextFloat(-1f, 1f);
+			assertTrue(value >= -1f && value < 1f);
+		}
+	}
+
+}
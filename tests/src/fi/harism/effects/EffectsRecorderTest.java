@@ -0,0 +1,75 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+
+/**
+ * Call counting and call log of EffectsRecorder.
+ */
+public class EffectsRecorderTest extends TestCase {
+
+	public void testBeginResetsFrame() {
+		EffectsRecorder recorder = new EffectsRecorder(4);
+		recorder.setEnabled(true);
+		recorder.record(EffectsRecorder.CALL_DRAW, 3);
+		recorder.begin();
+		assertEquals(0, recorder.getTotal());
+		assertEquals(0, recorder.getLogSize());
+		assertEquals(0, recorder.getCount(EffectsRecorder.CALL_DRAW));
+	}
+
+	public void testCountsBeyondLogCapacity() {
+		EffectsRecorder recorder = new EffectsRecorder(4);
+		recorder.setEnabled(true);
+		recorder.record(EffectsRecorder.CALL_STATE, 3);
+		recorder.record(EffectsRecorder.CALL_DRAW);
+		recorder.record(EffectsRecorder.CALL_DRAW, 2);
+		assertEquals(6, recorder.getTotal());
+		assertEquals(3, recorder.getCount(EffectsRecorder.CALL_STATE));
+		assertEquals(3, recorder.getCount(EffectsRecorder.CALL_DRAW));
+		assertEquals(4, recorder.getLogSize());
+		assertEquals(EffectsRecorder.CALL_STATE, recorder.getLog(2));
+		assertEquals(EffectsRecorder.CALL_DRAW, recorder.getLog(3));
+	}
+
+	public void testDisabledRecordsNothing() {
+		EffectsRecorder recorder = new EffectsRecorder(4);
+		assertFalse(recorder.isEnabled());
+		recorder.record(EffectsRecorder.CALL_DRAW);
+		recorder.record(EffectsRecorder.CALL_UNIFORM, 2);
+		assertEquals(0, recorder.getTotal());
+		assertEquals(0, recorder.getLogSize());
+	}
+
+	public void testLogKeepsCallOrder() {
+		int calls[] = { EffectsRecorder.CALL_BIND_FRAMEBUFFER,
+				EffectsRecorder.CALL_VIEWPORT, EffectsRecorder.CALL_CLEAR,
+				EffectsRecorder.CALL_DRAW };
+		EffectsRecorder recorder = new EffectsRecorder(16);
+		recorder.setEnabled(true);
+		for (int call : calls) {
+			recorder.record(call);
+		}
+		assertEquals(calls.length, recorder.getLogSize());
+		for (int i = 0; i < calls.length; ++i) {
+			assertEquals(calls[i], recorder.getLog(i));
+		}
+	}
+
+}
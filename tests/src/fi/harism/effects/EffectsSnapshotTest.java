@@ -0,0 +1,161 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+ * Saving and restoring EffectsSnapshot files.
+ */
+public class EffectsSnapshotTest extends TestCase {
+
+	private File mFile;
+
+	private static ParticleBuffer createParticles(int capacity) {
+		ParticleBuffer particles = new ParticleBuffer(capacity);
+		EffectsRandom random = new EffectsRandom(5);
+		for (int i = 0; i < capacity + capacity / 2; ++i) {
+			int index = particles.emit();
+			particles.mPosX[index] = random.nextFloat();
+			particles.mDirY[index] = random.nextFloat();
+		}
+		return particles;
+	}
+
+	/**
+	 * Overwrites int at given byte offset of snapshot file.
+	 */
+	private void corrupt(long offset, int value) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+		try {
+			raf.seek(offset);
+			raf.writeInt(value);
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		mFile = File.createTempFile("snapshot", null);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		mFile.delete();
+	}
+
+	public void testRoundTrip() throws IOException {
+		ParticleBuffer particles = createParticles(100);
+		EffectsSnapshot.save(mFile, particles);
+		assertEquals(8 + particles.getStateSize(), mFile.length());
+
+		ParticleBuffer restored = new ParticleBuffer(100);
+		assertTrue(EffectsSnapshot.restore(mFile, restored));
+		assertEquals(particles.getCount(), restored.getCount());
+		for (int order = 0; order < particles.getCount(); ++order) {
+			int index = particles.index(order);
+			assertEquals(index, restored.index(order));
+			assertEquals(particles.mPosX[index], restored.mPosX[index]);
+			assertEquals(particles.mDirY[index], restored.mDirY[index]);
+		}
+	}
+
+	public void testRoundTripMillion() throws IOException {
+		final ParticleBuffer particles = createParticles(1000000);
+		final ParticleBuffer restored = new ParticleBuffer(1000000);
+		long saveNanos = EffectsBenchmark.time(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					EffectsSnapshot.save(mFile, particles);
+				} catch (IOException ex) {
+					throw new RuntimeException(ex);
+				}
+			}
+		});
+		long restoreNanos = EffectsBenchmark.time(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					assertTrue(EffectsSnapshot.restore(mFile, restored));
+				} catch (IOException ex) {
+					throw new RuntimeException(ex);
+				}
+			}
+		});
+		EffectsBenchmark.report("EffectsSnapshot",
+				"1M particles, %d MB, save %.1f ms, restore %.1f ms",
+				mFile.length() >> 20, saveNanos / 1e6, restoreNanos / 1e6);
+
+		assertEquals(particles.getCount(), restored.getCount());
+		assertEquals(particles.index(0), restored.index(0));
+		for (int i = 0; i < 1000000; ++i) {
+			assertEquals(particles.mPosX[i], restored.mPosX[i]);
+			assertEquals(particles.mDirY[i], restored.mDirY[i]);
+		}
+	}
+
+	public void testRejectsMissingFile() throws IOException {
+		mFile.delete();
+		assertFalse(EffectsSnapshot.restore(mFile, new ParticleBuffer(10)));
+	}
+
+	public void testRejectsWrongSize() throws IOException {
+		EffectsSnapshot.save(mFile, createParticles(100));
+		ParticleBuffer other = new ParticleBuffer(99);
+		assertFalse(EffectsSnapshot.restore(mFile, other));
+		assertEquals(0, other.getCount());
+	}
+
+	public void testRejectsWrongMagic() throws IOException {
+		EffectsSnapshot.save(mFile, createParticles(10));
+		corrupt(0, 0x12345678);
+		ParticleBuffer restored = new ParticleBuffer(10);
+		assertFalse(EffectsSnapshot.restore(mFile, restored));
+		assertEquals(0, restored.getCount());
+	}
+
+	public void testRejectsWrongSizeField() throws IOException {
+		EffectsSnapshot.save(mFile, createParticles(10));
+		corrupt(4, -1);
+		assertFalse(EffectsSnapshot.restore(mFile, new ParticleBuffer(10)));
+	}
+
+	public void testFloatsRoundTrip() {
+		float[] values = { 1f, -2.5f, Float.MAX_VALUE, Float.NaN, 0f };
+		ByteBuffer buffer = ByteBuffer.allocate(4 + 4 * values.length);
+		buffer.putInt(7);
+		EffectsSnapshot.putFloats(buffer, values, values.length);
+		assertEquals(buffer.capacity(), buffer.position());
+
+		float[] read = new float[values.length];
+		buffer.flip();
+		assertEquals(7, buffer.getInt());
+		EffectsSnapshot.getFloats(buffer, read, read.length);
+		assertEquals(0, buffer.remaining());
+		for (int i = 0; i < values.length; ++i) {
+			assertEquals(values[i], read[i]);
+		}
+	}
+
+}
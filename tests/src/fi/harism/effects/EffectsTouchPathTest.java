@@ -0,0 +1,112 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+import android.graphics.PointF;
+
+/**
+ * Replays recorded touch gestures through EffectsTouchPath.
+ */
+public class EffectsTouchPathTest extends TestCase {
+
+	// Touch event and frame intervals in milliseconds.
+	private static final long EVENT_MILLIS = 8;
+	private static final long FRAME_MILLIS = 16;
+	private static final long PREDICT_MILLIS = 16;
+
+	/**
+	 * Replays circular gesture with given latency between event time and
+	 * frame time and returns mean distance between sampled and true finger
+	 * position at frame time.
+	 */
+	private static float replay(long latency, long predictMillis) {
+		EffectsTouchPath path = new EffectsTouchPath(32);
+		PointF out = new PointF();
+		float lag = 0f;
+		int frames = 0;
+		long eventTime = 0;
+		for (long time = 0; time < 2000; time += FRAME_MILLIS) {
+			// Events reach render thread only after given latency.
+			for (; eventTime <= time - latency; eventTime += EVENT_MILLIS) {
+				path.add(eventTime, x(eventTime), y(eventTime));
+			}
+			if (path.sample(time + predictMillis - latency, predictMillis,
+					out)) {
+				float dx = out.x - x(time);
+				float dy = out.y - y(time);
+				lag += (float) Math.sqrt(dx * dx + dy * dy);
+				++frames;
+			}
+		}
+		return lag / frames;
+	}
+
+	private static float x(long time) {
+		return (float) Math.cos(time * 0.004);
+	}
+
+	private static float y(long time) {
+		return (float) Math.sin(time * 0.004);
+	}
+
+	public void testInterpolate() {
+		EffectsTouchPath path = new EffectsTouchPath(4);
+		PointF out = new PointF();
+		assertFalse(path.sample(0, 0, out));
+		path.add(10, 0f, 0f);
+		path.add(20, 1f, 2f);
+		assertTrue(path.sample(15, 0, out));
+		assertEquals(0.5f, out.x);
+		assertEquals(1f, out.y);
+		// Samples before first event clamp to it.
+		path.sample(0, 0, out);
+		assertEquals(0f, out.x);
+	}
+
+	public void testOutOfOrder() {
+		EffectsTouchPath path = new EffectsTouchPath(4);
+		PointF out = new PointF();
+		path.add(10, 1f, 1f);
+		path.add(5, 2f, 2f);
+		path.add(10, 3f, 3f);
+		assertEquals(1, path.getCount());
+		assertTrue(path.getLast(out));
+		assertEquals(3f, out.x);
+	}
+
+	public void testPredictionReducesLag() {
+		float plain = replay(FRAME_MILLIS, 0);
+		float predicted = replay(FRAME_MILLIS, PREDICT_MILLIS);
+		assertTrue(plain + " <= " + predicted, predicted < 0.5f * plain);
+	}
+
+	public void testRingOverflow() {
+		EffectsTouchPath path = new EffectsTouchPath(4);
+		PointF out = new PointF();
+		for (int i = 0; i < 10; ++i) {
+			path.add(i * 10, i, 0f);
+		}
+		assertEquals(4, path.getCount());
+		path.sample(0, 0, out);
+		assertEquals(6f, out.x);
+		path.sample(85, 0, out);
+		assertEquals(8.5f, out.x);
+	}
+
+}
@@ -0,0 +1,119 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Grid index builders and Tipsify ordering of MeshIndices.
+ */
+public class MeshIndicesTest extends TestCase {
+
+	/**
+	 * Returns triangles of index list as sorted array of packed triples,
+	 * keeping winding.
+	 */
+	private static long[] triangles(int[] indices) {
+		long result[] = new long[indices.length / 3];
+		for (int t = 0; t < result.length; ++t) {
+			int a = indices[t * 3], b = indices[t * 3 + 1];
+			int c = indices[t * 3 + 2];
+			// Rotate smallest index first so equal triangles compare equal.
+			while (a > b || a > c) {
+				int tmp = a;
+				a = b;
+				b = c;
+				c = tmp;
+			}
+			result[t] = ((long) a << 42) | ((long) b << 21) | c;
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	public void testGridAndStripMatch() {
+		final int edge = 9;
+		int grid[] = MeshIndices.grid(edge);
+		int strip[] = MeshIndices.strip(edge);
+		assertEquals(2 * (edge - 1) * (edge - 1), grid.length / 3);
+		assertEquals(grid.length / 3, MeshIndices.countStripTriangles(strip));
+
+		// Unfold strip into a triangle list, odd triangles swap winding.
+		int list[] = new int[grid.length];
+		int n = 0;
+		for (int i = 2; i < strip.length; ++i) {
+			int a = strip[i - 2], b = strip[i - 1], c = strip[i];
+			if (a != b && b != c && a != c) {
+				list[n++] = (i & 1) == 0 ? a : b;
+				list[n++] = (i & 1) == 0 ? b : a;
+				list[n++] = c;
+			}
+		}
+		assertTrue(Arrays.equals(triangles(grid), triangles(list)));
+	}
+
+	public void testGridHasOpenBorder() {
+		// Only border edges of a grid have no opposite.
+		final int edge = 5;
+		assertEquals(4 * (edge - 1), MeshIndices.countOpenEdges(MeshIndices
+				.grid(edge)));
+	}
+
+	public void testTipsifyLowersAcmr() {
+		// Columns longer than cache, so grid order misses on every row.
+		for (int edge : new int[] { 17, 33 }) {
+			int grid[] = MeshIndices.grid(edge);
+			int vertexCount = edge * edge, triangleCount = grid.length / 3;
+			for (int cacheSize : new int[] { 12, 16, 24 }) {
+				int ordered[] = MeshIndices.tipsify(grid, vertexCount,
+						cacheSize);
+				assertTrue(Arrays.equals(triangles(grid), triangles(ordered)));
+				float before = MeshIndices.acmr(grid, vertexCount, cacheSize,
+						triangleCount);
+				float after = MeshIndices.acmr(ordered, vertexCount,
+						cacheSize, triangleCount);
+				assertTrue(after < before);
+				assertTrue(after >= 0.5f);
+			}
+		}
+	}
+
+	public void testTipsifyShuffledTriangles() {
+		final int edge = 17, cacheSize = 16;
+		int indices[] = MeshIndices.grid(edge);
+		Random random = new Random(1);
+		for (int t = indices.length / 3 - 1; t > 0; --t) {
+			int s = random.nextInt(t + 1);
+			for (int k = 0; k < 3; ++k) {
+				int tmp = indices[t * 3 + k];
+				indices[t * 3 + k] = indices[s * 3 + k];
+				indices[s * 3 + k] = tmp;
+			}
+		}
+		int vertexCount = edge * edge, triangleCount = indices.length / 3;
+		int ordered[] = MeshIndices.tipsify(indices, vertexCount, cacheSize);
+		assertTrue(Arrays.equals(triangles(indices), triangles(ordered)));
+		assertTrue(MeshIndices.acmr(ordered, vertexCount, cacheSize,
+				triangleCount) < 0.5f * MeshIndices.acmr(indices,
+				vertexCount, cacheSize, triangleCount));
+	}
+
+}
@@ -0,0 +1,90 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+
+/**
+ * Cost of a five affector chain and of each affector in it.
+ */
+public class ParticleAffectorsBenchmark extends TestCase {
+
+	private static final int COUNT_PARTICLES = 100000;
+	// Short step keeps drag from stopping particles during repeated runs,
+	// stopped particles would skip the gravity and vortex branches.
+	private static final float STEP = 1e-4f;
+
+	/**
+	 * Returns median nanoseconds of applying given affector over all
+	 * particles.
+	 */
+	private static long time(final ParticleAffector affector,
+			final ParticleBuffer particles) {
+		return EffectsBenchmark.time(new Runnable() {
+			@Override
+			public void run() {
+				affector.apply(particles, 0, COUNT_PARTICLES, STEP);
+			}
+		});
+	}
+
+	public void testChain() {
+		ParticleBuffer particles = new ParticleBuffer(COUNT_PARTICLES);
+		EffectsRandom random = new EffectsRandom(4);
+		for (int i = 0; i < COUNT_PARTICLES; ++i) {
+			int index = particles.emit();
+			particles.mPosX[index] = random.nextFloat(-1f, 1f);
+			particles.mPosY[index] = random.nextFloat(-1f, 1f);
+			particles.mDirX[index] = random.nextFloat(-1f, 1f);
+			particles.mDirY[index] = random.nextFloat(-1f, 1f);
+			particles.mSpeed[index] = random.nextFloat(0.1f, 0.8f);
+		}
+		ParticleAttractors attractors = new ParticleAttractors(256, 0.2f);
+		attractors.add(0f, 0f);
+		ParticleAffector[] chain = {
+				new ParticleAffectors.Attractor(attractors),
+				new ParticleAffectors.Gravity(0f, -1f),
+				new ParticleAffectors.Vortex(0f, 0f, 0.5f, 2f),
+				new ParticleAffectors.Integrate(),
+				new ParticleAffectors.Drag() };
+
+		final ParticleSolver solver = new ParticleSolver(particles,
+				new EffectsParallel(1));
+		long sum = 0;
+		for (ParticleAffector affector : chain) {
+			solver.addAffector(affector);
+			long nanos = time(affector, particles);
+			sum += nanos;
+			EffectsBenchmark.report("ParticleAffectors",
+					"%-10s %7.3f ms %6.2f ns/particle", affector.getClass()
+							.getSimpleName(), nanos / 1e6, (double) nanos
+							/ COUNT_PARTICLES);
+		}
+		long nanos = EffectsBenchmark.time(new Runnable() {
+			@Override
+			public void run() {
+				solver.solve(STEP);
+			}
+		});
+		EffectsBenchmark.report("ParticleAffectors",
+				"%-10s %7.3f ms %6.2f ns/particle, sum of parts %.3f ms",
+				"Chain", nanos / 1e6, (double) nanos / COUNT_PARTICLES,
+				sum / 1e6);
+	}
+
+}
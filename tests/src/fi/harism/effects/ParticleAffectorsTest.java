@@ -0,0 +1,180 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+
+/**
+ * Individual affector kernels of ParticleAffectors.
+ */
+public class ParticleAffectorsTest extends TestCase {
+
+	/**
+	 * Returns buffer of given size with particles on a line along x axis,
+	 * moving along y axis at unit speed.
+	 */
+	private static ParticleBuffer line(int count, float spacing) {
+		ParticleBuffer particles = new ParticleBuffer(count);
+		for (int i = 0; i < count; ++i) {
+			int k = particles.emit();
+			particles.mPosX[k] = (i - count / 2) * spacing;
+			particles.mPosY[k] = 0f;
+			particles.mDirX[k] = 0f;
+			particles.mDirY[k] = 1f;
+			particles.mSpeed[k] = 1f;
+		}
+		return particles;
+	}
+
+	public void testAttractorMatchesAllPairs() {
+		// Attractors are further apart than two radii, at most one of them
+		// affects any particle and order of application does not matter.
+		final float radius = 0.1f;
+		ParticleAttractors attractors = new ParticleAttractors(64, radius);
+		for (int i = 0; i < 64; ++i) {
+			attractors.add((i % 8 - 4) * 0.37f + 0.01f, (i / 8 - 4) * 0.37f);
+		}
+		ParticleBuffer particles = new ParticleBuffer(4096);
+		EffectsRandom random = new EffectsRandom(5);
+		float expectX[] = new float[4096], expectY[] = new float[4096];
+		float expectSpeed[] = new float[4096];
+		for (int i = 0; i < 4096; ++i) {
+			int k = particles.emit();
+			float x = particles.mPosX[k] = random.nextFloat(-1.6f, 1.6f);
+			float y = particles.mPosY[k] = random.nextFloat(-1.6f, 1.6f);
+			float dx = particles.mDirX[k] = random.nextFloat(-1f, 1f);
+			float dy = particles.mDirY[k] = random.nextFloat(-1f, 1f);
+			float s = particles.mSpeed[k] = random.nextFloat(0f, 0.8f);
+			for (int a = 0; a < attractors.getCount(); ++a) {
+				float ex = x - attractors.mPosX[a];
+				float ey = y - attractors.mPosY[a];
+				float len = (float) Math.sqrt(ex * ex + ey * ey);
+				if (len > 0f && len < radius) {
+					dx = s * dx + (1f - s) * ex / len;
+					dy = s * dy + (1f - s) * ey / len;
+					s = Math.min(s + radius - len, 0.8f);
+				}
+			}
+			expectX[k] = dx;
+			expectY[k] = dy;
+			expectSpeed[k] = s;
+		}
+		new ParticleAffectors.Attractor(attractors).apply(particles, 0,
+				4096, 0.01f);
+		for (int k = 0; k < 4096; ++k) {
+			assertEquals(expectX[k], particles.mDirX[k], 1e-5f);
+			assertEquals(expectY[k], particles.mDirY[k], 1e-5f);
+			assertEquals(expectSpeed[k], particles.mSpeed[k], 1e-5f);
+		}
+	}
+
+	public void testBoundsKill() {
+		ParticleBuffer particles = line(5, 1f);
+		new ParticleAffectors.BoundsKill(-1.5f, -1f, 1.5f, 1f).apply(
+				particles, 0, 5, 0.01f);
+		float alive[] = { 0, 1, 1, 1, 0 };
+		for (int k = 0; k < 5; ++k) {
+			assertEquals(alive[k], particles.mColor[k]);
+			assertEquals(alive[k], particles.mSpeed[k]);
+		}
+	}
+
+	public void testColorOverLife() {
+		ParticleBuffer particles = line(4, 1f);
+		float ages[] = { 0f, 9f, 9.5f, 11f };
+		float expected[] = { 1f, 1f, 0.5f, 0f };
+		for (int k = 0; k < 4; ++k) {
+			particles.mAge[k] = ages[k];
+		}
+		ParticleAffector fade = new ParticleAffectors.ColorOverLife(10f);
+		fade.apply(particles, 0, 4, 0.01f);
+		for (int k = 0; k < 4; ++k) {
+			assertEquals(expected[k], particles.mColor[k], 1e-5f);
+		}
+		// Color never increases again.
+		particles.mAge[3] = 0f;
+		fade.apply(particles, 0, 4, 0.01f);
+		assertEquals(0f, particles.mColor[3]);
+	}
+
+	public void testColorOverOrder() {
+		// Wrapped buffer, solver splits it into two physical ranges.
+		ParticleBuffer particles = new ParticleBuffer(3000);
+		for (int i = 0; i < 4500; ++i) {
+			particles.emit();
+		}
+		particles.expire(500);
+		ParticleSolver solver = new ParticleSolver(particles,
+				new EffectsParallel(1));
+		solver.addAffector(new ParticleAffectors.ColorOverOrder(1000));
+		solver.solve(0.01f);
+		// Same ramp ViewParticles used to compute when rendering.
+		for (int i = 0; i < particles.getCount(); ++i) {
+			float col = 1f;
+			if (i < 1000) {
+				col = i / 1000f;
+			}
+			assertEquals(col, particles.mColor[particles.index(i)]);
+		}
+	}
+
+	public void testGravity() {
+		ParticleBuffer particles = line(3, 1f);
+		particles.mSpeed[1] = 0.5f;
+		particles.mSpeed[2] = 0f;
+		new ParticleAffectors.Gravity(2f, -4f).apply(particles, 0, 3, 0.1f);
+		// Velocity changes by gravity times step for moving particles.
+		for (int k = 0; k < 2; ++k) {
+			float speed = particles.mSpeed[k];
+			assertEquals(0.2f, particles.mDirX[k] * speed, 1e-5f);
+			assertEquals(speed - 0.4f, particles.mDirY[k] * speed, 1e-5f);
+		}
+		assertEquals(0f, particles.mDirX[2]);
+		assertEquals(1f, particles.mDirY[2]);
+	}
+
+	public void testRangeOnly() {
+		ParticleBuffer particles = line(8, 1f);
+		new ParticleAffectors.Integrate().apply(particles, 2, 5, 0.5f);
+		for (int k = 0; k < 8; ++k) {
+			boolean inRange = k >= 2 && k < 5;
+			assertEquals(inRange ? 0.5f : 0f, particles.mPosY[k]);
+			assertEquals(inRange ? 0.5f : 0f, particles.mAge[k]);
+			assertEquals(0f, particles.mPrevY[k]);
+		}
+	}
+
+	public void testVortex() {
+		ParticleBuffer particles = line(5, 0.5f);
+		for (int k = 0; k < 5; ++k) {
+			particles.mDirY[k] = 0f;
+			particles.mDirX[k] = 1f;
+		}
+		// Particles at x = -1, -0.5, 0, 0.5 and 1 around origin.
+		new ParticleAffectors.Vortex(0f, 0f, 0.75f, 2f).apply(particles, 0,
+				5, 0.1f);
+		// Tangential change of 2 * 0.1 * (1 - 0.5 / 0.75) at half radius.
+		float change = 0.2f * (1f - 0.5f / 0.75f);
+		float expectedY[] = { 0, -change, 0, change, 0 };
+		for (int k = 0; k < 5; ++k) {
+			assertEquals(1f, particles.mDirX[k]);
+			assertEquals(expectedY[k], particles.mDirY[k], 1e-6f);
+		}
+	}
+
+}
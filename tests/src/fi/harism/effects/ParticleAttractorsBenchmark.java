@@ -0,0 +1,62 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+
+/**
+ * Cost of the grid based attractor pass against attractor count.
+ */
+public class ParticleAttractorsBenchmark extends TestCase {
+
+	private static final int COUNT_PARTICLES = 100000;
+
+	public void testCostPerAttractorCount() {
+		final ParticleBuffer particles = new ParticleBuffer(COUNT_PARTICLES);
+		EffectsRandom random = new EffectsRandom(2);
+		for (int i = 0; i < COUNT_PARTICLES; ++i) {
+			int index = particles.emit();
+			particles.mPosX[index] = random.nextFloat(-1f, 1f);
+			particles.mPosY[index] = random.nextFloat(-1f, 1f);
+			particles.mDirX[index] = random.nextFloat(-1f, 1f);
+			particles.mDirY[index] = random.nextFloat(-1f, 1f);
+			particles.mSpeed[index] = random.nextFloat(0f, 0.8f);
+		}
+
+		for (int count = 1; count <= 256; count *= 2) {
+			// Same radius as in ViewParticles.
+			ParticleAttractors attractors = new ParticleAttractors(count, 0.2f);
+			for (int i = 0; i < count; ++i) {
+				attractors.add(random.nextFloat(-1f, 1f),
+						random.nextFloat(-1f, 1f));
+			}
+			final ParticleAffector affector = new ParticleAffectors.Attractor(
+					attractors);
+			long nanos = EffectsBenchmark.time(new Runnable() {
+				@Override
+				public void run() {
+					affector.apply(particles, 0, COUNT_PARTICLES, 1f / 60f);
+				}
+			});
+			EffectsBenchmark.report("ParticleAttractors",
+					"%3d attractors %7.3f ms %6.2f ns/particle", count,
+					nanos / 1e6, (double) nanos / COUNT_PARTICLES);
+		}
+	}
+
+}
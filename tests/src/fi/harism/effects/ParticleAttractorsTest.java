@@ -0,0 +1,120 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Grid linking and neighbor lookup of ParticleAttractors.
+ */
+public class ParticleAttractorsTest extends TestCase {
+
+	/**
+	 * Asserts every attractor is linked exactly once, into bucket of its
+	 * current cell.
+	 */
+	private static void assertLinked(ParticleAttractors attractors) {
+		int seen[] = new int[attractors.getCount()];
+		for (int bucket = 0; bucket < attractors.mHead.length; ++bucket) {
+			int id = attractors.mHead[bucket];
+			for (; id != -1; id = attractors.mNext[id]) {
+				++seen[id];
+				assertEquals(bucket, ParticleAttractors.bucket(
+						attractors.mCellX[id], attractors.mCellY[id]));
+				assertEquals(attractors.cell(attractors.mPosX[id]),
+						attractors.mCellX[id]);
+				assertEquals(attractors.cell(attractors.mPosY[id]),
+						attractors.mCellY[id]);
+			}
+		}
+		for (int count : seen) {
+			assertEquals(1, count);
+		}
+	}
+
+	public void testCapacity() {
+		ParticleAttractors attractors = new ParticleAttractors(2, 0.5f);
+		assertEquals(0, attractors.add(0, 0));
+		assertEquals(1, attractors.add(1, 1));
+		try {
+			attractors.add(2, 2);
+			fail();
+		} catch (IllegalStateException ex) {
+		}
+		attractors.clear();
+		assertEquals(0, attractors.getCount());
+		assertEquals(0, attractors.add(0, 0));
+	}
+
+	public void testNeighborCellsFindAllWithinRadius() {
+		final float radius = 0.25f;
+		ParticleAttractors attractors = new ParticleAttractors(256, radius);
+		Random random = new Random(1);
+		for (int i = 0; i < 256; ++i) {
+			attractors.add(random.nextFloat() * 8 - 4,
+					random.nextFloat() * 8 - 4);
+		}
+		boolean found[] = new boolean[attractors.getCount()];
+		for (int n = 0; n < 1000; ++n) {
+			float x = random.nextFloat() * 8 - 4;
+			float y = random.nextFloat() * 8 - 4;
+			int cellX = attractors.cell(x), cellY = attractors.cell(y);
+			Arrays.fill(found, false);
+			for (int dy = -1; dy <= 1; ++dy) {
+				for (int dx = -1; dx <= 1; ++dx) {
+					int bucket = ParticleAttractors.bucket(cellX + dx, cellY
+							+ dy);
+					int id = attractors.mHead[bucket];
+					for (; id != -1; id = attractors.mNext[id]) {
+						found[id] = true;
+					}
+				}
+			}
+			for (int id = 0; id < attractors.getCount(); ++id) {
+				float ex = attractors.mPosX[id] - x;
+				float ey = attractors.mPosY[id] - y;
+				if (ex * ex + ey * ey < radius * radius) {
+					assertTrue(found[id]);
+				}
+			}
+		}
+	}
+
+	public void testSetRelinks() {
+		ParticleAttractors attractors = new ParticleAttractors(64, 0.1f);
+		Random random = new Random(2);
+		for (int i = 0; i < 64; ++i) {
+			attractors.add(random.nextFloat() * 2 - 1,
+					random.nextFloat() * 2 - 1);
+		}
+		assertLinked(attractors);
+		for (int step = 0; step < 100; ++step) {
+			for (int id = 0; id < attractors.getCount(); ++id) {
+				attractors.set(id, attractors.mPosX[id]
+						+ random.nextFloat() * 0.1f - 0.05f,
+						attractors.mPosY[id] + random.nextFloat() * 0.1f
+								- 0.05f);
+			}
+			assertLinked(attractors);
+		}
+	}
+
+}
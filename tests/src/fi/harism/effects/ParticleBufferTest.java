@@ -0,0 +1,124 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+ * Ring buffer behavior of ParticleBuffer.
+ */
+public class ParticleBufferTest extends TestCase {
+
+	public void testEmitWrapsAroundAndOverwritesOldest() {
+		ParticleBuffer particles = new ParticleBuffer(4);
+		for (int i = 0; i < 6; ++i) {
+			int index = particles.emit();
+			assertEquals(i % 4, index);
+			particles.mPosX[index] = i;
+		}
+		assertEquals(4, particles.getCount());
+		// Oldest live particles are the third and fourth emitted ones.
+		for (int order = 0; order < 4; ++order) {
+			assertEquals(order + 2f,
+					particles.mPosX[particles.index(order)]);
+		}
+	}
+
+	public void testEmitResetsAgeAndColor() {
+		ParticleBuffer particles = new ParticleBuffer(2);
+		int index = particles.emit();
+		particles.mAge[index] = 5f;
+		particles.mColor[index] = 0f;
+		particles.emit();
+		assertEquals(index, particles.emit());
+		assertEquals(0f, particles.mAge[index]);
+		assertEquals(1f, particles.mColor[index]);
+	}
+
+	public void testExpireRemovesOldest() {
+		ParticleBuffer particles = new ParticleBuffer(4);
+		for (int i = 0; i < 7; ++i) {
+			particles.mPosX[particles.emit()] = i;
+		}
+		particles.expire(2);
+		assertEquals(2, particles.getCount());
+		assertEquals(5f, particles.mPosX[particles.index(0)]);
+		assertEquals(6f, particles.mPosX[particles.index(1)]);
+
+		particles.expire(10);
+		assertEquals(0, particles.getCount());
+		particles.mPosX[particles.emit()] = 7;
+		assertEquals(7f, particles.mPosX[particles.index(0)]);
+	}
+
+	public void testClear() {
+		ParticleBuffer particles = new ParticleBuffer(3);
+		particles.emit();
+		particles.emit();
+		particles.clear();
+		assertEquals(0, particles.getCount());
+		assertEquals(0, particles.emit());
+	}
+
+	public void testInvalidCapacity() {
+		try {
+			new ParticleBuffer(0);
+			fail();
+		} catch (IllegalArgumentException ex) {
+		}
+	}
+
+	public void testOrderInvertsIndex() {
+		ParticleBuffer particles = new ParticleBuffer(7);
+		for (int i = 0; i < 12; ++i) {
+			particles.emit();
+			if (i == 9) {
+				particles.expire(3);
+			}
+			for (int order = 0; order < 7; ++order) {
+				assertEquals(order, particles.order(particles.index(order)));
+			}
+		}
+	}
+
+	public void testStateRoundTrip() {
+		ParticleBuffer particles = new ParticleBuffer(5);
+		for (int i = 0; i < 8; ++i) {
+			int index = particles.emit();
+			particles.mPosY[index] = i;
+			particles.mSpeed[index] = i * 2;
+		}
+		particles.expire(1);
+		ByteBuffer buffer = ByteBuffer.allocate(particles.getStateSize());
+		particles.saveState(buffer);
+		assertEquals(0, buffer.remaining());
+
+		ParticleBuffer restored = new ParticleBuffer(5);
+		buffer.flip();
+		restored.restoreState(buffer);
+		assertEquals(particles.getCount(), restored.getCount());
+		for (int order = 0; order < restored.getCount(); ++order) {
+			int index = restored.index(order);
+			assertEquals(particles.index(order), index);
+			assertEquals(particles.mPosY[index], restored.mPosY[index]);
+			assertEquals(particles.mSpeed[index], restored.mSpeed[index]);
+		}
+	}
+
+}
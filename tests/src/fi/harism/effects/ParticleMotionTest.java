@@ -0,0 +1,76 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+
+/**
+ * Closed form ParticleMotion against stepped integration.
+ */
+public class ParticleMotionTest extends TestCase {
+
+	public void testDecayMatchesStepPower() {
+		final float[] steps = { 1f / 30f, 1f / 60f, 1f / 120f };
+		for (float h : steps) {
+			float decay = ParticleMotion.decay(h);
+			for (int n = 0; n <= 600; n += 50) {
+				assertEquals(Math.pow(1.0 - h, n), Math.exp(decay * n * h),
+						1e-5);
+			}
+		}
+	}
+
+	public void testClosedFormMatchesIntegration() {
+		final float h = 1f / 60f;
+		final float decay = ParticleMotion.decay(h);
+		ParticleBuffer particles = new ParticleBuffer(64);
+		EffectsRandom random = new EffectsRandom(3);
+		float[] originX = new float[64], originY = new float[64];
+		float[] velocityX = new float[64], velocityY = new float[64];
+		float[] speed = new float[64];
+		for (int i = 0; i < 64; ++i) {
+			int index = particles.emit();
+			originX[i] = particles.mPosX[index] = random.nextFloat(-1f, 1f);
+			originY[i] = particles.mPosY[index] = random.nextFloat(-1f, 1f);
+			float angle = random.nextFloat(0f, 6.28f);
+			particles.mDirX[index] = (float) Math.cos(angle);
+			particles.mDirY[index] = (float) Math.sin(angle);
+			speed[i] = particles.mSpeed[index] = random.nextFloat(0f, 3f);
+			velocityX[i] = particles.mDirX[index] * speed[i];
+			velocityY[i] = particles.mDirY[index] * speed[i];
+		}
+
+		// Same free flight pipeline ViewParticles runs.
+		ParticleSolver solver = new ParticleSolver(particles,
+				new EffectsParallel(1));
+		solver.addAffector(new ParticleAffectors.Integrate());
+		solver.addAffector(new ParticleAffectors.Drag());
+		for (int n = 1; n <= 600; ++n) {
+			solver.solve(h);
+			float age = n * h;
+			for (int i = 0; i < 64; ++i) {
+				assertEquals(ParticleMotion.position(originX[i],
+						velocityX[i], decay, age), particles.mPosX[i], 1e-4f);
+				assertEquals(ParticleMotion.position(originY[i],
+						velocityY[i], decay, age), particles.mPosY[i], 1e-4f);
+				assertEquals(ParticleMotion.speed(speed[i], decay, age),
+						particles.mSpeed[i], 1e-4f);
+			}
+		}
+	}
+
+}
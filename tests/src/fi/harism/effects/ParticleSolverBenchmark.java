@@ -0,0 +1,77 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+
+/**
+ * Update cost of ParticleSolver running the default ViewParticles affector
+ * chain.
+ */
+public class ParticleSolverBenchmark extends TestCase {
+
+	private static final int[] COUNTS = { 10000, 100000, 1000000 };
+
+	/**
+	 * Returns solver over a full buffer of given amount of random particles
+	 * using given thread count.
+	 */
+	static ParticleSolver createSolver(int count, int threadCount) {
+		ParticleBuffer particles = new ParticleBuffer(count);
+		EffectsRandom random = new EffectsRandom(1);
+		for (int i = 0; i < count; ++i) {
+			int index = particles.emit();
+			particles.mPosX[index] = random.nextFloat(-1f, 1f);
+			particles.mPosY[index] = random.nextFloat(-1f, 1f);
+			particles.mDirX[index] = random.nextFloat(-1f, 1f);
+			particles.mDirY[index] = random.nextFloat(-1f, 1f);
+			particles.mSpeed[index] = random.nextFloat(0f, 0.8f);
+		}
+		ParticleAttractors attractors = new ParticleAttractors(256, 0.2f);
+		attractors.add(0f, 0f);
+		ParticleSolver solver = new ParticleSolver(particles,
+				new EffectsParallel(threadCount));
+		solver.addAffector(new ParticleAffectors.Attractor(attractors));
+		solver.addAffector(new ParticleAffectors.Integrate());
+		solver.addAffector(new ParticleAffectors.Drag());
+		solver.addAffector(new ParticleAffectors.ColorOverLife(1f));
+		return solver;
+	}
+
+	/**
+	 * Returns median nanoseconds of one solver step.
+	 */
+	static long time(final ParticleSolver solver) {
+		return EffectsBenchmark.time(new Runnable() {
+			@Override
+			public void run() {
+				solver.solve(1f / 60f);
+			}
+		});
+	}
+
+	public void testCostPerParticle() {
+		for (int count : COUNTS) {
+			long nanos = time(createSolver(count, 1));
+			EffectsBenchmark.report("ParticleSolver",
+					"%7d particles %8.3f ms %6.2f ns/particle", count,
+					nanos / 1e6, (double) nanos / count);
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package fi.harism.effects;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Chunked particle updates against serial ones.
+ */
+public class ParticleSolverTest extends TestCase {
+
+	/**
+	 * Integrates particles with speed decay and a position dependent pull,
+	 * enough arithmetic for rounding differences to show up.
+	 */
+	private static final class Integrate implements ParticleAffector {
+
+		@Override
+		public void apply(ParticleBuffer particles, int start, int end,
+				float t) {
+			for (int i = start; i < end; ++i) {
+				float pull = (float) Math.sin(particles.mPosX[i] * 3f);
+				particles.mDirY[i] += pull * t;
+				particles.mPosX[i] += particles.mDirX[i]
+						* particles.mSpeed[i] * t;
+				particles.mPosY[i] += particles.mDirY[i]
+						* particles.mSpeed[i] * t;
+				particles.mSpeed[i] *= 0.99f;
+				particles.mAge[i] += t;
+			}
+		}
+
+	}
+
+	private static ParticleBuffer createParticles(int capacity, int emitted) {
+		ParticleBuffer particles = new ParticleBuffer(capacity);
+		EffectsRandom random = new EffectsRandom(1);
+		for (int i = 0; i < emitted; ++i) {
+			int index = particles.emit();
+			particles.mPosX[index] = random.nextFloat(-1f, 1f);
+			particles.mPosY[index] = random.nextFloat(-1f, 1f);
+			particles.mDirX[index] = random.nextFloat(-1f, 1f);
+			particles.mDirY[index] = random.nextFloat(-1f, 1f);
+			particles.mSpeed[index] = random.nextFloat(0f, 2f);
+		}
+		return particles;
+	}
+
+	private static ParticleBuffer solve(int threadCount, int capacity,
+			int emitted, int expired) {
+		ParticleBuffer particles = createParticles(capacity, emitted);
+		particles.expire(expired);
+		ParticleSolver solver = new ParticleSolver(particles,
+				new EffectsParallel(threadCount));
+		solver.addAffector(new Integrate());
+		for (int step = 0; step < 20; ++step) {
+			solver.solve(1f / 60f);
+		}
+		return particles;
+	}
+
+	public void testChunkedEqualsSerial() {
+		// Full buffer, wrapped live range and partially expired range.
+		final int[][] cases = { { 10000, 10000, 0 }, { 10000, 17000, 0 },
+				{ 10000, 17000, 2500 }, { 3000, 3001, 1 } };
+		for (int[] c : cases) {
+			ParticleBuffer serial = solve(1, c[0], c[1], c[2]);
+			for (int threadCount = 2; threadCount <= 8; threadCount *= 2) {
+				ParticleBuffer chunked = solve(threadCount, c[0], c[1], c[2]);
+				assertTrue(Arrays.equals(serial.mPosX, chunked.mPosX));
+				assertTrue(Arrays.equals(serial.mPosY, chunked.mPosY));
+				assertTrue(Arrays.equals(serial.mSpeed, chunked.mSpeed));
+				assertTrue(Arrays.equals(serial.mAge, chunked.mAge));
+			}
+		}
+	}
+
+	public void testOnlyLiveParticlesUpdated() {
+		ParticleBuffer particles = solve(4, 5000, 7000, 4000);
+		for (int order = 0; order < particles.getCount(); ++order) {
+			assertEquals(20f / 60f, particles.mAge[particles.index(order)],
+					1e-5f);
+		}
+		// Expired slots keep their age from before solving.
+		for (int order = particles.getCount(); order < 5000; ++order) {
+			assertEquals(0f, particles.mAge[particles.index(order)]);
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+
+/**
+ * Rubber patch evaluation from precomputed Bernstein weights against the
+ * chain of mix() calls rubber_vs.txt used before, both run on CPU over the
+ * six faces of a 20x20 vertex grid.
+ */
+public class PatchBasisBenchmark extends TestCase {
+
+	private static final int COUNT_EDGE = 20;
+	private static final int COUNT_FACES = 6;
+
+	private static float mix(float a, float b, float t) {
+		return a + (b - a) * t;
+	}
+
+	/**
+	 * Evaluates patch point and approximate normal at (u, v) the way
+	 * rubber_vs.txt did with mix() calls, writing six floats into out.
+	 * Scratch holds six floats for the two tangents.
+	 */
+	private static void mix(float[] ctrl, int offset, float u, float v,
+			float[] out, float[] scratch) {
+		for (int k = 0; k < 3; ++k) {
+			int r0 = offset + k, r1 = r0 + 9, r2 = r0 + 18;
+			float c00 = mix(ctrl[r0], ctrl[r0 + 3], u);
+			float c01 = mix(ctrl[r0 + 3], ctrl[r0 + 6], u);
+			float c10 = mix(ctrl[r1], ctrl[r1 + 3], u);
+			float c11 = mix(ctrl[r1 + 3], ctrl[r1 + 6], u);
+			float c20 = mix(ctrl[r2], ctrl[r2 + 3], u);
+			float c21 = mix(ctrl[r2 + 3], ctrl[r2 + 6], u);
+			float c0 = mix(c00, c01, u);
+			float c1 = mix(c10, c11, u);
+			float c2 = mix(c20, c21, u);
+			float pos0 = mix(c0, c1, v);
+			float pos1 = mix(c1, c2, v);
+			out[k] = mix(pos0, pos1, v);
+			scratch[k] = (c00 - c01) + (c10 - c11) + (c20 - c21);
+			scratch[k + 3] = pos1 - pos0;
+		}
+		out[3] = scratch[1] * scratch[5] - scratch[2] * scratch[4];
+		out[4] = scratch[2] * scratch[3] - scratch[0] * scratch[5];
+		out[5] = scratch[0] * scratch[4] - scratch[1] * scratch[3];
+	}
+
+	public void testAgainstMix() {
+		final float ctrl[] = new float[COUNT_FACES * 27];
+		new EffectsRandom(11).fill(ctrl, 0, ctrl.length, -1f, 1f);
+		final float out[] = new float[6];
+		final float scratch[] = new float[6];
+		final float sink[] = new float[1];
+		final PatchBasis basis = new PatchBasis(COUNT_EDGE);
+
+		long nanosBasis = EffectsBenchmark.time(new Runnable() {
+			@Override
+			public void run() {
+				for (int face = 0; face < COUNT_FACES; ++face) {
+					basis.setControlPoints(ctrl, face * 27);
+					for (int i = 0; i < basis.getVertexCount(); ++i) {
+						basis.evaluate(i, out, 0);
+						sink[0] += out[0];
+					}
+				}
+			}
+		});
+		long nanosMix = EffectsBenchmark.time(new Runnable() {
+			@Override
+			public void run() {
+				for (int face = 0; face < COUNT_FACES; ++face) {
+					for (int i = 0; i < COUNT_EDGE; ++i) {
+						float v = (float) i / (COUNT_EDGE - 1);
+						for (int j = 0; j < COUNT_EDGE; ++j) {
+							float u = (float) j / (COUNT_EDGE - 1);
+							mix(ctrl, face * 27, u, v, out, scratch);
+							sink[0] += out[0];
+						}
+					}
+				}
+			}
+		});
+		EffectsBenchmark.report("PatchBasis",
+				"%d vertices, basis %.1f us, mix %.1f us", COUNT_FACES
+						* COUNT_EDGE * COUNT_EDGE, nanosBasis / 1e3,
+				nanosMix / 1e3);
+	}
+
+}
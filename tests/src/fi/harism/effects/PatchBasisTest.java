@@ -0,0 +1,108 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * PatchBasis weights compared against de Casteljau evaluation of
+ * EffectsBezier.
+ */
+public class PatchBasisTest extends TestCase {
+
+	private static final int EDGE = 9;
+
+	/**
+	 * Asserts PatchBasis output matches point and Pv x Pu evaluated by
+	 * de Casteljau at (u, v).
+	 */
+	private static void assertMatches(float[] ctrl, float u, float v,
+			float[] out) {
+		float expected[] = new float[9];
+		new EffectsBezier().evaluatePatch(ctrl, 0, 2, 2, 3, u, v, expected,
+				0);
+		float ux = expected[3], uy = expected[4], uz = expected[5];
+		float vx = expected[6], vy = expected[7], vz = expected[8];
+		assertEquals(expected[0], out[0], 1e-5f);
+		assertEquals(expected[1], out[1], 1e-5f);
+		assertEquals(expected[2], out[2], 1e-5f);
+		assertEquals(vy * uz - vz * uy, out[3], 1e-4f);
+		assertEquals(vz * ux - vx * uz, out[4], 1e-4f);
+		assertEquals(vx * uy - vy * ux, out[5], 1e-4f);
+	}
+
+	/**
+	 * Returns 9 random control points.
+	 */
+	private static float[] random(long seed) {
+		Random random = new Random(seed);
+		float ctrl[] = new float[27];
+		for (int i = 0; i < ctrl.length; ++i) {
+			ctrl[i] = random.nextFloat() * 2 - 1;
+		}
+		return ctrl;
+	}
+
+	public void testArbitraryParameters() {
+		PatchBasis basis = new PatchBasis(EDGE);
+		Random random = new Random(2);
+		float out[] = new float[6];
+		for (int n = 0; n < 10; ++n) {
+			float ctrl[] = random(n);
+			basis.setControlPoints(ctrl, 0);
+			for (int i = 0; i < 20; ++i) {
+				float u = random.nextFloat(), v = random.nextFloat();
+				basis.evaluate(u, v, out, 0);
+				assertMatches(ctrl, u, v, out);
+			}
+		}
+	}
+
+	public void testGridVertices() {
+		PatchBasis basis = new PatchBasis(EDGE);
+		assertEquals(EDGE * EDGE, basis.getVertexCount());
+		float out[] = new float[6];
+		for (int n = 0; n < 10; ++n) {
+			float ctrl[] = random(n);
+			basis.setControlPoints(ctrl, 0);
+			for (int i = 0; i < EDGE; ++i) {
+				for (int j = 0; j < EDGE; ++j) {
+					basis.evaluate(i * EDGE + j, out, 0);
+					assertMatches(ctrl, (float) j / (EDGE - 1), (float) i
+							/ (EDGE - 1), out);
+				}
+			}
+		}
+	}
+
+	public void testWeightsPartitionUnity() {
+		PatchBasis basis = new PatchBasis(EDGE);
+		float w[] = new float[PatchBasis.VERTEX_FLOATS];
+		for (int vertex = 0; vertex < basis.getVertexCount(); ++vertex) {
+			basis.getWeights(vertex, w, 0);
+			// Weights sum to one, their derivatives to zero.
+			assertEquals(1f, w[0] + w[1] + w[2], 1e-6f);
+			assertEquals(1f, w[3] + w[4] + w[5], 1e-6f);
+			assertEquals(0f, w[6] + w[7] + w[8], 1e-6f);
+			assertEquals(0f, w[9] + w[10] + w[11], 1e-6f);
+		}
+	}
+
+}
@@ -0,0 +1,233 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Seam sharing, watertightness, normals and vertex layout of RubberMesh
+ * built from the cube of ViewRubber.
+ */
+public class RubberMeshTest extends TestCase {
+
+	private static final int[][] FACES = {
+			{ 0, 8, 2, 9, 20, 10, 1, 11, 3 },
+			{ 6, 18, 4, 14, 21, 17, 7, 19, 5 },
+			{ 4, 15, 0, 17, 22, 9, 5, 16, 1 },
+			{ 2, 12, 6, 10, 23, 14, 3, 13, 7 },
+			{ 4, 18, 6, 15, 24, 12, 0, 8, 2 },
+			{ 1, 11, 3, 16, 25, 13, 5, 19, 7 } };
+	private static final float[] CTRL = { -1, 1, 1, -1, -1, 1, 1, 1, 1, 1,
+			-1, 1, -1, 1, -1, -1, -1, -1, 1, 1, -1, 1, -1, -1, 0, 1, 1, -1, 0,
+			1, 1, 0, 1, 0, -1, 1, 1, 1, 0, 1, -1, 0, 1, 0, -1, -1, 1, 0, -1,
+			-1, 0, -1, 0, -1, 0, 1, -1, 0, -1, -1, 0, 0, 1, 0, 0, -1, -1, 0,
+			0, 1, 0, 0, 0, 1, 0, 0, -1, 0 };
+
+	/**
+	 * Port of evaluate() in rubber_mesh_vs.txt. Weights are given as u, v,
+	 * du and dv triplets at given offset. Adds patch point into pos and unit
+	 * normal into normal.
+	 */
+	private static void shaderEvaluate(float[] faceTable, float[] ctrl,
+			int face, float[] w, int b, float[] pos, float[] normal) {
+		float du[] = new float[3], dv[] = new float[3];
+		for (int i = 0; i < 3; ++i) {
+			for (int j = 0; j < 3; ++j) {
+				int c = (int) (faceTable[(face * 3 + i) * 3 + j] + 0.5f);
+				for (int k = 0; k < 3; ++k) {
+					float p = ctrl[c * 3 + k];
+					pos[k] += p * w[b + j] * w[b + 3 + i];
+					du[k] += p * w[b + 6 + j] * w[b + 3 + i];
+					dv[k] += p * w[b + j] * w[b + 9 + i];
+				}
+			}
+		}
+		float n[] = { dv[1] * du[2] - dv[2] * du[1],
+				dv[2] * du[0] - dv[0] * du[2], dv[0] * du[1] - dv[1] * du[0] };
+		float len = (float) Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+		for (int k = 0; k < 3; ++k) {
+			normal[k] += n[k] / len;
+		}
+	}
+
+	public void testNormalsAveragedAtSeams() {
+		final int edge = 5;
+		RubberMesh mesh = new RubberMesh(edge, FACES);
+		float out[] = new float[6];
+		for (int v = 0; v < mesh.getVertexCount(); ++v) {
+			mesh.evaluate(v, CTRL, out, 0);
+			// On undeformed cube normal is sum of unit axes of every face
+			// the point lies on.
+			for (int k = 0; k < 3; ++k) {
+				float expected = Math.abs(out[k]) > 0.9999f ? Math
+						.signum(out[k]) : 0f;
+				assertEquals(expected, out[3 + k], 1e-5f);
+			}
+		}
+	}
+
+	public void testSeamsShared() {
+		final int edge = 6, last = edge - 1;
+		RubberMesh mesh = new RubberMesh(edge, FACES);
+		// Faces 0 and 3 share control points 2, 10 and 3, in last column of
+		// face 0 and first column of face 3.
+		for (int k = 0; k < edge; ++k) {
+			assertEquals(mesh.getVertex(0, k, last), mesh.getVertex(3, k, 0));
+		}
+		// Corner shared by faces 0, 2 and 4.
+		int corner = mesh.getVertex(0, 0, 0);
+		assertEquals(corner, mesh.getVertex(2, 0, last));
+		assertEquals(corner, mesh.getVertex(4, last, 0));
+	}
+
+	public void testShaderPort() {
+		// Vertex shader fed from written vertices and face table evaluates
+		// same points and normals as RubberMesh.
+		final int edge = 8;
+		RubberMesh mesh = new RubberMesh(edge, FACES);
+		FloatBuffer buffer = FloatBuffer.allocate(RubberMesh.VERTEX_FLOATS
+				* mesh.getVertexCount());
+		mesh.writeVertices(buffer, CTRL);
+		float faceTable[] = mesh.getFaceTable();
+		Random random = new Random(2);
+		float deformed[] = CTRL.clone();
+		for (int i = 0; i < deformed.length; ++i) {
+			deformed[i] += random.nextFloat() * 0.6f - 0.3f;
+		}
+
+		final int p = PatchBasis.VERTEX_FLOATS;
+		float vertex[] = new float[RubberMesh.VERTEX_FLOATS];
+		float expected[] = new float[6];
+		for (int i = 0; i < mesh.getVertexCount(); ++i) {
+			buffer.position(i * RubberMesh.VERTEX_FLOATS);
+			buffer.get(vertex);
+			float pos[] = new float[3], normal[] = new float[3];
+			shaderEvaluate(faceTable, deformed, (int) (vertex[p] + 0.5f),
+					vertex, 0, pos, normal);
+			for (int s = 0; s < 2; ++s) {
+				int seam = p + 1 + 3 * s;
+				if (vertex[seam] < 0f) {
+					continue;
+				}
+				// Same weights seamNormal() computes from (u, v).
+				float u = vertex[seam + 1], v = vertex[seam + 2];
+				float su = 1f - u, sv = 1f - v;
+				float w[] = { su * su, 2 * su * u, u * u, sv * sv, 2 * sv * v,
+						v * v, -2 * su, 2 * (su - u), 2 * u, -2 * sv,
+						2 * (sv - v), 2 * v };
+				shaderEvaluate(faceTable, deformed, (int) (vertex[seam] + 0.5f),
+						w, 0, new float[3], normal);
+			}
+			mesh.evaluate(i, deformed, expected, 0);
+			for (int k = 0; k < 3; ++k) {
+				assertEquals(expected[k], pos[k], 1e-5f);
+				assertEquals(expected[3 + k], normal[k], 1e-4f);
+			}
+		}
+	}
+
+	public void testVertexLayout() {
+		final int edge = 7;
+		RubberMesh mesh = new RubberMesh(edge, FACES);
+		FloatBuffer buffer = FloatBuffer.allocate(RubberMesh.VERTEX_FLOATS
+				* mesh.getVertexCount());
+		mesh.writeVertices(buffer, CTRL);
+		assertEquals(buffer.capacity(), buffer.position());
+
+		PatchBasis basis = new PatchBasis(edge);
+		float ctrl[] = new float[27], point[] = new float[6];
+		float seamPoint[] = new float[6];
+		final int p = PatchBasis.VERTEX_FLOATS;
+		for (int v = 0; v < mesh.getVertexCount(); ++v) {
+			int offset = v * RubberMesh.VERTEX_FLOATS;
+			mesh.evaluate(v, CTRL, point, 0);
+			for (int k = 0; k < 3; ++k) {
+				assertEquals(point[k], buffer.get(offset + p + 7 + k), 1e-6f);
+			}
+			int faces = 1;
+			for (int s = 0; s < 2; ++s) {
+				int seam = offset + p + 1 + 3 * s;
+				int face = (int) buffer.get(seam);
+				if (face == -1) {
+					continue;
+				}
+				++faces;
+				assertTrue(face != (int) buffer.get(offset + p));
+				for (int i = 0; i < 9; ++i) {
+					System.arraycopy(CTRL, FACES[face][i] * 3, ctrl, i * 3, 3);
+				}
+				basis.setControlPoints(ctrl, 0);
+				basis.evaluate(buffer.get(seam + 1), buffer.get(seam + 2),
+						seamPoint, 0);
+				for (int k = 0; k < 3; ++k) {
+					assertEquals(point[k], seamPoint[k], 1e-6f);
+				}
+			}
+			// Corners are shared by three faces, other border vertices by
+			// two.
+			int ones = 0;
+			for (int k = 0; k < 3; ++k) {
+				ones += Math.abs(point[k]) > 0.9999f ? 1 : 0;
+			}
+			assertEquals(ones, faces);
+		}
+	}
+
+	public void testWatertight() {
+		Random random = new Random(1);
+		for (int edge = 2; edge <= 20; ++edge) {
+			RubberMesh mesh = new RubberMesh(edge, FACES);
+			assertEquals(6 * edge * edge - 12 * edge + 8,
+					mesh.getVertexCount());
+			int indices[] = mesh.getIndices();
+			assertEquals(0, MeshIndices.countOpenEdges(indices));
+			assertEquals(0, MeshIndices.countOpenEdges(MeshIndices.tipsify(
+					indices, mesh.getVertexCount(), 16)));
+		}
+
+		// Shared seam vertices stay on every face under deformation.
+		final int edge = 9;
+		RubberMesh mesh = new RubberMesh(edge, FACES);
+		PatchBasis basis = new PatchBasis(edge);
+		float deformed[] = CTRL.clone();
+		for (int i = 0; i < deformed.length; ++i) {
+			deformed[i] += random.nextFloat() * 0.4f - 0.2f;
+		}
+		float ctrl[] = new float[27], point[] = new float[6];
+		float expected[] = new float[6];
+		for (int f = 0; f < FACES.length; ++f) {
+			for (int i = 0; i < 9; ++i) {
+				System.arraycopy(deformed, FACES[f][i] * 3, ctrl, i * 3, 3);
+			}
+			basis.setControlPoints(ctrl, 0);
+			for (int i = 0; i < edge; ++i) {
+				for (int j = 0; j < edge; ++j) {
+					basis.evaluate(i * edge + j, expected, 0);
+					mesh.evaluate(mesh.getVertex(f, i, j), deformed, point, 0);
+					for (int k = 0; k < 3; ++k) {
+						assertEquals(expected[k], point[k], 1e-5f);
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+
+/**
+ * SoftBody steps per second against lattice size and thread count, using
+ * stiffness, damping and step length of ViewRubber.
+ */
+public class SoftBodyBenchmark extends TestCase {
+
+	private static final int[] SIZES = { 3, 5, 9, 17, 33 };
+	private static final int[] THREAD_COUNTS = { 1, 2, 4, 8 };
+
+	public void testStepsPerSecond() {
+		for (int size : SIZES) {
+			for (int threadCount : THREAD_COUNTS) {
+				final SoftBody body = new SoftBody(size, 200f, 0.01f,
+						new EffectsParallel(threadCount));
+				// Keep lattice moving, cost does not depend on it though.
+				body.setPosition(0, -1.5f, -1.5f, -1.5f);
+				long nanos = EffectsBenchmark.time(new Runnable() {
+					@Override
+					public void run() {
+						body.step(1f / 120f);
+					}
+				});
+				EffectsBenchmark.report("SoftBody",
+						"size %2d, %6d springs, %d threads, %9.0f steps/s",
+						size, body.getSpringCount(), threadCount, 1e9 / nanos);
+			}
+		}
+	}
+
+}
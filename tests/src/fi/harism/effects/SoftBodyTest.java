@@ -0,0 +1,118 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+ * Energy behaviour, thread count independence and state of SoftBody.
+ */
+public class SoftBodyTest extends TestCase {
+
+	private static final float DT = 1f / 120;
+
+	/**
+	 * Returns lattice of given size with one corner node pulled outwards.
+	 */
+	private static SoftBody perturbed(int size, float damping, int threads) {
+		SoftBody body = new SoftBody(size, 200f, damping, new EffectsParallel(
+				threads));
+		int corner = body.getNode(size - 1, size - 1, size - 1);
+		body.setPosition(corner, 1.3f, 1.2f, 1.1f);
+		return body;
+	}
+
+	public void testDampingDecaysEnergy() {
+		SoftBody body = perturbed(5, 0.01f, 2);
+		double initial = body.getEnergy(DT);
+		for (int i = 0; i < 2000; ++i) {
+			body.step(DT);
+		}
+		assertTrue(body.getEnergy(DT) < 0.1 * initial);
+	}
+
+	public void testEnergyDoesNotGrowWithoutDamping() {
+		SoftBody body = perturbed(5, 0f, 2);
+		double initial = body.getEnergy(DT);
+		assertTrue(initial > 0);
+		for (int i = 0; i < 5000; ++i) {
+			body.step(DT);
+			// Kinetic energy is estimated from backward difference, allow
+			// for its oscillation but no drift.
+			assertTrue("step " + i, body.getEnergy(DT) < 1.1 * initial);
+		}
+	}
+
+	public void testLatticeAtRest() {
+		SoftBody body = new SoftBody(3, 200f, 0f, new EffectsParallel(1));
+		assertEquals(27, body.getNodeCount());
+		// 13 directions, each with (3 - |dx|)(3 - |dy|)(3 - |dz|) springs.
+		assertEquals(54 + 72 + 32, body.getSpringCount());
+		assertEquals(0.0, body.getEnergy(DT), 1e-9);
+		body.step(DT);
+		float p[] = new float[3];
+		body.getPosition(body.getNode(2, 0, 1), 1f, p, 0);
+		assertEquals(1f, p[0], 1e-6f);
+		assertEquals(-1f, p[1], 1e-6f);
+		assertEquals(0f, p[2], 1e-6f);
+	}
+
+	public void testSameResultForAnyThreadCount() {
+		SoftBody serial = perturbed(5, 0.01f, 1);
+		SoftBody parallel = perturbed(5, 0.01f, 4);
+		for (int i = 0; i < 500; ++i) {
+			serial.step(DT);
+			parallel.step(DT);
+		}
+		float a[] = new float[3], b[] = new float[3];
+		for (int node = 0; node < serial.getNodeCount(); ++node) {
+			serial.getPosition(node, 1f, a, 0);
+			parallel.getPosition(node, 1f, b, 0);
+			for (int k = 0; k < 3; ++k) {
+				assertEquals(a[k], b[k]);
+			}
+		}
+	}
+
+	public void testStateRoundTrip() {
+		SoftBody body = perturbed(4, 0f, 1);
+		for (int i = 0; i < 10; ++i) {
+			body.step(DT);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(body.getStateSize());
+		body.saveState(buffer);
+		assertEquals(buffer.capacity(), buffer.position());
+
+		SoftBody restored = perturbed(4, 0f, 1);
+		buffer.position(0);
+		restored.restoreState(buffer);
+		body.step(DT);
+		restored.step(DT);
+		float a[] = new float[3], b[] = new float[3];
+		for (int node = 0; node < body.getNodeCount(); ++node) {
+			body.getPosition(node, 0.5f, a, 0);
+			restored.getPosition(node, 0.5f, b, 0);
+			for (int k = 0; k < 3; ++k) {
+				assertEquals(a[k], b[k]);
+			}
+		}
+	}
+
+}
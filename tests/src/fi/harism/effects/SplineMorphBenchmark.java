@@ -0,0 +1,81 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import junit.framework.TestCase;
+
+/**
+ * CPU side of a ViewSplines morphing frame. 10000 splines of 10 points are
+ * updated and written into a direct buffer. A copy into a second direct
+ * buffer stands in for the GL_STREAM_DRAW upload.
+ */
+public class SplineMorphBenchmark extends TestCase {
+
+	private static final int COUNT_MORPH = 10000;
+	private static final int[] THREAD_COUNTS = { 1, 2, 4, 8 };
+
+	private static FloatBuffer allocate(int floats) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(4 * floats);
+		return buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+
+	public void testFrame() {
+		for (int threadCount : THREAD_COUNTS) {
+			final SplineMorph morph = new SplineMorph(COUNT_MORPH,
+					SplineTessellator.LEVELS[1], new EffectsParallel(
+							threadCount), 10);
+			final int floats = SplineMorph.VERTEX_FLOATS
+					* morph.getVertexCount();
+			final FloatBuffer vertices = allocate(floats);
+			final FloatBuffer upload = allocate(floats);
+			final long[] time = new long[1];
+
+			long update = EffectsBenchmark.time(new Runnable() {
+				@Override
+				public void run() {
+					time[0] += 16;
+					morph.update(time[0]);
+				}
+			});
+			long write = EffectsBenchmark.time(new Runnable() {
+				@Override
+				public void run() {
+					vertices.position(0);
+					morph.write(vertices);
+				}
+			});
+			long copy = EffectsBenchmark.time(new Runnable() {
+				@Override
+				public void run() {
+					vertices.position(0);
+					upload.position(0);
+					upload.put(vertices);
+				}
+			});
+			EffectsBenchmark.report("SplineMorph", "%d threads, %d vertices, "
+					+ "update %.2f ms, write %.2f ms, upload copy %.2f ms",
+					threadCount, morph.getVertexCount(), update / 1e6,
+					write / 1e6, copy / 1e6);
+		}
+	}
+
+}
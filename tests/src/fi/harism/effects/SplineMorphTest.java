@@ -0,0 +1,90 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+
+/**
+ * Vertices and update history independence of SplineMorph.
+ */
+public class SplineMorphTest extends TestCase {
+
+	private static final int COUNT = 100;
+	private static final int SPLITS = 10;
+
+	public void testIndependentOfHistory() {
+		SplineMorph stepped = new SplineMorph(COUNT, SPLITS,
+				new EffectsParallel(1), 3);
+		SplineMorph jumped = new SplineMorph(COUNT, SPLITS,
+				new EffectsParallel(4), 3);
+		long time = 0;
+		for (; time < 3 * SplineMorph.PERIOD; time += 17) {
+			stepped.update(time);
+		}
+		jumped.update(time - 17);
+		float a[] = stepped.getVertices(), b[] = jumped.getVertices();
+		for (int i = 0; i < a.length; ++i) {
+			assertEquals(a[i], b[i]);
+		}
+	}
+
+	public void testVerticesOnCurve() {
+		SplineMorph morph = new SplineMorph(COUNT, SPLITS,
+				new EffectsParallel(2), 1);
+		morph.update(12345);
+		assertEquals(COUNT * (2 * SPLITS + 2) - 2, morph.getVertexCount());
+
+		EffectsBezier bezier = new EffectsBezier();
+		float ctrl[] = morph.getControlPoints();
+		float vertices[] = morph.getVertices();
+		float p[] = new float[3], d[] = new float[3];
+		final int stride = SplineMorph.VERTEX_FLOATS;
+		for (int i = 0; i < COUNT; ++i) {
+			int first = i * (2 * SPLITS + 2);
+			for (int j = 0; j < SPLITS; ++j) {
+				float t = (float) j / (SPLITS - 1);
+				bezier.evaluate(ctrl, i * 12, 3, 3, t, p, 0);
+				bezier.derivative(ctrl, i * 12, 3, 3, t, d, 0);
+				for (int side = 0; side < 2; ++side) {
+					int v = (first + 2 * j + side) * stride;
+					for (int k = 0; k < 3; ++k) {
+						assertEquals(p[k], vertices[v + k], 1e-5f);
+						assertEquals(d[k], vertices[v + 3 + k], 1e-4f);
+					}
+					assertEquals(t, vertices[v + 6]);
+					assertEquals(side == 0 ? 1f : -1f, vertices[v + 7]);
+				}
+			}
+			// Degenerate vertices repeat neighbouring strip ends.
+			if (i > 0) {
+				for (int k = 0; k < stride; ++k) {
+					assertEquals(vertices[first * stride + k],
+							vertices[(first - 1) * stride + k]);
+				}
+			}
+			if (i < COUNT - 1) {
+				int last = first + 2 * SPLITS - 1;
+				for (int k = 0; k < stride; ++k) {
+					assertEquals(vertices[last * stride + k],
+							vertices[(last + 1) * stride + k]);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+
+/**
+ * Spline vertices drawn with strips chosen by SplineTessellator against the
+ * fixed 40 point strips used before. Scene follows ViewSplines; 100 splines
+ * rotating once around axis (1, 2, 0) over 500 frames, seen with 60 degree
+ * field of view on a 1080x1920 viewport. ViewSplines looks at them from
+ * distance 1.
+ */
+public class SplineTessellatorBenchmark extends TestCase {
+
+	private static final int COUNT_FRAMES = 500;
+	private static final int COUNT_SPLINES = 100;
+	private static final int HEIGHT = 1920;
+	private static final int WIDTH = 1080;
+
+	/**
+	 * Returns column major product of two 4x4 matrices.
+	 */
+	private static float[] multiply(float[] a, float[] b) {
+		float m[] = new float[16];
+		for (int c = 0; c < 4; ++c) {
+			for (int r = 0; r < 4; ++r) {
+				for (int k = 0; k < 4; ++k) {
+					m[c * 4 + r] += a[k * 4 + r] * b[c * 4 + k];
+				}
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Returns model view projection matrices for every frame, camera looks
+	 * at origin from given distance.
+	 */
+	private static float[][] createFrames(float distance) {
+		float f = (float) (1 / Math.tan(Math.toRadians(30)));
+		float near = .1f, far = 10f;
+		float projection[] = new float[16];
+		projection[0] = f * HEIGHT / WIDTH;
+		projection[5] = f;
+		projection[10] = (far + near) / (near - far);
+		projection[11] = -1;
+		projection[14] = 2 * far * near / (near - far);
+		float view[] = new float[16];
+		view[0] = view[5] = view[10] = view[15] = 1;
+		view[14] = -distance;
+		float viewProjection[] = multiply(projection, view);
+
+		float axis[] = { 1 / (float) Math.sqrt(5), 2 / (float) Math.sqrt(5),
+				0 };
+		float frames[][] = new float[COUNT_FRAMES][];
+		for (int i = 0; i < COUNT_FRAMES; ++i) {
+			double angle = 2 * Math.PI * i / COUNT_FRAMES;
+			float s = (float) Math.sin(angle), c = (float) Math.cos(angle);
+			float model[] = new float[16];
+			for (int col = 0; col < 3; ++col) {
+				for (int row = 0; row < 3; ++row) {
+					float value = axis[row] * axis[col] * (1 - c);
+					if (row == col) {
+						value += c;
+					} else {
+						// Cross product matrix of axis times sine.
+						int k = 3 - row - col;
+						float sign = (col - row + 3) % 3 == 1 ? -1 : 1;
+						value += sign * axis[k] * s;
+					}
+					model[col * 4 + row] = value;
+				}
+			}
+			model[15] = 1;
+			frames[i] = multiply(viewProjection, model);
+		}
+		return frames;
+	}
+
+	/**
+	 * Returns splines with control points within given scale around random
+	 * centers in [-1 + scale, 1 - scale].
+	 */
+	private static float[][] createSplines(float scale) {
+		EffectsRandom random = new EffectsRandom(8);
+		float splines[][] = new float[COUNT_SPLINES][12];
+		for (float[] ctrl : splines) {
+			float center[] = new float[3];
+			random.fill(center, 0, 3, scale - 1, 1 - scale);
+			for (int i = 0; i < 12; ++i) {
+				ctrl[i] = center[i % 3] + random.nextFloat(-scale, scale);
+			}
+		}
+		return splines;
+	}
+
+	/**
+	 * Plans all splines over all frames and reports vertices drawn and
+	 * planning time per frame.
+	 */
+	private static void run(String scene, float scale, float distance,
+			float tolerance) {
+		final float frames[][] = createFrames(distance);
+		final float splines[][] = createSplines(scale);
+		final SplineTessellator tessellator = new SplineTessellator(
+				tolerance);
+		tessellator.setViewport(WIDTH, HEIGHT);
+		final int finest = SplineTessellator.LEVELS.length - 1;
+
+		long vertices = 0, fixed = 0;
+		for (float[] mvp : frames) {
+			for (float[] ctrl : splines) {
+				int level = tessellator.plan(mvp, ctrl);
+				if (level >= 0) {
+					vertices += SplineTessellator.getVertexCount(level);
+					fixed += SplineTessellator.getVertexCount(finest);
+				}
+			}
+		}
+		long nanos = EffectsBenchmark.time(new Runnable() {
+			@Override
+			public void run() {
+				for (float[] mvp : frames) {
+					for (float[] ctrl : splines) {
+						tessellator.plan(mvp, ctrl);
+					}
+				}
+			}
+		});
+		EffectsBenchmark.report("SplineTessellator",
+				"%-8s %.0f px, %6.0f vertices per frame, %5.1f%% of fixed %d, "
+						+ "planning %.1f us per frame", scene, tolerance,
+				(double) vertices / COUNT_FRAMES, 100.0 * vertices / fixed,
+				SplineTessellator.LEVELS[finest], nanos / 1e3 / COUNT_FRAMES);
+	}
+
+	public void testVertexCount() {
+		run("default", 1f, 1f, 1f);
+		run("default", 1f, 1f, 2f);
+		run("small", 0.3f, 1f, 1f);
+		run("small", 0.3f, 1f, 2f);
+		run("far", 1f, 4f, 1f);
+		run("far", 1f, 4f, 2f);
+	}
+
+}
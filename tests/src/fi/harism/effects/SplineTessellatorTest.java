@@ -0,0 +1,194 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Screen space error of strips chosen by SplineTessellator, measured against
+ * exactly projected curves.
+ */
+public class SplineTessellatorTest extends TestCase {
+
+	private static final int SAMPLES = 16;
+	private static final float TOLERANCE = 1f;
+	private static final int VIEWPORT = 800;
+
+	/**
+	 * Returns cubic Bezier point at t for 4 control points.
+	 */
+	private static double[] evaluate(float[] ctrl, double t) {
+		double s = 1 - t;
+		double b[] = { s * s * s, 3 * s * s * t, 3 * s * t * t, t * t * t };
+		double p[] = new double[3];
+		for (int i = 0; i < 4; ++i) {
+			for (int j = 0; j < 3; ++j) {
+				p[j] += b[i] * ctrl[i * 3 + j];
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Returns matrix looking at origin from given distance along z axis.
+	 */
+	private static float[] lookAt(float[] projection, float distance) {
+		float mvp[] = projection.clone();
+		for (int j = 0; j < 4; ++j) {
+			mvp[12 + j] -= distance * projection[8 + j];
+		}
+		return mvp;
+	}
+
+	/**
+	 * Returns largest distance in pixels between exactly projected curve
+	 * and polyline through projected points at strip positions, or -1 if
+	 * curve is not entirely in front of camera.
+	 */
+	private static double measureError(float[] mvp, float[] ctrl, int splits) {
+		double error = 0;
+		double a[] = project(mvp, evaluate(ctrl, 0));
+		for (int i = 1; i < splits; ++i) {
+			double t0 = (double) (i - 1) / (splits - 1);
+			double t1 = (double) i / (splits - 1);
+			double b[] = project(mvp, evaluate(ctrl, t1));
+			if (a == null || b == null) {
+				return -1;
+			}
+			double dx = b[0] - a[0], dy = b[1] - a[1];
+			double len = dx * dx + dy * dy;
+			for (int j = 1; j < SAMPLES; ++j) {
+				double p[] = project(mvp,
+						evaluate(ctrl, t0 + (t1 - t0) * j / SAMPLES));
+				if (p == null) {
+					return -1;
+				}
+				double u = 0;
+				if (len > 0) {
+					u = ((p[0] - a[0]) * dx + (p[1] - a[1]) * dy) / len;
+					u = Math.max(0, Math.min(1, u));
+				}
+				double ex = a[0] + u * dx - p[0];
+				double ey = a[1] + u * dy - p[1];
+				error = Math.max(error, Math.sqrt(ex * ex + ey * ey));
+			}
+			a = b;
+		}
+		return error;
+	}
+
+	/**
+	 * Returns perspective projection with given vertical field of view.
+	 */
+	private static float[] perspective(float fovy, float near, float far) {
+		float f = (float) (1 / Math.tan(Math.toRadians(fovy) / 2));
+		float m[] = new float[16];
+		m[0] = m[5] = f;
+		m[10] = (far + near) / (near - far);
+		m[11] = -1;
+		m[14] = 2 * far * near / (near - far);
+		return m;
+	}
+
+	/**
+	 * Returns given point in viewport pixels, or null if it is behind
+	 * camera.
+	 */
+	private static double[] project(float[] mvp, double[] p) {
+		double c[] = new double[4];
+		for (int j = 0; j < 4; ++j) {
+			c[j] = mvp[j] * p[0] + mvp[4 + j] * p[1] + mvp[8 + j] * p[2]
+					+ mvp[12 + j];
+		}
+		if (c[3] <= 0) {
+			return null;
+		}
+		return new double[] { c[0] / c[3] * VIEWPORT / 2,
+				c[1] / c[3] * VIEWPORT / 2 };
+	}
+
+	/**
+	 * Plans random splines within unit cube and checks every strip coarser
+	 * than the finest one keeps within tolerance. Returns number of
+	 * splines checked.
+	 */
+	private int checkSplines(float[] mvp, long seed) {
+		SplineTessellator tessellator = new SplineTessellator(TOLERANCE);
+		tessellator.setViewport(VIEWPORT, VIEWPORT);
+		Random random = new Random(seed);
+		float ctrl[] = new float[12];
+		int checked = 0;
+		for (int i = 0; i < 5000; ++i) {
+			for (int j = 0; j < ctrl.length; ++j) {
+				ctrl[j] = random.nextFloat() * 2 - 1;
+			}
+			int level = tessellator.plan(mvp, ctrl);
+			// Finest strip is used whenever nothing coarser suffices.
+			if (level < 0 || level == SplineTessellator.LEVELS.length - 1) {
+				continue;
+			}
+			double error = measureError(mvp, ctrl,
+					SplineTessellator.LEVELS[level]);
+			if (error >= 0) {
+				assertTrue("error " + error, error <= TOLERANCE);
+				++checked;
+			}
+		}
+		return checked;
+	}
+
+	public void testAffineWithinTolerance() {
+		// Orthographic projection, bound is exact.
+		float mvp[] = new float[16];
+		mvp[0] = mvp[5] = 0.5f;
+		mvp[10] = -0.4f;
+		mvp[14] = 0.5f;
+		mvp[15] = 1;
+		assertTrue(checkSplines(mvp, 1) > 0);
+	}
+
+	public void testCulledBehindCamera() {
+		SplineTessellator tessellator = new SplineTessellator(TOLERANCE);
+		tessellator.setViewport(VIEWPORT, VIEWPORT);
+		float mvp[] = lookAt(perspective(60, .1f, 10), 3);
+		float ctrl[] = { 0, 0, 4, 1, 0, 5, 0, 1, 6, 1, 1, 4 };
+		assertEquals(-1, tessellator.plan(mvp, ctrl));
+	}
+
+	public void testPerspectiveWithinTolerance() {
+		float projection[] = perspective(60, .1f, 10);
+		int checked = 0;
+		for (float distance : new float[] { 1.5f, 3f, 8f }) {
+			checked += checkSplines(lookAt(projection, distance), 2);
+		}
+		assertTrue(checked > 1000);
+	}
+
+	public void testStripLayout() {
+		assertEquals(0, SplineTessellator.getFirst(0));
+		int total = 0;
+		for (int level = 0; level < SplineTessellator.LEVELS.length; ++level) {
+			assertEquals(total, SplineTessellator.getFirst(level));
+			total += SplineTessellator.getVertexCount(level);
+		}
+		assertEquals(total, SplineTessellator.getTotalVertexCount());
+	}
+
+}
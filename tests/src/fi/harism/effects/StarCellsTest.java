@@ -0,0 +1,127 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Cell generation, eviction and hashing of StarCells.
+ */
+public class StarCellsTest extends TestCase {
+
+	private static final float CELL_SIZE = 2f;
+	private static final int RADIUS = 2;
+	private static final int SIDE = 2 * RADIUS + 1;
+
+	/**
+	 * Asserts every star lies within resident cells around camera at given
+	 * position.
+	 */
+	private void assertInRange(StarCells cells, double x, double y, double z) {
+		float f[] = { (float) (x - Math.floor(x / CELL_SIZE) * CELL_SIZE),
+				(float) (y - Math.floor(y / CELL_SIZE) * CELL_SIZE),
+				(float) (z - Math.floor(z / CELL_SIZE) * CELL_SIZE) };
+		float pos[][] = { cells.mPosX, cells.mPosY, cells.mPosZ };
+		for (int axis = 0; axis < 3; ++axis) {
+			float min = -RADIUS * CELL_SIZE - f[axis] - 1e-3f;
+			float max = (RADIUS + 1) * CELL_SIZE - f[axis] + 1e-3f;
+			for (float p : pos[axis]) {
+				assertTrue(p >= min && p <= max);
+			}
+		}
+	}
+
+	/**
+	 * Returns star coordinates sorted per axis, independent of slot order.
+	 */
+	private float[][] sortedPositions(StarCells cells) {
+		float pos[][] = { cells.mPosX.clone(), cells.mPosY.clone(),
+				cells.mPosZ.clone() };
+		for (float[] p : pos) {
+			Arrays.sort(p);
+		}
+		return pos;
+	}
+
+	public void testCellsRegenerateIdentically() {
+		StarCells cells = new StarCells(RADIUS, CELL_SIZE, 8, 5);
+		cells.update(0.5, 0.5, 0.5);
+		float before[][] = sortedPositions(cells);
+
+		// Travel far enough to evict every cell and come back.
+		cells.update(100.5, 0.5, -100.5);
+		cells.update(0.5, 0.5, 0.5);
+		float after[][] = sortedPositions(cells);
+		for (int axis = 0; axis < 3; ++axis) {
+			assertTrue(Arrays.equals(before[axis], after[axis]));
+		}
+	}
+
+	public void testDifferentCellsDiffer() {
+		StarCells cells = new StarCells(0, CELL_SIZE, 8, 5);
+		// Cells on either side of origin and at coordinate wrap of key.
+		double coords[] = { 0.5, -0.5, (1 << 21) * CELL_SIZE + 0.5 };
+		float first[][] = new float[coords.length][];
+		for (int i = 0; i < coords.length; ++i) {
+			cells.update(coords[i], 0.5, 0.5);
+			first[i] = cells.mPosX.clone();
+		}
+		assertFalse(Arrays.equals(first[0], first[1]));
+		// Keys keep 21 bits per axis, wrapped cell hashes the same.
+		assertTrue(Arrays.equals(first[0], first[2]));
+	}
+
+	public void testEvictsOnlyCellsOutOfRange() {
+		StarCells cells = new StarCells(RADIUS, CELL_SIZE, 4, 1);
+		assertEquals(SIDE * SIDE * SIDE, cells.getSlotCount());
+		assertEquals(SIDE * SIDE * SIDE * 4, cells.getCapacity());
+		assertEquals(RADIUS * CELL_SIZE, cells.getRange());
+
+		cells.update(0.5, 0.5, 0.5);
+		assertEquals(SIDE * SIDE * SIDE, cells.getGeneratedCount());
+		assertInRange(cells, 0.5, 0.5, 0.5);
+
+		// Moving within camera cell generates nothing.
+		cells.update(1.5, 1.5, 1.5);
+		assertEquals(SIDE * SIDE * SIDE, cells.getGeneratedCount());
+		assertInRange(cells, 1.5, 1.5, 1.5);
+
+		// One cell step replaces one plane of cells.
+		cells.update(2.5, 1.5, 1.5);
+		assertEquals(SIDE * SIDE * SIDE + SIDE * SIDE,
+				cells.getGeneratedCount());
+		assertInRange(cells, 2.5, 1.5, 1.5);
+
+		// Diagonal step across origin replaces three planes.
+		cells.update(0.5, -0.5, 2.5);
+		assertEquals(SIDE * SIDE * SIDE + SIDE * SIDE + SIDE * SIDE * SIDE
+				- (SIDE - 1) * (SIDE - 1) * (SIDE - 1),
+				cells.getGeneratedCount());
+		assertInRange(cells, 0.5, -0.5, 2.5);
+	}
+
+	public void testPreciseFarFromOrigin() {
+		StarCells cells = new StarCells(RADIUS, CELL_SIZE, 4, 1);
+		double far = 1e9 + 0.25;
+		cells.update(far, -far, far);
+		assertInRange(cells, far, -far, far);
+	}
+
+}
@@ -0,0 +1,49 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+
+/**
+ * StarField update cost against star count and thread count.
+ */
+public class StarFieldBenchmark extends TestCase {
+
+	private static final int[] COUNTS = { 2000, 100000, 1000000 };
+	private static final int[] THREAD_COUNTS = { 1, 2, 4, 8 };
+
+	public void testUpdate() {
+		for (int count : COUNTS) {
+			for (int threadCount : THREAD_COUNTS) {
+				final StarField stars = new StarField(count,
+						new EffectsParallel(threadCount), 7);
+				stars.randomize();
+				long nanos = EffectsBenchmark.time(new Runnable() {
+					@Override
+					public void run() {
+						stars.update(1f / 60f);
+					}
+				});
+				EffectsBenchmark.report("StarField",
+						"%7d stars %d threads %8.3f ms", count, threadCount,
+						nanos / 1e6);
+			}
+		}
+	}
+
+}
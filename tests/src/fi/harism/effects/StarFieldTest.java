@@ -0,0 +1,68 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import junit.framework.TestCase;
+
+/**
+ * Determinism of StarField updates regardless of thread count.
+ */
+public class StarFieldTest extends TestCase {
+
+	public void testRespawnedAreSortedAndAtFar() {
+		StarField field = new StarField(5000, new EffectsParallel(4), 3);
+		field.randomize();
+		int total = 0;
+		for (int step = 0; step < 50; ++step) {
+			field.update(0.1f);
+			int respawned[] = field.getRespawned();
+			for (int i = 0; i < field.getRespawnedCount(); ++i) {
+				assertEquals(StarField.FAR, field.mPosZ[respawned[i]]);
+				if (i > 0) {
+					assertTrue(respawned[i - 1] < respawned[i]);
+				}
+			}
+			total += field.getRespawnedCount();
+		}
+		assertTrue(total > 0);
+	}
+
+	public void testSameResultForAnyThreadCount() {
+		StarField serial = new StarField(5000, new EffectsParallel(1), 7);
+		StarField parallel = new StarField(5000, new EffectsParallel(4), 7);
+		serial.randomize();
+		parallel.randomize();
+		for (int step = 0; step < 100; ++step) {
+			serial.update(0.05f);
+			parallel.update(0.05f);
+			assertEquals(serial.getRespawnedCount(),
+					parallel.getRespawnedCount());
+			for (int i = 0; i < serial.getRespawnedCount(); ++i) {
+				assertEquals(serial.getRespawned()[i],
+						parallel.getRespawned()[i]);
+			}
+		}
+		for (int i = 0; i < serial.getCount(); ++i) {
+			assertEquals(serial.mPosX[i], parallel.mPosX[i]);
+			assertEquals(serial.mPosY[i], parallel.mPosY[i]);
+			assertEquals(serial.mPosZ[i], parallel.mPosZ[i]);
+			assertEquals(serial.mSpeed[i], parallel.mSpeed[i]);
+		}
+	}
+
+}
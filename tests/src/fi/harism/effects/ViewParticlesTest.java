@@ -0,0 +1,142 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.app.ActionBar;
+import android.test.ActivityInstrumentationTestCase2;
+
+/**
+ * Call log of ViewParticles frames recorded on device. Needs a GLES 2.0
+ * capable device or emulator, run through the test project.
+ */
+public class ViewParticlesTest extends
+		ActivityInstrumentationTestCase2<EffectsActivity> {
+
+	private static final int FILTER[] = {
+			EffectsRecorder.CALL_BIND_FRAMEBUFFER,
+			EffectsRecorder.CALL_VIEWPORT, EffectsRecorder.CALL_CLEAR,
+			EffectsRecorder.CALL_DRAW };
+
+	public ViewParticlesTest() {
+		super(EffectsActivity.class);
+	}
+
+	/**
+	 * Selects particles tab and returns log of one complete frame rendered
+	 * with given offscreen scale.
+	 */
+	private int[] recordFrame(final int offscreenScale) throws Exception {
+		final ViewParticles view[] = new ViewParticles[1];
+		getInstrumentation().runOnMainSync(new Runnable() {
+			@Override
+			public void run() {
+				ActionBar actionBar = getActivity().getActionBar();
+				for (int i = 0; i < actionBar.getTabCount(); ++i) {
+					ActionBar.Tab tab = actionBar.getTabAt(i);
+					if (tab.getTag() instanceof ViewParticles) {
+						view[0] = (ViewParticles) tab.getTag();
+						actionBar.selectTab(tab);
+					}
+				}
+			}
+		});
+		assertNotNull(view[0]);
+
+		view[0].queueEvent(new Runnable() {
+			@Override
+			public void run() {
+				view[0].setOffscreenScale(offscreenScale);
+				view[0].getRecorder().setEnabled(true);
+			}
+		});
+		// Let offscreen buffers be created before capturing a frame.
+		Thread.sleep(500);
+
+		final int log[][] = new int[1][];
+		final CountDownLatch latch = new CountDownLatch(1);
+		view[0].queueEvent(new Runnable() {
+			@Override
+			public void run() {
+				// Events run between frames, log holds previous frame.
+				EffectsRecorder recorder = view[0].getRecorder();
+				log[0] = new int[recorder.getLogSize()];
+				for (int i = 0; i < log[0].length; ++i) {
+					log[0][i] = recorder.getLog(i);
+				}
+				recorder.setEnabled(false);
+			}
+		});
+		view[0].queueEvent(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		return log[0];
+	}
+
+	/**
+	 * Returns pass structure calls of given log in recorded order.
+	 */
+	private int[] filterPasses(int log[]) {
+		int count = 0;
+		int passes[] = new int[log.length];
+		for (int call : log) {
+			for (int filter : FILTER) {
+				if (call == filter) {
+					passes[count++] = call;
+				}
+			}
+		}
+		int result[] = new int[count];
+		System.arraycopy(passes, 0, result, 0, count);
+		return result;
+	}
+
+	public void testBufferObjectsInUse() throws Exception {
+		// Static and streamed geometry is drawn from buffer objects only.
+		int log[] = recordFrame(1);
+		boolean bound = false;
+		for (int call : log) {
+			assertTrue(call != EffectsRecorder.CALL_CLIENT_POINTER);
+			bound |= call == EffectsRecorder.CALL_BIND_BUFFER;
+		}
+		assertTrue(bound);
+	}
+
+	public void testOffscreenPassOrder() throws Exception {
+		int passes[] = filterPasses(recordFrame(2));
+		// Screen clear and emitter lines precede the offscreen pass.
+		int expected[] = { EffectsRecorder.CALL_CLEAR,
+				EffectsRecorder.CALL_DRAW,
+				EffectsRecorder.CALL_BIND_FRAMEBUFFER,
+				EffectsRecorder.CALL_VIEWPORT, EffectsRecorder.CALL_CLEAR,
+				EffectsRecorder.CALL_DRAW,
+				EffectsRecorder.CALL_BIND_FRAMEBUFFER,
+				EffectsRecorder.CALL_VIEWPORT, EffectsRecorder.CALL_DRAW };
+		assertEquals(expected.length, passes.length);
+		for (int i = 0; i < expected.length; ++i) {
+			assertEquals("call " + i, expected[i], passes[i]);
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+   Copyright 2012 Harri Smatt
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package fi.harism.effects;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.app.ActionBar;
+import android.opengl.GLES20;
+import android.test.ActivityInstrumentationTestCase2;
+
+/**
+ * Single mesh rendering of ViewRubber on device. Needs a GLES 2.0 capable
+ * device or emulator, run through the test project.
+ */
+public class ViewRubberTest extends
+		ActivityInstrumentationTestCase2<EffectsActivity> {
+
+	private static final String[] MESH_HANDLES = { "aBasisU", "aBasisV",
+			"aBasisDU", "aBasisDV", "aFace", "aSeam0", "aSeam1", "aRest",
+			"uViewM", "uProjectionM", "uCtrl", "uFaceCtrl", "uAxisColors" };
+
+	private ViewRubber mView;
+
+	public ViewRubberTest() {
+		super(EffectsActivity.class);
+	}
+
+	/**
+	 * Runs given runnable on renderer thread and waits for it to finish.
+	 */
+	private void runOnRenderer(Runnable runnable) throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		mView.queueEvent(runnable);
+		mView.queueEvent(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		getInstrumentation().runOnMainSync(new Runnable() {
+			@Override
+			public void run() {
+				ActionBar actionBar = getActivity().getActionBar();
+				for (int i = 0; i < actionBar.getTabCount(); ++i) {
+					ActionBar.Tab tab = actionBar.getTabAt(i);
+					if (tab.getTag() instanceof ViewRubber) {
+						mView = (ViewRubber) tab.getTag();
+						actionBar.selectTab(tab);
+					}
+				}
+			}
+		});
+		assertNotNull(mView);
+		// Let surface be created before touching GL state.
+		Thread.sleep(500);
+	}
+
+	public void testMeshShadersCompile() throws Exception {
+		final String error[] = new String[1];
+		final int handles[] = new int[MESH_HANDLES.length];
+		runOnRenderer(new Runnable() {
+			@Override
+			public void run() {
+				EffectsShader shader = new EffectsShader();
+				try {
+					shader.setProgram(
+							mView.loadRawString(R.raw.rubber_mesh_vs),
+							mView.loadRawString(R.raw.rubber_mesh_fs));
+					for (int i = 0; i < handles.length; ++i) {
+						handles[i] = shader.getHandle(MESH_HANDLES[i]);
+					}
+					shader.deleteProgram();
+				} catch (Exception ex) {
+					error[0] = String.valueOf(ex.getMessage());
+				}
+			}
+		});
+		assertNull(error[0], error[0]);
+		// Every attribute and uniform is active, none was optimized out.
+		for (int i = 0; i < handles.length; ++i) {
+			assertTrue(MESH_HANDLES[i], handles[i] != -1);
+		}
+	}
+
+	public void testSingleMeshFrame() throws Exception {
+		runOnRenderer(new Runnable() {
+			@Override
+			public void run() {
+				// Clear errors of earlier frames, bounded for lost contexts.
+				for (int i = 0; i < 8; ++i) {
+					if (GLES20.glGetError() == GLES20.GL_NO_ERROR) {
+						break;
+					}
+				}
+				mView.getRecorder().setEnabled(true);
+			}
+		});
+		Thread.sleep(500);
+
+		final int log[][] = new int[1][];
+		final int error[] = new int[1];
+		runOnRenderer(new Runnable() {
+			@Override
+			public void run() {
+				// Events run between frames, log holds previous frame.
+				EffectsRecorder recorder = mView.getRecorder();
+				log[0] = new int[recorder.getLogSize()];
+				for (int i = 0; i < log[0].length; ++i) {
+					log[0][i] = recorder.getLog(i);
+				}
+				recorder.setEnabled(false);
+				error[0] = GLES20.glGetError();
+			}
+		});
+		assertEquals(GLES20.GL_NO_ERROR, error[0]);
+
+		// Whole cube is drawn from buffer objects with one call.
+		int draws = 0;
+		for (int call : log[0]) {
+			assertTrue(call != EffectsRecorder.CALL_CLIENT_POINTER);
+			if (call == EffectsRecorder.CALL_DRAW) {
+				++draws;
+			}
+		}
+		assertEquals(1, draws);
+	}
+
+}